@@ -0,0 +1,112 @@
+package system;
+
+/*
+Summary of a rolling-window backtest: how many start years kept money in the
+account for the whole horizon, and the worst / best terminal balances.
+
+A window succeeds when money is left after the horizon's last withdrawal and
+that year's growth (terminal balance > 0). This is stricter than
+RetirementKernel.yearsLasted, which also counts the year whose withdrawal
+empties the account: a window that fails here by running dry in its final
+year still has yearsLasted == horizon. Success here is yearsLasted >= horizon + 1
+for the same returns, with withdraw-first timing.
+*/
+public final class BacktestReport {
+
+	private final int horizon;
+	private final int windows;
+	private final int successes;
+	private final double worstTerminal;
+	private final double bestTerminal;
+	private final int worstStartYear;
+	private final int bestStartYear;
+	private final double[] terminalBalances;
+
+	private BacktestReport(int horizon, int windows, int successes, double worstTerminal, double bestTerminal,
+			int worstStartYear, int bestStartYear, double[] terminalBalances)
+	{
+		this.horizon = horizon;
+		this.windows = windows;
+		this.successes = successes;
+		this.worstTerminal = worstTerminal;
+		this.bestTerminal = bestTerminal;
+		this.worstStartYear = worstStartYear;
+		this.bestStartYear = bestStartYear;
+		this.terminalBalances = terminalBalances;
+	}
+
+	static BacktestReport of(HistoricalBacktester source, int horizon, double[] terminal)
+	{
+		int successes = 0;
+		int worst = 0;
+		int best = 0;
+		for (int s = 0; s < terminal.length; s++) {
+			if (terminal[s] > 0) {
+				successes++;
+			}
+			if (terminal[s] < terminal[worst]) {
+				worst = s;
+			}
+			if (terminal[s] > terminal[best]) {
+				best = s;
+			}
+		}
+		return new BacktestReport(horizon, terminal.length, successes, terminal[worst], terminal[best],
+				source.labelOf(worst), source.labelOf(best), terminal);
+	}
+
+	public int getHorizon()
+	{
+		return horizon;
+	}
+
+	public int getWindows()
+	{
+		return windows;
+	}
+
+	//Windows with money left after the last year (see the class comment for how this relates to yearsLasted)
+	public int getSuccesses()
+	{
+		return successes;
+	}
+
+	public double getSuccessRate()
+	{
+		return windows == 0 ? 0.0 : (double) successes / windows;
+	}
+
+	public double getWorstTerminal()
+	{
+		return worstTerminal;
+	}
+
+	public double getBestTerminal()
+	{
+		return bestTerminal;
+	}
+
+	public int getWorstStartYear()
+	{
+		return worstStartYear;
+	}
+
+	public int getBestStartYear()
+	{
+		return bestStartYear;
+	}
+
+	//Terminal balance of window i (start index i in the series)
+	public double terminalBalance(int window)
+	{
+		return terminalBalances[window];
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%d-year windows: %d/%d succeeded (%.1f%%), worst $%,.2f (start %d), best $%,.2f (start %d)",
+				horizon, successes, windows, 100.0 * getSuccessRate(),
+				worstTerminal, worstStartYear, bestTerminal, bestStartYear);
+	}
+}
@@ -0,0 +1,265 @@
+package system;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.stream.IntStream;
+
+/*
+Off-heap paths x years matrix of balances for Monte Carlo and batch runs.
+
+Storing one List<Double> per path (as retirementHistory does) costs roughly
+24 bytes per boxed value plus list overhead, all of it on the GC heap. Here
+every cell is a raw 8-byte double in direct ByteBuffers, so a multi-GB
+matrix lives outside the heap (size it with -XX:MaxDirectMemorySize) and the
+collector never scans it. A single direct buffer is limited to 2 GB, so
+whole rows are packed into as many chunks as needed.
+
+Row and column views, percentiles and chart extraction all read the
+buffers directly; nothing is copied into boxed collections or heap arrays.
+Column percentiles stream the column into a QuantileSketch, and
+FanChartAggregator.of(matrix, k) builds a whole fan chart the same way
+(MonteCarloEngine.depletionPaths fills a matrix in parallel).
+
+close() only drops the buffers; the collector frees the direct memory once
+nothing refers to them. Every access (get/set, sinks, views) goes through the
+closed check, and a reader that is already inside a buffer keeps it alive,
+so nothing can ever touch freed memory.
+*/
+public final class BalanceMatrix implements AutoCloseable {
+
+	private static final int CHUNK_BYTES = 1 << 30;
+	// Sketch size for columnPercentile (about one percentile rank of error)
+	private static final int SKETCH_K = 200;
+
+	private final int rows;
+	private final int columns;
+	private final int rowsPerChunk;
+	private volatile ByteBuffer[] chunks;
+
+	public BalanceMatrix(int rows, int columns)
+	{
+		if (rows <= 0 || columns <= 0) {
+			throw new IllegalArgumentException("Matrix needs at least one row and one column.");
+		}
+		long rowBytes = 8L * columns;
+		if (rowBytes > CHUNK_BYTES) {
+			throw new IllegalArgumentException("A single row may not exceed " + (CHUNK_BYTES / 8) + " columns.");
+		}
+
+		this.rows = rows;
+		this.columns = columns;
+		this.rowsPerChunk = (int) Math.min(rows, CHUNK_BYTES / rowBytes);
+
+		int chunkCount = (rows + rowsPerChunk - 1) / rowsPerChunk;
+		chunks = new ByteBuffer[chunkCount];
+		for (int c = 0; c < chunkCount; c++) {
+			int chunkRows = Math.min(rowsPerChunk, rows - c * rowsPerChunk);
+			chunks[c] = ByteBuffer.allocateDirect((int) (chunkRows * rowBytes)).order(ByteOrder.nativeOrder());
+		}
+	}
+
+	public int rows()
+	{
+		return rows;
+	}
+
+	public int columns()
+	{
+		return columns;
+	}
+
+	public long sizeInBytes()
+	{
+		return 8L * rows * columns;
+	}
+
+	public double get(int row, int column)
+	{
+		checkRow(row);
+		checkColumn(column);
+		return chunk(row).getDouble(offset(row, column));
+	}
+
+	public void set(int row, int column, double value)
+	{
+		checkRow(row);
+		checkColumn(column);
+		chunk(row).putDouble(offset(row, column), value);
+	}
+
+	//Writes one path with the shared kernel; years after depletion are filled with 0
+	public int simulateRow(int row, double balance, double annualExpense, double rate, RetirementKernel.Timing timing)
+	{
+		checkRow(row);
+		ByteBuffer buf = chunk(row);
+		int base = offset(row, 0);
+		int lasted = RetirementKernel.simulate(balance, annualExpense, rate, columns - 1, timing,
+				(year, value) -> buf.putDouble(base + 8 * year, value));
+		for (int year = lasted + 1; year < columns; year++) {
+			buf.putDouble(base + 8 * year, 0.0);
+		}
+		return lasted;
+	}
+
+	//Sink writing into one row, for kernels that stream balances; years past the last column are rejected
+	public YearSink rowSink(int row)
+	{
+		checkRow(row);
+		int base = offset(row, 0);
+		return (year, value) -> {
+			checkColumn(year);
+			chunk(row).putDouble(base + 8 * year, value);
+		};
+	}
+
+	public Row row(int row)
+	{
+		checkRow(row);
+		return new Row(row);
+	}
+
+	public Column column(int column)
+	{
+		checkColumn(column);
+		return new Column(column);
+	}
+
+
+	public double columnPercentile(int column, double percentile)
+	{
+		/*
+        Percentile of one year across all paths, read straight from the
+        buffer into a QuantileSketch (no copy of the column).
+        Complexity: O(P log(P / k)) - P = number of paths
+        Returns: (balance at the percentile, within about one percentile rank)
+        */
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+		}
+		return columnSketch(column, SKETCH_K).quantile(percentile / 100.0);
+	}
+
+	//One year's balances across all paths folded into a sketch of size k
+	public QuantileSketch columnSketch(int column, int k)
+	{
+		checkColumn(column);
+		QuantileSketch sketch = new QuantileSketch(k);
+		ByteBuffer[] bufs = buffers();
+		for (int r = 0; r < rows; r++) {
+			sketch.add(bufs[r / rowsPerChunk].getDouble(offset(r, column)));
+		}
+		return sketch;
+	}
+
+	//One percentile per year, columns processed in parallel (fan-chart extraction)
+	public double[] columnPercentiles(double percentile)
+	{
+		double[] out = new double[columns];
+		IntStream.range(0, columns).parallel().forEach(c -> out[c] = columnPercentile(c, percentile));
+		return out;
+	}
+
+	//Drops the buffers; the direct memory is freed by the collector once no reader still holds them
+	@Override
+	public void close()
+	{
+		chunks = null;
+	}
+
+	public boolean isClosed()
+	{
+		return chunks == null;
+	}
+
+
+	private ByteBuffer chunk(int row)
+	{
+		return buffers()[row / rowsPerChunk];
+	}
+
+	private ByteBuffer[] buffers()
+	{
+		ByteBuffer[] bufs = chunks;
+		if (bufs == null) {
+			throw new IllegalStateException("Matrix has been closed.");
+		}
+		return bufs;
+	}
+
+	private int offset(int row, int column)
+	{
+		return ((row % rowsPerChunk) * columns + column) * 8;
+	}
+
+	private void checkRow(int row)
+	{
+		if (row < 0 || row >= rows) {
+			throw new IndexOutOfBoundsException("Row " + row + " outside 0.." + (rows - 1));
+		}
+	}
+
+	private void checkColumn(int column)
+	{
+		if (column < 0 || column >= columns) {
+			throw new IndexOutOfBoundsException("Column " + column + " outside 0.." + (columns - 1));
+		}
+	}
+
+	//Zero-copy view of one path (all years)
+	public final class Row {
+		private final int row;
+
+		private Row(int row)
+		{
+			this.row = row;
+		}
+
+		public int length()
+		{
+			return columns;
+		}
+
+		public double get(int year)
+		{
+			return BalanceMatrix.this.get(row, year);
+		}
+
+		public double[] copyTo(double[] dst)
+		{
+			if (dst.length < columns) {
+				throw new IndexOutOfBoundsException("Destination holds " + dst.length + " of " + columns + " years");
+			}
+			ByteBuffer buf = chunk(row);
+			int base = offset(row, 0);
+			for (int c = 0; c < columns; c++) {
+				dst[c] = buf.getDouble(base + 8 * c);
+			}
+			return dst;
+		}
+	}
+
+	//Zero-copy view of one year across all paths
+	public final class Column {
+		private final int column;
+
+		private Column(int column)
+		{
+			this.column = column;
+		}
+
+		public int length()
+		{
+			return rows;
+		}
+
+		public double get(int path)
+		{
+			return BalanceMatrix.this.get(path, column);
+		}
+
+		public double percentile(double percentile)
+		{
+			return columnPercentile(column, percentile);
+		}
+	}
+}
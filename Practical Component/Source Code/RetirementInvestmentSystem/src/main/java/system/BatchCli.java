@@ -0,0 +1,1088 @@
+package system;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/*
+Headless batch mode:  java -jar RetirementInvestmentSystem.jar --headless <command> [options] [files]
+
+Reads one scenario per line from the given files (or stdin when none / "-")
+and streams one CSV result line per scenario to stdout, so runs can be chained
+in shell pipelines. Blank lines and lines starting with '#' are skipped; bad
+lines, and lines whose run fails, are reported on stderr with their line
+number and processing continues. Each command takes only the options listed
+for it in the usage text; any other option is a usage error, never ignored.
+
+With --render DIR the calculator commands also write <id>.png per scenario
+through ChartRenderService, while the CSV keeps streaming on this thread.
+
+With --exact the calculator commands work in whole cents rounded once a year
+(CentsKernel), half-even unless --rounding picks half-up or down.
+
+With --export FILE the calculator commands also stream every scenario's
+year-by-year balances to FILE (HistoryExporter) from the same kernel pass that
+produces the CSV line; --format csv|jsonl|binary, else by file extension.
+
+With --store FILE every calculator result is also appended to that
+ScenarioStore (client = the line's id, tag = the command). The replay command
+re-runs stored scenarios, optionally filtered, and prints the stored next to
+the recomputed figure.
+
+The montecarlo command runs each line over --paths rate paths drawn from a
+stochastic --model (RateModels.parse) through MonteCarloEngine; the same
+--seed always reproduces the same figures. The strategy command runs each
+line's WithdrawalStrategy over the same kind of paths (StrategyEvaluator), and
+sustainable finds the largest withdrawal lasting on --confidence of them
+(SustainableWithdrawal).
+
+With --keep-paths montecarlo keeps every path's year-by-year balances in an
+off-heap BalanceMatrix (8 bytes per path-year, outside the GC heap; size it
+with -XX:MaxDirectMemorySize) and reads the percentiles back from it, instead
+of folding the years into sketches as the paths run.
+
+The drawdown command reads every line into one DrawdownEngine household book,
+runs the whole book in parallel and then prints one line per household.
+
+With --backend SPEC the montecarlo, strategy and sustainable commands read the
+whole book first and hand it to an ExecutionBackend: forkjoin[:N] (a pool of N
+threads), virtual[:N] (a thread per shard) or processes[:N] (N worker JVMs
+started as Launcher --worker). Every shard runs this class in shard mode
+(--shard: "id TAB line" in, "+csv" or "!error" out, see ExecutionBackend) and
+the merged output is printed in input order, exactly as without --backend.
+
+This class must never touch Swing or JFreeChart: Launcher dispatches here
+before MainWindow is loaded, which keeps start-up in the tens of milliseconds.
+Only --render loads the chart classes, and only once rendering starts.
+*/
+public final class BatchCli {
+
+	static final int OK = 0;
+	static final int INPUT_ERRORS = 1;
+	static final int USAGE = 2;
+
+	//Stored scenarios decoded and re-run per parallel batch, so replay memory stays flat
+	private static final int REPLAY_CHUNK = 4096;
+
+	private static final int DEFAULT_PATHS = 10000;
+	// Quantile sketch size for the Monte Carlo percentiles (about one percentile rank of error)
+	private static final int SKETCH_K = 200;
+
+	private static final String USAGE_TEXT =
+			"Usage: --headless <command> [--no-header] [options] [files...]%n"
+			+ "Commands, their options and line formats ([id] is optional, rates as in the GUI: 5 = 5%%):%n"
+			+ "  growth, variable, deplete, optimize:  [--exact [--rounding MODE]] [--render DIR [--threads N]]%n"
+			+ "            [--export FILE [--format F]] [--store FILE]%n"
+			+ "  growth    [id] principal rate years%n"
+			+ "  variable  [id] principal rate1 rate2 ...%n"
+			+ "  deplete   [id] balance expense rate%n"
+			+ "  optimize  [id] balance rate target_years%n"
+			+ "  backtest  --returns FILE   [id] balance expense horizon [inflation]%n"
+			+ "  replay    [--store FILE] [--client NAME] [--tag TAG] [--last N]   (no input lines)%n"
+			+ "  montecarlo --model SPEC [--paths N] [--seed S] [--keep-paths]   [id] balance expense horizon%n"
+			+ "  strategy   --model SPEC [--paths N] [--seed S]   [id] balance horizon strategy%n"
+			+ "  sustainable --model SPEC [--paths N] [--seed S] [--confidence C]   [id] balance horizon [inflation]%n"
+			+ "             [--backend forkjoin[:N]|virtual[:N]|processes[:N]]   (montecarlo, strategy, sustainable)%n"
+			+ "  drawdown  [--growth T,D,F] [--tax ORD,GAINS]   [id] taxable basis deferred tax_free spending horizon%n"
+			+ "            [inflation] [order: taxable-first|deferred-first|tax-free-first|proportional]%n"
+			+ "Models (decimal parameters, defaults shown): vasicek[:0.05,0.3,0.05,0.02] cir[:0.05,0.3,0.05,0.1]%n"
+			+ "  regime[:0.10,0.12,0.9,-0.05,0.25,0.7] garch[:0.06,0.0008,0.1,0.85]%n"
+			+ "Strategies (decimal): constant:rate[,inflation] percent:rate floor-ceiling:rate,floor,ceiling[,inflation]%n"
+			+ "  guardrails:rate[,inflation[,guard,adjustment]]%n"
+			+ "Rounding modes for --exact: half-even (default), half-up, down%n";
+
+	//Options each command takes; any other option on its command line is a usage error
+	private static final java.util.Map<String, List<String>> OPTIONS = new java.util.HashMap<>();
+
+	static {
+		List<String> calculator = java.util.Arrays.asList("--no-header", "--exact", "--rounding", "--render", "--threads",
+				"--export", "--format", "--store");
+		for (String command : new String[] { "growth", "variable", "deplete", "optimize" }) {
+			OPTIONS.put(command, calculator);
+		}
+		OPTIONS.put("backtest", java.util.Arrays.asList("--no-header", "--returns"));
+		OPTIONS.put("replay", java.util.Arrays.asList("--no-header", "--store", "--client", "--tag", "--last"));
+		OPTIONS.put("montecarlo", java.util.Arrays.asList("--no-header", "--model", "--paths", "--seed", "--keep-paths",
+				"--backend", "--shard"));
+		OPTIONS.put("strategy", java.util.Arrays.asList("--no-header", "--model", "--paths", "--seed", "--backend", "--shard"));
+		OPTIONS.put("sustainable", java.util.Arrays.asList("--no-header", "--model", "--paths", "--seed", "--confidence",
+				"--backend", "--shard"));
+		OPTIONS.put("drawdown", java.util.Arrays.asList("--no-header", "--growth", "--tax"));
+	}
+
+	private BatchCli()
+	{
+	}
+
+	public static void main(String[] args)
+	{
+		System.exit(run(args, System.in, System.out, System.err));
+	}
+
+	static int run(String[] args, java.io.InputStream stdin, PrintStream stdout, PrintStream stderr)
+	{
+		if (args.length == 0) {
+			stderr.printf(USAGE_TEXT);
+			return USAGE;
+		}
+		String command = args[0].toLowerCase(Locale.ROOT);
+		List<String> accepted = OPTIONS.get(command);
+		if (accepted == null) {
+			stderr.printf("Unknown command '%s'%n", args[0]);
+			stderr.printf(USAGE_TEXT);
+			return USAGE;
+		}
+		Options options = Options.parse(command, args, accepted, stderr);
+		if (options == null) {
+			return USAGE;
+		}
+
+		Setup setup;
+		try {
+			switch (command) {
+			case "replay":
+				try (ScenarioStore log = ScenarioStore.open(options.storeFile != null
+						? Paths.get(options.storeFile) : ScenarioStore.defaultPath())) {
+					return replay(log, options.client, options.tag, options.last, options.header, stdout, stderr);
+				}
+			case "backtest":
+				setup = backtest(options, stderr);
+				break;
+			case "montecarlo":
+			case "strategy":
+			case "sustainable":
+				setup = simulation(options, stderr);
+				break;
+			case "drawdown":
+				setup = drawdown(options, stderr);
+				break;
+			default:
+				setup = calculator(options);
+				break;
+			}
+		} catch (IOException ex) {
+			stderr.println(ex.getMessage());
+			return USAGE;
+		}
+		if (setup == null) {
+			return USAGE;
+		}
+
+		if (options.backendSpec != null) {
+			ExecutionBackend backend;
+			try {
+				backend = ExecutionBackend.parse(options.backendSpec);
+			} catch (IllegalArgumentException bad) {
+				stderr.println(bad.getMessage());
+				return USAGE;
+			}
+			try {
+				return runBook(backend, options.forwarded.toArray(new String[0]), options.inputs, stdin,
+						options.header ? setup.headerLine : null, stdout, stderr);
+			} finally {
+				backend.close();
+			}
+		}
+		return stream(options, setup, stdin, stdout, stderr);
+	}
+
+
+	//One command line: the command, the options it was given and its input files
+	private static final class Options {
+
+		final String command;
+		boolean header = true;
+		boolean shard;
+		String returnsFile;
+		String renderDir;
+		int threads = Runtime.getRuntime().availableProcessors();
+		ScenarioEngine.Precision precision = ScenarioEngine.Precision.DOUBLE;
+		String storeFile;
+		String exportFile;
+		HistoryExporter.Format format;
+		String client;
+		String tag;
+		int last = Integer.MAX_VALUE;
+		String modelSpec;
+		int paths = DEFAULT_PATHS;
+		long seed = 1;
+		boolean keepPaths;
+		double confidence = 0.9;
+		String growthRates;
+		String taxRates;
+		String backendSpec;
+		final List<String> inputs = new ArrayList<>();
+		// Command and options as a shard re-runs them: no inputs, header or --backend
+		final List<String> forwarded = new ArrayList<>();
+
+		private Options(String command)
+		{
+			this.command = command;
+			forwarded.add(command);
+		}
+
+		//Reads args[1..]; prints the problem and returns null on a usage error
+		static Options parse(String command, String[] args, List<String> accepted, PrintStream stderr)
+		{
+			Options o = new Options(command);
+			String rounding = null;
+			boolean threadsGiven = false;
+			String exportFormat = null;
+			for (int i = 1; i < args.length; i++) {
+				String option = args[i];
+				if (!option.startsWith("--")) {
+					o.inputs.add(option);
+					continue;
+				}
+				if (!accepted.contains(option)) {
+					stderr.printf("%s is not available for %s%n", option, command);
+					return null;
+				}
+				int start = i;
+				String value = null;
+				if (takesValue(option)) {
+					if (++i == args.length) {
+						stderr.println(option + " needs a value");
+						return null;
+					}
+					value = args[i];
+				}
+				switch (option) {
+				case "--no-header":
+					o.header = false;
+					break;
+				case "--shard":
+					o.shard = true;
+					o.header = false;
+					break;
+				case "--keep-paths":
+					o.keepPaths = true;
+					break;
+				case "--exact":
+					o.precision = ScenarioEngine.Precision.CENTS_HALF_EVEN;
+					break;
+				case "--backend":
+					o.backendSpec = value;
+					break;
+				case "--returns":
+					o.returnsFile = value;
+					break;
+				case "--rounding":
+					rounding = value;
+					break;
+				case "--store":
+					o.storeFile = value;
+					break;
+				case "--export":
+					o.exportFile = value;
+					break;
+				case "--format":
+					exportFormat = value;
+					break;
+				case "--client":
+					o.client = value;
+					break;
+				case "--tag":
+					o.tag = value;
+					break;
+				case "--model":
+					o.modelSpec = value;
+					break;
+				case "--growth":
+					o.growthRates = value;
+					break;
+				case "--tax":
+					o.taxRates = value;
+					break;
+				case "--render":
+					o.renderDir = value;
+					break;
+				case "--last":
+				case "--paths":
+				case "--threads": {
+					int n;
+					try {
+						n = Integer.parseInt(value);
+					} catch (NumberFormatException nf) {
+						n = 0;
+					}
+					if (n <= 0) {
+						stderr.println(option + " must be a positive whole number");
+						return null;
+					}
+					if (option.equals("--last")) {
+						o.last = n;
+					} else if (option.equals("--paths")) {
+						o.paths = n;
+					} else {
+						o.threads = n;
+						threadsGiven = true;
+					}
+					break;
+				}
+				case "--seed":
+					try {
+						o.seed = Long.parseLong(value);
+					} catch (NumberFormatException nf) {
+						stderr.println("--seed must be a whole number");
+						return null;
+					}
+					break;
+				case "--confidence":
+					try {
+						o.confidence = Double.parseDouble(value);
+					} catch (NumberFormatException nf) {
+						o.confidence = 0;
+					}
+					if (!(o.confidence > 0 && o.confidence <= 1)) {
+						stderr.println("--confidence must be above 0 and at most 1");
+						return null;
+					}
+					break;
+				default:
+					throw new IllegalStateException("No parser for " + option);
+				}
+				if (!option.equals("--no-header") && !option.equals("--backend")) {
+					o.forwarded.addAll(java.util.Arrays.asList(args).subList(start, i + 1));
+				}
+			}
+			if (o.inputs.isEmpty()) {
+				o.inputs.add("-");
+			}
+			if (o.backendSpec != null && o.shard) {
+				stderr.println("--backend cannot be combined with --shard");
+				return null;
+			}
+			if (rounding != null) {
+				if (!o.precision.isExact()) {
+					stderr.println("--rounding only applies with --exact");
+					return null;
+				}
+				try {
+					o.precision = ScenarioEngine.Precision.valueOf("CENTS_" + rounding.toUpperCase(Locale.ROOT).replace('-', '_'));
+				} catch (IllegalArgumentException unknown) {
+					stderr.println("--rounding must be half-even, half-up or down");
+					return null;
+				}
+			}
+			if (threadsGiven && o.renderDir == null) {
+				stderr.println("--threads only applies with --render");
+				return null;
+			}
+			if (o.exportFile == null && exportFormat != null) {
+				stderr.println("--format only applies with --export");
+				return null;
+			}
+			if (o.exportFile != null) {
+				if (o.renderDir != null || o.precision.isExact()) {
+					stderr.println("--export streams the double kernels and cannot be combined with --render or --exact");
+					return null;
+				}
+				try {
+					o.format = exportFormat != null
+							? HistoryExporter.Format.parse(exportFormat)
+							: HistoryExporter.Format.forFileName(o.exportFile);
+				} catch (IllegalArgumentException bad) {
+					stderr.println("--format must be csv, jsonl or binary");
+					return null;
+				}
+			}
+			return o;
+		}
+
+		private static boolean takesValue(String option)
+		{
+			return !(option.equals("--no-header") || option.equals("--shard") || option.equals("--keep-paths")
+					|| option.equals("--exact"));
+		}
+	}
+
+
+	//How a command handles its lines, and what has to be closed or flushed after the last one
+	private static final class Setup {
+
+		String headerLine;
+		LineHandler handler;
+		ChartRenderService renderer;
+		ScenarioStore store;
+		HistoryExporter exporter;
+		DrawdownEngine drawdown;
+		DrawdownEngine.Book book;
+	}
+
+	//growth, variable, deplete and optimize, optionally rendering, exporting or storing each result
+	private static Setup calculator(Options o) throws IOException
+	{
+		String command = o.command;
+		ScenarioEngine.Precision mode = o.precision;
+		Scenario.Kind kind = Scenario.Kind.valueOf(command.toUpperCase(Locale.ROOT));
+		Setup setup = new Setup();
+		setup.headerLine = ScenarioResult.csvHeader(kind);
+		Evaluator evaluator;
+		if (o.exportFile != null) {
+			HistoryExporter histories = HistoryExporter.open(Paths.get(o.exportFile), o.format);
+			setup.exporter = histories;
+			evaluator = s -> ScenarioEngine.stream(s, histories.series(s.getId()));
+		} else if (o.renderDir == null) {
+			evaluator = s -> ScenarioEngine.evaluate(s, false, mode);
+		} else {
+			Path dir = Files.createDirectories(Paths.get(o.renderDir));
+			ChartRenderService service = new ChartRenderService(o.threads);
+			setup.renderer = service;
+			evaluator = s -> render(service, dir, s, mode);
+		}
+		if (o.storeFile == null) {
+			setup.handler = (line, id) -> evaluator.evaluate(Scenario.parse(kind, line, id)).toCsv();
+		} else {
+			ScenarioStore log = ScenarioStore.open(Paths.get(o.storeFile));
+			setup.store = log;
+			setup.handler = (line, id) -> record(log, command, evaluator.evaluate(Scenario.parse(kind, line, id)), mode);
+		}
+		return setup;
+	}
+
+	private static Setup backtest(Options o, PrintStream stderr) throws IOException
+	{
+		if (o.returnsFile == null) {
+			stderr.println("backtest needs --returns FILE");
+			return null;
+		}
+		HistoricalBacktester backtester = HistoricalBacktester.load(Paths.get(o.returnsFile));
+		Setup setup = new Setup();
+		setup.headerLine = "id,windows,successes,success_rate,worst_terminal,worst_start,best_terminal,best_start";
+		setup.handler = (line, id) -> backtestLine(backtester, line, id);
+		return setup;
+	}
+
+	//montecarlo, strategy and sustainable over paths of one --model
+	private static Setup simulation(Options o, PrintStream stderr)
+	{
+		if (o.modelSpec == null) {
+			stderr.println(o.command + " needs --model");
+			return null;
+		}
+		MonteCarloEngine engine;
+		try {
+			engine = new MonteCarloEngine(RateModels.parse(o.modelSpec), o.seed);
+		} catch (IllegalArgumentException bad) {
+			stderr.println(bad.getMessage());
+			return null;
+		}
+		int paths = o.paths;
+		Setup setup = new Setup();
+		if (o.command.equals("sustainable")) {
+			double share = o.confidence;
+			SustainablePaths cache = new SustainablePaths(engine, paths);
+			setup.headerLine = "id,paths,confidence,withdrawal,success_rate,iterations,cost_multiple";
+			setup.handler = (line, id) -> sustainableLine(cache, share, line, id);
+		} else if (o.command.equals("strategy")) {
+			setup.headerLine = "id,strategy,paths,success_rate,mean_terminal,mean_withdrawn,mean_lowest_withdrawal,worst_withdrawal";
+			setup.handler = (line, id) -> strategyLine(engine, paths, line, id);
+		} else {
+			boolean keepPaths = o.keepPaths;
+			setup.headerLine = "id,paths,success_rate,p5_terminal,p50_terminal,p95_terminal,mean_terminal,median_depletion_year";
+			setup.handler = (line, id) -> monteCarloLine(engine, paths, keepPaths, line, id);
+		}
+		return setup;
+	}
+
+	//Collects the households; the book runs once every line has been read
+	private static Setup drawdown(Options o, PrintStream stderr)
+	{
+		Setup setup = new Setup();
+		try {
+			double[] g = decimals(o.growthRates != null ? o.growthRates : "0.05,0.05,0.05", 3, "--growth");
+			double[] t = decimals(o.taxRates != null ? o.taxRates : "0.22,0.15", 2, "--tax");
+			setup.drawdown = new DrawdownEngine(g[0], g[1], g[2], t[0], t[1]);
+		} catch (IllegalArgumentException bad) {
+			stderr.println(bad.getMessage());
+			return null;
+		}
+		DrawdownEngine.Book households = new DrawdownEngine.Book();
+		setup.book = households;
+		setup.headerLine = "id,order,years_lasted,taxable,deferred,tax_free,taxes_paid";
+		setup.handler = (line, id) -> {
+			addHousehold(households, line, id);
+			return null;
+		};
+		return setup;
+	}
+
+	//Streams every input through the command's handler on this thread, then closes what it opened
+	private static int stream(Options o, Setup setup, java.io.InputStream stdin, PrintStream stdout, PrintStream stderr)
+	{
+		Writer out = output(stdout);
+		int errors = 0;
+		try {
+			if (o.header) {
+				out.write(setup.headerLine);
+				out.write('\n');
+			}
+			for (String input : o.inputs) {
+				errors += process(input, stdin, setup.handler, o.shard, out, stderr);
+			}
+			DrawdownEngine.Book book = setup.book;
+			if (book != null) {
+				setup.drawdown.run(book);
+				for (int h = 0; h < book.size(); h++) {
+					out.write(String.format(Locale.ROOT, "%s,%s,%d,%.2f,%.2f,%.2f,%.2f\n", book.id(h),
+							book.order(h).name().toLowerCase(Locale.ROOT).replace('_', '-'), book.yearsLasted(h),
+							book.terminal(h, DrawdownEngine.TAXABLE), book.terminal(h, DrawdownEngine.TAX_DEFERRED),
+							book.terminal(h, DrawdownEngine.TAX_FREE), book.taxesPaid(h)));
+				}
+			}
+			out.flush();
+		} catch (IOException ex) {
+			stderr.println("I/O error: " + ex.getMessage());
+			return INPUT_ERRORS;
+		} catch (UncheckedIOException ex) {
+			stderr.println("I/O error: " + ex.getCause().getMessage());
+			return INPUT_ERRORS;
+		} finally {
+			if (setup.renderer != null) {
+				try {
+					setup.renderer.close();
+				} catch (IllegalStateException failed) {
+					for (String failure : setup.renderer.failures()) {
+						stderr.println("render failed: " + failure);
+						errors++;
+					}
+				}
+			}
+			closeQuietly(setup.store, stderr);
+			if (setup.exporter != null) {
+				try {
+					setup.exporter.close();
+				} catch (IOException ex) {
+					stderr.println("Export failed: " + ex.getMessage());
+					errors++;
+				}
+			}
+		}
+		return errors == 0 ? OK : INPUT_ERRORS;
+	}
+
+
+	//Streams one input; returns the number of rejected lines. In shard mode each line carries its
+	//default id before a tab and every line answers with "+result" or "!error" on out
+	private static int process(String input, java.io.InputStream stdin, LineHandler handler, boolean shard, Writer out,
+			PrintStream stderr) throws IOException
+	{
+		boolean isStdin = "-".equals(input);
+		String source = isStdin ? "stdin" : input;
+		int errors = 0;
+		int lineNo = 0;
+
+		Reader reader = isStdin
+				? new InputStreamReader(stdin, StandardCharsets.UTF_8)
+				: Files.newBufferedReader(Paths.get(input), StandardCharsets.UTF_8);
+		BufferedReader in = new BufferedReader(reader, 1 << 16);
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				lineNo++;
+				String trimmed = line.trim();
+				if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+					continue;
+				}
+				String id = String.valueOf(lineNo);
+				int tab = shard ? trimmed.indexOf('\t') : -1;
+				if (tab >= 0) {
+					id = trimmed.substring(0, tab);
+					trimmed = trimmed.substring(tab + 1).trim();
+				}
+				try {
+					String result = handler.handle(trimmed, id);
+					if (result != null) {
+						if (shard) {
+							out.write('+');
+						}
+						out.write(result);
+						out.write('\n');
+					}
+				} catch (UncheckedIOException broken) {
+					// The output or the store failed, not this line
+					throw broken;
+				} catch (RuntimeException bad) {
+					if (shard) {
+						out.write('!');
+						out.write(problem(bad).replace('\n', ' '));
+						out.write('\n');
+					} else {
+						stderr.printf("%s:%d: %s%n", source, lineNo, problem(bad));
+					}
+					errors++;
+				}
+			}
+		} finally {
+			if (!isStdin) {
+				in.close();
+			}
+		}
+		return errors;
+	}
+
+	//What to tell the user about a rejected line: the message of a bad input, else the unexpected failure itself
+	private static String problem(RuntimeException ex)
+	{
+		if (ex instanceof IllegalArgumentException && ex.getMessage() != null) {
+			return ex.getMessage();
+		}
+		return ex.getMessage() == null ? ex.getClass().getName() : ex.getClass().getName() + ": " + ex.getMessage();
+	}
+
+	//Reads the whole book, runs it on the backend and prints the merged output in input order
+	private static int runBook(ExecutionBackend backend, String[] shardArgs, List<String> inputs, java.io.InputStream stdin,
+			String headerLine, PrintStream stdout, PrintStream stderr)
+	{
+		List<String> entries = new ArrayList<>();
+		List<String> origins = new ArrayList<>();
+		String[] args = java.util.Arrays.copyOf(shardArgs, shardArgs.length + 1);
+		args[shardArgs.length] = "--shard";
+		Writer out = output(stdout);
+		int errors = 0;
+		try {
+			for (String input : inputs) {
+				boolean isStdin = "-".equals(input);
+				BufferedReader in = new BufferedReader(isStdin
+						? new InputStreamReader(stdin, StandardCharsets.UTF_8)
+						: Files.newBufferedReader(Paths.get(input), StandardCharsets.UTF_8), 1 << 16);
+				try {
+					String line;
+					int lineNo = 0;
+					while ((line = in.readLine()) != null) {
+						lineNo++;
+						String trimmed = line.trim();
+						if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+							entries.add(lineNo + "\t" + trimmed);
+							origins.add((isStdin ? "stdin" : input) + ":" + lineNo);
+						}
+					}
+				} finally {
+					if (!isStdin) {
+						in.close();
+					}
+				}
+			}
+			List<String> results;
+			try {
+				results = backend.run(args, entries);
+			} catch (IllegalArgumentException rejected) {
+				stderr.println(rejected.getMessage());
+				return USAGE;
+			} catch (UncheckedIOException broken) {
+				throw broken;
+			} catch (RuntimeException failed) {
+				// Shards answer bad lines with "!"; this is a shard that died as a whole
+				stderr.println("Shard failed: " + problem(failed));
+				return INPUT_ERRORS;
+			}
+			if (headerLine != null) {
+				out.write(headerLine);
+				out.write('\n');
+			}
+			for (int e = 0; e < results.size(); e++) {
+				String result = results.get(e);
+				if (result.startsWith("+")) {
+					out.write(result, 1, result.length() - 1);
+					out.write('\n');
+				} else {
+					stderr.printf("%s: %s%n", origins.get(e), result.substring(1));
+					errors++;
+				}
+			}
+			out.flush();
+		} catch (IOException ex) {
+			stderr.println("I/O error: " + ex.getMessage());
+			return INPUT_ERRORS;
+		} catch (UncheckedIOException ex) {
+			stderr.println("I/O error: " + ex.getCause().getMessage());
+			return INPUT_ERRORS;
+		}
+		return errors == 0 ? OK : INPUT_ERRORS;
+	}
+
+	//One shard of a book in this JVM (ExecutionBackend): entries in, output entries out
+	static List<String> runShard(String[] args, List<String> entries)
+	{
+		StringBuilder input = new StringBuilder();
+		for (String entry : entries) {
+			input.append(entry).append('\n');
+		}
+		java.io.ByteArrayOutputStream captured = new java.io.ByteArrayOutputStream();
+		java.io.ByteArrayOutputStream problems = new java.io.ByteArrayOutputStream();
+		int exit;
+		try (PrintStream shardOut = new PrintStream(captured, false, "UTF-8");
+				PrintStream shardErr = new PrintStream(problems, false, "UTF-8")) {
+			exit = run(args, new java.io.ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8)),
+					shardOut, shardErr);
+		} catch (java.io.UnsupportedEncodingException impossible) {
+			throw new IllegalStateException(impossible);
+		}
+		if (exit == USAGE) {
+			throw new IllegalArgumentException(new String(problems.toByteArray(), StandardCharsets.UTF_8).trim());
+		}
+		List<String> out = new ArrayList<>(entries.size());
+		for (String line : new String(captured.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+			if (!line.isEmpty()) {
+				out.add(line);
+			}
+		}
+		return out;
+	}
+
+	//Evaluates with history and queues the chart; the result is returned straight away
+	private static ScenarioResult render(ChartRenderService renderer, Path dir, Scenario s, ScenarioEngine.Precision precision)
+	{
+		ScenarioResult result = ScenarioEngine.evaluate(s, true, precision);
+		renderer.submit(result, dir.resolve(fileName(s.getId()) + ".png"));
+		return result;
+	}
+
+	//Appends the run to the store and returns its CSV line
+	private static String record(ScenarioStore store, String command, ScenarioResult result, ScenarioEngine.Precision precision)
+	{
+		try {
+			store.append(result.getScenario().getId(), command, result, precision);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return result.toCsv();
+	}
+
+	//Re-runs the selected stored scenarios in parallel chunks, streaming one line per run; a run that fails is reported and skipped
+	private static int replay(ScenarioStore store, String client, String tag, int last, boolean header,
+			PrintStream stdout, PrintStream stderr) throws IOException
+	{
+		List<ScenarioStore.Entry> selection = client != null ? store.byClient(client)
+				: tag != null ? store.byTag(tag) : store.all();
+		if (client != null && tag != null) {
+			selection.removeIf(e -> !e.getTag().equals(tag));
+		}
+		if (selection.size() > last) {
+			selection = selection.subList(selection.size() - last, selection.size());
+		}
+		if (store.droppedBytes() > 0) {
+			stderr.printf("%s: ignored %d bytes of a damaged tail%n", store.path(), store.droppedBytes());
+		}
+
+		Writer out = output(stdout);
+		if (header) {
+			out.write("time,client,tag,kind,id,stored,replayed,match\n");
+		}
+		int changed = 0;
+		int failed = 0;
+		for (int from = 0; from < selection.size(); from += REPLAY_CHUNK) {
+			List<ScenarioStore.Entry> chunk = selection.subList(from, Math.min(selection.size(), from + REPLAY_CHUNK));
+			List<ScenarioResult> replayed;
+			try {
+				replayed = store.replay(chunk);
+			} catch (UncheckedIOException broken) {
+				throw broken;
+			} catch (RuntimeException bad) {
+				// One run in the chunk cannot be replayed: redo the chunk one run at a time to find it
+				replayed = null;
+			}
+			for (int i = 0; i < chunk.size(); i++) {
+				ScenarioStore.Entry e = chunk.get(i);
+				String before;
+				ScenarioResult rerun;
+				try {
+					before = figure(store.read(e));
+					rerun = replayed != null ? replayed.get(i) : store.replay(Collections.singletonList(e)).get(0);
+				} catch (UncheckedIOException broken) {
+					throw broken;
+				} catch (RuntimeException bad) {
+					stderr.printf("%s: run %d (%s, client %s, tag %s): %s%n", store.path(), from + i + 1,
+							Instant.ofEpochMilli(e.getTime()), e.getClient(), e.getTag(), problem(bad));
+					failed++;
+					continue;
+				}
+				String after = figure(rerun);
+				boolean match = before.equals(after);
+				if (!match) {
+					changed++;
+				}
+				out.write(String.format(Locale.ROOT, "%s,%s,%s,%s,%s,%s,%s,%s\n", Instant.ofEpochMilli(e.getTime()),
+						e.getClient(), e.getTag(), e.getKind().name().toLowerCase(Locale.ROOT),
+						rerun.getScenario().getId(), before, after, match));
+			}
+		}
+		out.flush();
+		if (changed > 0) {
+			stderr.printf("%d of %d replayed scenarios differ from their stored result%n", changed, selection.size());
+		}
+		return changed == 0 && failed == 0 ? OK : INPUT_ERRORS;
+	}
+
+	//The figure compared on replay: years lasted for depletion, otherwise the money amount
+	private static String figure(ScenarioResult r)
+	{
+		return r.getScenario().getKind() == Scenario.Kind.DEPLETE
+				? r.getYearsLasted() + "y/" + r.formatAmount()
+				: r.formatAmount();
+	}
+
+	// Unbuffered System.out flushes per line; write through our own buffer instead
+	private static Writer output(PrintStream stdout)
+	{
+		return new BufferedWriter(new OutputStreamWriter(
+				stdout == System.out ? new FileOutputStream(FileDescriptor.out) : stdout, StandardCharsets.UTF_8), 1 << 16);
+	}
+
+	private static void closeQuietly(ScenarioStore store, PrintStream stderr)
+	{
+		if (store != null) {
+			try {
+				store.close();
+			} catch (IOException ex) {
+				stderr.println("I/O error: " + ex.getMessage());
+			}
+		}
+	}
+
+	//Keeps ids usable as file names on every platform
+	private static String fileName(String id)
+	{
+		return id.replaceAll("[^A-Za-z0-9._-]", "_");
+	}
+
+	private static String backtestLine(HistoricalBacktester backtester, String line, String defaultId)
+	{
+		String[] tokens = line.split("[,;\\s]+");
+		int first = 0;
+		String id = defaultId;
+		try {
+			Double.parseDouble(tokens[0]);
+		} catch (NumberFormatException nf) {
+			id = tokens[0];
+			first = 1;
+		}
+		int n = tokens.length - first;
+		if (n < 3 || n > 4) {
+			throw new IllegalArgumentException("backtest expects: balance expense horizon [inflation]");
+		}
+		try {
+			double balance = Double.parseDouble(tokens[first]);
+			double expense = Double.parseDouble(tokens[first + 1]);
+			int horizon = Integer.parseInt(tokens[first + 2]);
+			double inflation = n == 4 ? Double.parseDouble(tokens[first + 3]) : 0.0;
+			if (inflation >= 1) {
+				inflation /= 100.0;
+			}
+			BacktestReport r = backtester.run(balance, WithdrawalSchedule.inflationIndexed(expense, inflation), horizon);
+			return String.format(Locale.ROOT, "%s,%d,%d,%.4f,%.2f,%d,%.2f,%d", id, r.getWindows(), r.getSuccesses(),
+					r.getSuccessRate(), r.getWorstTerminal(), r.getWorstStartYear(), r.getBestTerminal(), r.getBestStartYear());
+		} catch (NumberFormatException nf) {
+			throw new IllegalArgumentException("Invalid datatype. All fields must be in number format.");
+		}
+	}
+
+
+	private static String monteCarloLine(MonteCarloEngine engine, int paths, boolean keepPaths, String line, String defaultId)
+	{
+		String[] tokens = line.split("[,;\\s]+");
+		int first = 0;
+		String id = defaultId;
+		try {
+			Double.parseDouble(tokens[0]);
+		} catch (NumberFormatException nf) {
+			id = tokens[0];
+			first = 1;
+		}
+		if (tokens.length - first != 3) {
+			throw new IllegalArgumentException("montecarlo expects: balance expense horizon");
+		}
+		double balance;
+		double expense;
+		int horizon;
+		try {
+			balance = Double.parseDouble(tokens[first]);
+			expense = Double.parseDouble(tokens[first + 1]);
+			horizon = Integer.parseInt(tokens[first + 2]);
+		} catch (NumberFormatException nf) {
+			throw new IllegalArgumentException("Invalid datatype. All fields must be in number format.");
+		}
+		if (!(balance >= 0) || !(expense >= 0) || horizon <= 0 || horizon > RetirementKernel.LIFETIME_CAP_YEARS) {
+			throw new IllegalArgumentException("Balance and expense cannot be negative; horizon must be 1 to "
+					+ RetirementKernel.LIFETIME_CAP_YEARS + " years.");
+		}
+		FanChartAggregator fan;
+		if (keepPaths) {
+			try (BalanceMatrix matrix = engine.depletionPaths(balance, expense, horizon, paths)) {
+				fan = FanChartAggregator.of(matrix, SKETCH_K);
+			}
+		} else {
+			fan = engine.depletionFan(balance, expense, horizon, paths, SKETCH_K);
+		}
+		String depletion = fan.depletionYears().count() == 0 ? ""
+				: String.valueOf((int) Math.round(fan.depletionYears().quantile(0.5)));
+		return String.format(Locale.ROOT, "%s,%d,%.4f,%.2f,%.2f,%.2f,%.2f,%s", id, fan.paths(), fan.successRate(),
+				fan.percentile(horizon, 5), fan.percentile(horizon, 50), fan.percentile(horizon, 95),
+				fan.yearStats(horizon).mean(), depletion);
+	}
+
+
+	//Line: [id] balance horizon strategy, whitespace separated (the strategy itself contains commas)
+	private static String strategyLine(MonteCarloEngine engine, int paths, String line, String defaultId)
+	{
+		String[] tokens = line.split("\\s+");
+		int first = tokens.length == 4 ? 1 : 0;
+		if (tokens.length - first != 3) {
+			throw new IllegalArgumentException("strategy expects: balance horizon strategy");
+		}
+		String id = first == 1 ? tokens[0] : defaultId;
+		double balance;
+		int horizon;
+		try {
+			balance = Double.parseDouble(tokens[first]);
+			horizon = Integer.parseInt(tokens[first + 1]);
+		} catch (NumberFormatException nf) {
+			throw new IllegalArgumentException("Invalid datatype. Balance and horizon must be in number format.");
+		}
+		WithdrawalStrategy strategy = WithdrawalStrategy.parse(tokens[first + 2]);
+		StrategyEvaluator.Summary s = StrategyEvaluator.evaluate(Collections.singletonList(
+				new StrategyEvaluator.Account(id, balance, horizon, strategy)), engine, paths).get(0);
+		return String.format(Locale.ROOT, "%s,\"%s\",%d,%.4f,%.2f,%.2f,%.2f,%.2f", id, strategy.describe(), s.paths(),
+				s.successRate(), s.terminalBalance().mean(), s.totalWithdrawn().mean(), s.lowestWithdrawal().mean(),
+				s.lowestWithdrawal().min());
+	}
+
+
+	private static String sustainableLine(SustainablePaths cache, double confidence, String line, String defaultId)
+	{
+		String[] tokens = line.split("[,;\\s]+");
+		int first = 0;
+		String id = defaultId;
+		try {
+			Double.parseDouble(tokens[0]);
+		} catch (NumberFormatException nf) {
+			id = tokens[0];
+			first = 1;
+		}
+		int n = tokens.length - first;
+		if (n < 2 || n > 3) {
+			throw new IllegalArgumentException("sustainable expects: balance horizon [inflation]");
+		}
+		double balance;
+		int horizon;
+		double inflation;
+		try {
+			balance = Double.parseDouble(tokens[first]);
+			horizon = Integer.parseInt(tokens[first + 1]);
+			inflation = n == 3 ? Double.parseDouble(tokens[first + 2]) : 0.0;
+		} catch (NumberFormatException nf) {
+			throw new IllegalArgumentException("Invalid datatype. All fields must be in number format.");
+		}
+		if (inflation >= 1) {
+			inflation /= 100.0;
+		}
+		SustainableWithdrawal.Result r = cache.forHorizon(horizon).solve(balance, inflation, confidence);
+		return String.format(Locale.ROOT, "%s,%d,%.4f,%.2f,%.4f,%d,%.2f", id, cache.paths, confidence, r.getWithdrawal(),
+				r.getSuccessRate(), r.getIterations(), r.getCostMultiple());
+	}
+
+
+	//Line: [id] taxable basis deferred tax_free spending horizon [inflation] [order]
+	private static void addHousehold(DrawdownEngine.Book book, String line, String defaultId)
+	{
+		String[] tokens = line.split("[,;\\s]+");
+		int first = 0;
+		String id = defaultId;
+		try {
+			Double.parseDouble(tokens[0]);
+		} catch (NumberFormatException nf) {
+			id = tokens[0];
+			first = 1;
+		}
+		int end = tokens.length;
+		DrawdownEngine.Order order = DrawdownEngine.Order.TAXABLE_FIRST;
+		if (end - first > 6 && Character.isLetter(tokens[end - 1].charAt(0))) {
+			order = DrawdownEngine.Order.parse(tokens[--end]);
+		}
+		int n = end - first;
+		if (n < 6 || n > 7) {
+			throw new IllegalArgumentException("drawdown expects: taxable basis deferred tax_free spending horizon [inflation] [order]");
+		}
+		try {
+			double inflation = n == 7 ? Double.parseDouble(tokens[first + 6]) : 0.0;
+			if (inflation >= 1) {
+				inflation /= 100.0;
+			}
+			book.add(id, Double.parseDouble(tokens[first]), Double.parseDouble(tokens[first + 1]),
+					Double.parseDouble(tokens[first + 2]), Double.parseDouble(tokens[first + 3]),
+					Double.parseDouble(tokens[first + 4]), inflation, Integer.parseInt(tokens[first + 5]), order);
+		} catch (NumberFormatException nf) {
+			throw new IllegalArgumentException("Invalid datatype. All fields must be in number format.");
+		}
+	}
+
+	private static double[] decimals(String list, int count, String option)
+	{
+		String[] tokens = list.split(",");
+		if (tokens.length != count) {
+			throw new IllegalArgumentException(option + " needs " + count + " comma separated decimals");
+		}
+		double[] out = new double[count];
+		try {
+			for (int i = 0; i < count; i++) {
+				out[i] = Double.parseDouble(tokens[i].trim());
+			}
+		} catch (NumberFormatException nf) {
+			throw new IllegalArgumentException(option + " needs " + count + " comma separated decimals");
+		}
+		return out;
+	}
+
+
+	//Keeps the stored paths of the last horizon, so consecutive lines with the same horizon share them
+	private static final class SustainablePaths {
+
+		private final MonteCarloEngine engine;
+		private final int paths;
+		private SustainableWithdrawal last;
+		private int lastHorizon;
+
+		SustainablePaths(MonteCarloEngine engine, int paths)
+		{
+			this.engine = engine;
+			this.paths = paths;
+		}
+
+		SustainableWithdrawal forHorizon(int horizon)
+		{
+			if (last == null || lastHorizon != horizon) {
+				last = null;
+				last = new SustainableWithdrawal(engine, paths, horizon);
+				lastHorizon = horizon;
+			}
+			return last;
+		}
+	}
+
+
+	private interface LineHandler {
+		String handle(String line, String defaultId);
+	}
+
+	private interface Evaluator {
+		ScenarioResult evaluate(Scenario s);
+	}
+}
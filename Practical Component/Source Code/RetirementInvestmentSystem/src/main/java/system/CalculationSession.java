@@ -0,0 +1,78 @@
+package system;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Calculation context of one window, server request thread or background job.
+
+Inputs arrive as immutable Scenario objects and leave as immutable
+ScenarioResults; the session itself only remembers the latest result per
+calculator and a run counter. Nothing is static, so any number of sessions
+can calculate at the same time without sharing state, and the latest-result
+slots are atomic references so a background job can publish into the same
+session the window reads from without locking.
+*/
+public final class CalculationSession {
+
+	private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+	private final int id;
+	private final AtomicReferenceArray<ScenarioResult> latest =
+			new AtomicReferenceArray<>(Scenario.Kind.values().length);
+	// Striped, so sessions shared by pool threads do not contend on the count
+	private final LongAdder runs = new LongAdder();
+
+	public CalculationSession()
+	{
+		this.id = NEXT_ID.incrementAndGet();
+	}
+
+
+	//Evaluates on the calling thread, with the history the charts need
+	public ScenarioResult calculate(Scenario request)
+	{
+		return calculate(request, ScenarioEngine.Precision.DOUBLE);
+	}
+
+	//As calculate(), in the given money precision
+	public ScenarioResult calculate(Scenario request, ScenarioEngine.Precision precision)
+	{
+		ScenarioResult result = ScenarioEngine.evaluate(request, true, precision);
+		latest.set(request.getKind().ordinal(), result);
+		runs.increment();
+		EngineMonitor.shared().count(EngineMonitor.Counter.SCENARIOS, 1);
+		return result;
+	}
+
+	//Evaluates on the given executor; the result is published to this session when done
+	public CompletableFuture<ScenarioResult> calculateAsync(Scenario request, Executor executor)
+	{
+		return CompletableFuture.supplyAsync(() -> calculate(request), executor);
+	}
+
+	//Most recent result of the given calculator, or null before its first run
+	public ScenarioResult latest(Scenario.Kind kind)
+	{
+		return latest.get(kind.ordinal());
+	}
+
+	public int id()
+	{
+		return id;
+	}
+
+	public long runs()
+	{
+		return runs.sum();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Session " + id + " (" + runs.sum() + " runs)";
+	}
+}
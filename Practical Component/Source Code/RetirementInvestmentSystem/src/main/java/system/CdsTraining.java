@@ -0,0 +1,143 @@
+package system;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.table.DefaultTableModel;
+
+import org.jfree.chart.JFreeChart;
+
+/*
+Training workload for the Class Data Sharing / AOT cache archive.
+
+Touches the classes a real session loads first: the calculator kernels, the
+--headless batch commands, the Swing components used on every page, and all
+three JFreeChart builders drawn into an off-screen image.
+
+With a display it then opens the real MainWindow, waits for the first frame,
+shows every page once and closes it, so the window, its peers, the toolkit
+and the look and feel go into the archive as well. Headless (a build server
+without a display) that step is skipped and says so: the archive then holds
+the kernels, the batch path and the lightweight Swing and chart classes, but
+none of the toolkit or window classes, and the GUI start only gets the JDK's
+default archive for those.
+Whatever is loaded here is what the archive can serve at the next start.
+*/
+final class CdsTraining {
+
+	private CdsTraining()
+	{
+	}
+
+	static void run()
+	{
+		long start = System.nanoTime();
+
+		// Kernels used by every calculator page
+		double withdrawal = MainWindow.maximumExpensed(500000, 0.05, 30);
+		List<Double> history = MainWindow.retirementHistory(500000, withdrawal, 0.05, 120);
+		List<Double> depletion = MainWindow.balanceSeries(500000, 40000, 0.05);
+		RetirementKernel.maximumExpensed(500000, WithdrawalSchedule.inflationIndexed(30000, 0.02),
+				0.05, 30, 120, RetirementKernel.Timing.WITHDRAW_FIRST);
+
+		// Headless batch path (Launcher --headless), fed from memory with output discarded. A rejected
+		// line would train the error path instead of the calculator, so it fails the run
+		java.io.PrintStream sink = new java.io.PrintStream(new java.io.ByteArrayOutputStream());
+		String[][] lines = {
+				{ "growth", "c1 500000 5 30\n" },        // principal rate years
+				{ "variable", "c1 100000 5 6 7\n" },     // principal rate1 rate2 ...
+				{ "deplete", "c1 500000 30000 5\n" },    // balance expense rate
+				{ "optimize", "c1 500000 5 30\n" } };    // balance rate target_years
+		for (String[] line : lines) {
+			java.io.ByteArrayOutputStream problems = new java.io.ByteArrayOutputStream();
+			int exit = BatchCli.run(new String[] { line[0] }, new java.io.ByteArrayInputStream(line[1].getBytes()), sink,
+					new java.io.PrintStream(problems));
+			if (exit != BatchCli.OK) {
+				throw new IllegalStateException("Training line for " + line[0] + " was rejected: " + problems.toString().trim());
+			}
+		}
+
+		// Lightweight Swing components the pages are built from (no peer, so headless is fine)
+		JPanel panel = new JPanel(new GridBagLayout());
+		panel.add(new JLabel("Balance"), new GridBagConstraints());
+		panel.add(new JTextField(15), new GridBagConstraints());
+		panel.add(new JButton("Calculate"), new GridBagConstraints());
+		panel.add(new JScrollPane(new JTable(new DefaultTableModel(new Object[] { "Year", "Rate (%)" }, 0))));
+
+		// Chart builders, rendered off-screen so the drawing path gets loaded too
+		render(MainWindow.buildFixedInvestmentChart(1000, 0.05, 30));
+		render(MainWindow.buildDepletionJFreeChart(depletion));
+		render(MainWindow.buildOptimalWithdrawalChart(history, withdrawal));
+
+		boolean window = trainWindow();
+
+		System.out.printf("CDS training run finished in %d ms (%s)%n", (System.nanoTime() - start) / 1000000,
+				window ? "window and every page included" : "headless: window classes not included");
+	}
+
+	//Opens the real window, waits for its first frame, visits every page and disposes it; false when headless
+	private static boolean trainWindow()
+	{
+		if (GraphicsEnvironment.isHeadless()) {
+			return false;
+		}
+		// Keep the user's scenario history out of the training run
+		if (System.getProperty("ris.store") == null) {
+			System.setProperty("ris.store", "none");
+		}
+		CountDownLatch opened = new CountDownLatch(1);
+		MainWindow[] window = new MainWindow[1];
+		try {
+			SwingUtilities.invokeAndWait(() -> {
+				window[0] = new MainWindow();
+				window[0].addWindowListener(new WindowAdapter() {
+					@Override
+					public void windowOpened(WindowEvent e)
+					{
+						opened.countDown();
+					}
+				});
+			});
+			if (!opened.await(60, TimeUnit.SECONDS)) {
+				throw new IllegalStateException("The window did not open within a minute.");
+			}
+			SwingUtilities.invokeAndWait(() -> {
+				window[0].visitAllPages();
+				window[0].dispose();
+			});
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while training the window", ex);
+		} catch (InvocationTargetException ex) {
+			throw new IllegalStateException("Window training failed", ex.getCause());
+		}
+		return true;
+	}
+
+	private static void render(JFreeChart chart)
+	{
+		BufferedImage image = new BufferedImage(700, 400, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		try {
+			chart.draw(g, new java.awt.geom.Rectangle2D.Double(0, 0, 700, 400));
+		} finally {
+			g.dispose();
+		}
+	}
+}
@@ -0,0 +1,310 @@
+package system;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/*
+Exact money arithmetic for the calculators: balances are whole cents in a long
+and are rounded back to a cent once per year, with a selectable rounding mode.
+
+The growth factor 1 + rate is held as an exact fraction num / 10^scale (rates
+are taken to 10 decimal places, which absorbs the binary noise of converting a
+typed percentage), so one year is a long multiply and divide. Only a balance
+too large for that product to fit in a long drops into BigDecimal, and it
+stays there for the rest of the run; everyday balances never allocate.
+
+Same conventions as RetirementKernel: withdraw first, then grow, and a year
+counts as lasted when its withdrawal could be (at least partly) paid.
+*/
+public final class CentsKernel {
+
+	public static final RoundingMode DEFAULT_ROUNDING = RoundingMode.HALF_EVEN;
+
+	//Decimal places kept from a rate (1e-10 = a millionth of a basis point)
+	private static final int RATE_SCALE = 10;
+
+	private static final int INITIAL_HISTORY = 128;
+
+	private CentsKernel()
+	{
+	}
+
+
+	//Dollars to whole cents, rounding half-even; throws when the amount does not fit in a long
+	public static long toCents(double dollars)
+	{
+		if (Double.isNaN(dollars) || Double.isInfinite(dollars)) {
+			throw new IllegalArgumentException("Amounts must be finite numbers.");
+		}
+		try {
+			return BigDecimal.valueOf(dollars).setScale(2, RoundingMode.HALF_EVEN).movePointRight(2).longValueExact();
+		} catch (ArithmeticException tooLarge) {
+			throw new IllegalArgumentException("Amount too large for exact cents.");
+		}
+	}
+
+
+	public static BigDecimal fixedInvestor(long principalCents, double rate, int years, RoundingMode rounding)
+	{
+		/*
+        Compound growth with the balance rounded to the cent every year.
+        Complexity: O(T) - Linear Time
+        Returns: (balance, scale 2)
+        */
+		return grow(principalCents, Factor.of(rate), null, years, rounding);
+	}
+
+
+	public static BigDecimal variableInvestor(long principalCents, double[] rates, int count, RoundingMode rounding)
+	{
+		/*
+        Growth over the first 'count' per-year decimal rates, rounded to the
+        cent every year.
+        Complexity: O(N) - Linear Time based on list size
+        Returns: (balance, scale 2)
+        */
+		return grow(principalCents, null, rates, count, rounding);
+	}
+
+
+	public static int yearsLasted(long balanceCents, long expenseCents, double rate, int capYears, RoundingMode rounding)
+	{
+		/*
+        Counts how many withdrawals the balance can fund, without recording history.
+        Complexity: O(T) - Linear Time, no allocation
+        Returns: (years_lasted)
+        */
+		return run(balanceCents, expenseCents, Factor.of(rate), capYears, rounding, null, null);
+	}
+
+
+	public static int yearsLasted(long balanceCents, long expenseCents, double rate, int capYears, RoundingMode rounding,
+			BigDecimal[] terminal)
+	{
+		/*
+        As yearsLasted(), also storing the exact terminal balance in terminal[0].
+        Complexity: O(T) - Linear Time
+        Returns: (years_lasted)
+        */
+		return run(balanceCents, expenseCents, Factor.of(rate), capYears, rounding, terminal, null);
+	}
+
+
+	public static SimulationResult simulate(long balanceCents, long expenseCents, double rate, int capYears,
+			RoundingMode rounding, BigDecimal[] terminal)
+	{
+		/*
+        Single pass recording the history in dollars for the charts; the exact
+        terminal balance goes to terminal[0] when an array is given.
+        Complexity: O(T) - Linear Time
+        Returns: (years_lasted, terminal_balance, history)
+        */
+		BigDecimal[] last = terminal != null ? terminal : new BigDecimal[1];
+		double[][] history = { new double[Math.min(Math.max(capYears, 0), INITIAL_HISTORY) + 1] };
+		int years = run(balanceCents, expenseCents, Factor.of(rate), capYears, rounding, last, history);
+		return new SimulationResult(years, last[0].doubleValue(), history[0]);
+	}
+
+
+	public static long maximumExpensed(long balanceCents, double rate, int targetYears, int capYears,
+			RoundingMode rounding)
+	{
+		/*
+        Largest whole-cent withdrawal that still lasts 'targetYears'.
+
+        Fast path: the double closed form gives the real-valued answer e. Per-
+        year rounding moves the balance before the last withdrawal by less than
+        half a cent per year of growth, the same weights that turn e into that
+        balance, so the cent answer lies within a cent of e. Widened for the
+        double's own error, that bracket is checked with two exact runs and
+        normally needs one or two more to settle. If a check ever fails the
+        bracket is widened exponentially, so the answer is exact either way.
+
+        Complexity: O(T) on the fast path, O(T log N) worst case
+        Returns: (first_year_withdrawal_cents)
+        */
+		if (balanceCents <= 0 || targetYears > capYears) {
+			return 0;
+		}
+		if (targetYears <= 1) {
+			return balanceCents;   // the first withdrawal always counts
+		}
+
+		Factor f = Factor.of(rate);
+		double estimate = 100.0 * RetirementKernel.closedFormMaximum(balanceCents / 100.0,
+				f.value.doubleValue() - 1, 0.0, targetYears, capYears);
+		long slack = 2 + (long) Math.ceil(estimate * 1e-12);
+		long low = Math.max(0, (long) Math.floor(estimate) - slack);
+		long high = Math.min(balanceCents, (long) Math.ceil(estimate) + slack);
+
+		// Invariant: 'low' lasts (0 always does, targetYears <= capYears), 'high' does not
+		long step = slack;
+		while (low > 0 && !lasts(balanceCents, low, f, targetYears, capYears, rounding)) {
+			high = low;
+			low = Math.max(0, low - step);
+			step *= 2;
+		}
+		while (lasts(balanceCents, high, f, targetYears, capYears, rounding)) {
+			if (high == balanceCents) {
+				return high;
+			}
+			low = high;
+			high = Math.min(balanceCents, high + step);
+			step *= 2;
+		}
+
+		while (high - low > 1) {
+			long mid = low + (high - low) / 2;
+			if (lasts(balanceCents, mid, f, targetYears, capYears, rounding)) {
+				low = mid;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+
+	private static boolean lasts(long balance, long expense, Factor f, int targetYears, int capYears,
+			RoundingMode rounding)
+	{
+		return run(balance, expense, f, capYears, rounding, null, null) >= targetYears;
+	}
+
+	//Growth loop shared by the fixed (one factor) and variable (rate per year) calculators
+	private static BigDecimal grow(long principal, Factor fixed, double[] rates, int years, RoundingMode rounding)
+	{
+		long B = principal;
+		BigDecimal big = null;
+
+		for (int i = 0; i < years; i++) {
+			Factor f = fixed != null ? fixed : Factor.of(rates[i]);
+			if (big == null) {
+				long grown = f.grow(B, rounding);
+				if (grown >= 0) {
+					B = grown;
+					continue;
+				}
+				big = BigDecimal.valueOf(B);
+			}
+			big = f.grow(big, rounding);
+		}
+		return big != null ? big.movePointLeft(2) : BigDecimal.valueOf(B, 2);
+	}
+
+	//Withdraw-first depletion loop; terminal[0] and history[0] are filled when given
+	private static int run(long balance, long expense, Factor f, int capYears, RoundingMode rounding,
+			BigDecimal[] terminal, double[][] history)
+	{
+		long B = balance;
+		BigDecimal big = null;
+		int years = 0;
+		if (history != null) {
+			history[0][0] = B / 100.0;
+		}
+
+		while ((big != null || B > 0) && years < capYears) {
+			if (big == null) {
+				B -= expense;
+				if (B <= 0) {
+					B = 0;
+				} else {
+					long grown = f.grow(B, rounding);
+					if (grown >= 0) {
+						B = grown;
+					} else {
+						big = f.grow(BigDecimal.valueOf(B), rounding);
+					}
+				}
+			} else {
+				big = big.subtract(BigDecimal.valueOf(expense));
+				if (big.signum() <= 0) {
+					big = null;
+					B = 0;
+				} else {
+					big = f.grow(big, rounding);
+				}
+			}
+			years++;
+
+			if (history != null) {
+				double[] h = history[0];
+				if (years == h.length) {
+					h = java.util.Arrays.copyOf(h, (int) Math.min((long) capYears + 1, 2L * h.length));
+					history[0] = h;
+				}
+				h[years] = big != null ? big.doubleValue() / 100.0 : B / 100.0;
+			}
+		}
+
+		if (terminal != null) {
+			terminal[0] = big != null ? big.movePointLeft(2) : BigDecimal.valueOf(B, 2);
+		}
+		return years;
+	}
+
+
+	//1 + rate as the exact fraction num / den, with den a power of ten
+	private static final class Factor {
+
+		private final BigDecimal value;
+		private final long num;
+		private final long den;
+		// Largest balance whose product with num still fits in a long
+		private final long safe;
+
+		private Factor(BigDecimal value)
+		{
+			BigDecimal v = value.scale() < 0 ? value.setScale(0) : value;
+			this.value = v;
+			this.num = v.unscaledValue().longValueExact();
+			this.den = BigDecimal.ONE.movePointRight(v.scale()).longValueExact();
+			this.safe = Long.MAX_VALUE / num;
+		}
+
+		static Factor of(double rate)
+		{
+			if (!(rate >= 0) || rate > Scenario.MAX_RATE) {
+				throw new IllegalArgumentException("Rate must be between 0 and 1000.");
+			}
+			return new Factor(BigDecimal.ONE.add(BigDecimal.valueOf(rate).setScale(RATE_SCALE, RoundingMode.HALF_EVEN))
+					.stripTrailingZeros());
+		}
+
+		//Grown, rounded balance, or -1 when the product needs BigDecimal
+		long grow(long cents, RoundingMode rounding)
+		{
+			if (cents > safe) {
+				return -1;
+			}
+			long p = cents * num;
+			long q = p / den;
+			long r = p % den;
+			if (r == 0) {
+				return q;
+			}
+			switch (rounding) {
+			case UP:
+			case CEILING:
+				return q + 1;
+			case DOWN:
+			case FLOOR:
+				return q;
+			case HALF_UP:
+				return 2 * r >= den ? q + 1 : q;
+			case HALF_DOWN:
+				return 2 * r > den ? q + 1 : q;
+			case HALF_EVEN:
+				return 2 * r > den || (2 * r == den && (q & 1) == 1) ? q + 1 : q;
+			case UNNECESSARY:
+			default:
+				throw new ArithmeticException("Rounding necessary");
+			}
+		}
+
+		BigDecimal grow(BigDecimal cents, RoundingMode rounding)
+		{
+			return cents.multiply(value).setScale(0, rounding);
+		}
+	}
+}
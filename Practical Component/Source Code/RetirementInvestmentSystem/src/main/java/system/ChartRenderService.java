@@ -0,0 +1,200 @@
+package system;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.jfree.chart.JFreeChart;
+
+/*
+Renders calculator charts for many ScenarioResults in parallel, off-screen.
+
+Jobs go to a fixed pool with a bounded queue; when the queue is full the
+submitting thread renders the job itself, so a fast producer cannot pile up
+thousands of pending histories in memory. Every thread that renders keeps
+its own styled chart templates and image buffer (see Templates) and only
+swaps datasets in, so the plot, renderer and currency axes are built once
+per thread instead of once per client.
+
+Output is PNG. Meant for java.awt.headless=true (the --headless batch mode
+sets it), but works the same from the GUI.
+*/
+public final class ChartRenderService implements AutoCloseable {
+
+	public static final int DEFAULT_WIDTH = 800;
+	public static final int DEFAULT_HEIGHT = 500;
+
+	private final int width;
+	private final int height;
+	private final ThreadPoolExecutor pool;
+	private final ThreadLocal<Templates> templates;
+	private final AtomicInteger rendered = new AtomicInteger();
+	private final Queue<String> failures = new ConcurrentLinkedQueue<>();
+
+	public ChartRenderService(int threads)
+	{
+		this(threads, DEFAULT_WIDTH, DEFAULT_HEIGHT);
+	}
+
+	public ChartRenderService(int threads, int width, int height)
+	{
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Renderer needs at least one thread.");
+		}
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Image size must be positive.");
+		}
+		this.width = width;
+		this.height = height;
+		this.templates = ThreadLocal.withInitial(() -> new Templates(width, height));
+
+		// Encoded PNGs go straight to the file; no temp-file cache per image
+		ImageIO.setUseCache(false);
+
+		AtomicInteger ids = new AtomicInteger();
+		this.pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(threads * 4),
+				r -> {
+					Thread t = new Thread(r, "chart-render-" + ids.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				},
+				new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+
+	//Queues one chart; a chart that fails is collected in failures() and makes close() throw
+	public void submit(ScenarioResult result, Path file)
+	{
+		pool.execute(() -> {
+			try {
+				render(result, file);
+				rendered.incrementAndGet();
+			} catch (IOException | RuntimeException ex) {
+				failures.add(file + ": " + ex.getMessage());
+			}
+		});
+	}
+
+	//Renders on the calling thread with that thread's templates
+	public void render(ScenarioResult result, Path file) throws IOException
+	{
+		Templates t = templates.get();
+		ImageIO.write(t.draw(t.chartFor(result)), "png", file.toFile());
+	}
+
+	public int renderedCount()
+	{
+		return rendered.get();
+	}
+
+	//Messages of the jobs that failed so far, one per chart
+	public Queue<String> failures()
+	{
+		return failures;
+	}
+
+	public int width()
+	{
+		return width;
+	}
+
+	public int height()
+	{
+		return height;
+	}
+
+	//Waits for every queued chart to be written; throws if any of them failed (details in failures())
+	@Override
+	public void close()
+	{
+		pool.shutdown();
+		try {
+			while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+				// keep waiting: the caller asked for all charts
+			}
+		} catch (InterruptedException ex) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		String first = failures.peek();
+		if (first != null) {
+			throw new IllegalStateException(failures.size() + " of " + (failures.size() + rendered.get())
+					+ " charts failed, first " + first);
+		}
+	}
+
+
+	/*
+	One styled chart per page plus a reusable ARGB buffer. Owned by a single
+	thread, so filling a template and drawing it never races.
+	*/
+	private static final class Templates {
+
+		private final JFreeChart fixed = Charts.fixedInvestmentTemplate();
+		private final JFreeChart variable = Charts.variableTemplate();
+		private final JFreeChart depletion = Charts.depletionTemplate();
+		private final JFreeChart optimal = Charts.optimalWithdrawalTemplate();
+		private final BufferedImage image;
+		private final Graphics2D g2;
+		private final Rectangle2D area;
+
+		Templates(int width, int height)
+		{
+			this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			this.g2 = image.createGraphics();
+			this.area = new Rectangle2D.Double(0, 0, width, height);
+		}
+
+		JFreeChart chartFor(ScenarioResult result)
+		{
+			Scenario s = result.getScenario();
+			switch (s.getKind()) {
+			case GROWTH:
+				Charts.fillFixedInvestment(fixed, s.getBalance(), s.getRate(), s.getYears());
+				return fixed;
+
+			case VARIABLE: {
+				double[] rates = s.ratesView();
+				Charts.fillVariable(variable, s.getBalance(), rates, rates.length);
+				return variable;
+			}
+
+			case DEPLETE:
+				Charts.fillDepletion(depletion, history(result));
+				return depletion;
+
+			case OPTIMIZE:
+			default:
+				Charts.fillOptimalWithdrawal(optimal, history(result), result.getValue());
+				return optimal;
+			}
+		}
+
+		BufferedImage draw(JFreeChart chart)
+		{
+			g2.setColor(Color.WHITE);
+			g2.fill(area);
+			chart.draw(g2, area);
+			return image;
+		}
+
+		//Results evaluated without history are re-simulated here, on the render thread
+		private static SimulationResult history(ScenarioResult result)
+		{
+			SimulationResult sim = result.getSimulation();
+			return sim != null ? sim : ScenarioEngine.evaluate(result.getScenario(), true).getSimulation();
+		}
+	}
+}
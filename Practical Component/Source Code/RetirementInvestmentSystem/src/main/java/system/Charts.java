@@ -0,0 +1,347 @@
+package system;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.geom.Ellipse2D;
+import java.text.NumberFormat;
+import java.util.List;
+import java.util.Locale;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.plot.CategoryPlot;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.xy.SamplingXYLineRenderer;
+import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
+import org.jfree.chart.ui.RectangleInsets;
+import org.jfree.data.category.DefaultCategoryDataset;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+
+/*
+The calculator charts, shared by the GUI pages and the headless renderer.
+
+Each chart is split into a template (styled plot, renderer, currency axis,
+built once) and a fill step that swaps in new data. The GUI builds a fresh
+template per Calculate click; ChartRenderService keeps one template per
+worker thread and only refills it. Datasets are filled while detached and
+attached in one step, so the plot recomputes its axes once instead of on
+every added point.
+*/
+public final class Charts {
+
+	private static final String GROWTH_SERIES = "Investment Growth";
+
+	private Charts()
+	{
+	}
+
+
+	//This method builds the fixed investor chart; rate is a decimal
+	public static JFreeChart buildFixedInvestmentChart(double principal, double rate, int years)
+	{
+		JFreeChart chart = fixedInvestmentTemplate();
+		fillFixedInvestment(chart, principal, rate, years);
+		return chart;
+	}
+
+	static JFreeChart fixedInvestmentTemplate()
+	{
+		// Create a category line chart
+		JFreeChart chart = ChartFactory.createLineChart(
+				"Investment Growth Over Time",
+				"Year",
+				"Balance ($)",
+				new DefaultCategoryDataset()
+		);
+		styleCategoryPlot(chart.getCategoryPlot());
+		return chart;
+	}
+
+	//rate is a decimal (0.05 = 5%, 1.5 = 150%), as Scenario stores it after reading the field
+	static void fillFixedInvestment(JFreeChart chart, double principal, double rate, int years)
+	{
+		DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+		double balance = principal;
+
+		// Populate dataset by simulating growth per year
+		for (int year = 1; year <= years; year++) {
+			balance = RetirementKernel.fixedInvestor(balance, rate, 1); // 1 year per step
+			dataset.addValue(balance, GROWTH_SERIES, String.valueOf(year));
+		}
+		chart.getCategoryPlot().setDataset(dataset);
+	}
+
+
+	//This method builds variable investor chart
+	public static JFreeChart buildVariableChart(double principal, double[] rateList)
+	{
+		JFreeChart chart = variableTemplate();
+		fillVariable(chart, principal, rateList);
+		return chart;
+	}
+
+	static JFreeChart variableTemplate()
+	{
+		XYSeriesCollection dataset = new XYSeriesCollection();
+		dataset.addSeries(new XYSeries("Balance"));
+		dataset.addSeries(new XYSeries("Zero"));
+
+		JFreeChart chart = ChartFactory.createXYLineChart(
+				"Variable Rate Growth",
+				"Years",
+				"Account Balance ($)",
+				dataset
+		);
+
+		XYPlot plot = chart.getXYPlot();
+
+		NumberAxis rangeAxis = (NumberAxis) plot.getRangeAxis();
+		rangeAxis.setNumberFormatOverride(NumberFormat.getCurrencyInstance());
+		rangeAxis.setAutoRangeIncludesZero(false);
+
+		NumberAxis domainAxis = (NumberAxis) plot.getDomainAxis();
+		domainAxis.setStandardTickUnits(NumberAxis.createIntegerTickUnits());
+		domainAxis.setLowerMargin(0.05);
+		domainAxis.setUpperMargin(0.05);
+
+		plot.setBackgroundPaint(Color.WHITE);
+		plot.setDomainGridlinesVisible(true);
+		plot.setRangeGridlinesVisible(true);
+		plot.setDomainGridlinePaint(new Color(200, 200, 200));
+		plot.setRangeGridlinePaint(new Color(200, 200, 200));
+
+		XYLineAndShapeRenderer renderer = new XYLineAndShapeRenderer(true, true);
+		renderer.setSeriesPaint(0, new Color(27, 94, 32)); // balance series dark green
+		renderer.setSeriesStroke(0, new BasicStroke(2f));
+		renderer.setSeriesShape(0, new Ellipse2D.Double(-4, -4, 8, 8));     // circle markers
+
+		renderer.setSeriesPaint(1, new Color(198, 40, 40));                 // red
+		renderer.setSeriesStroke(1, new BasicStroke(1.2f));
+		renderer.setSeriesShapesVisible(1, false);
+
+		plot.setRenderer(renderer);
+		return chart;
+	}
+
+	static void fillVariable(JFreeChart chart, double principal, double[] rateList)
+	{
+		fillVariable(chart, principal, rateList, rateList.length);
+	}
+
+	//Reads the first 'count' rates straight from the caller's array
+	static void fillVariable(JFreeChart chart, double principal, double[] rateList, int count)
+	{
+		XYSeries balanceSeries = new XYSeries("Balance");
+		XYSeries zeroSeries = new XYSeries("Zero");
+
+		double balance = principal;
+		for (int i = 0; i < count; i++) {
+			balance *= (1.0 + rateList[i]);
+			int year = i + 1;
+			balanceSeries.add(year, balance, false);
+			zeroSeries.add(year, 0.0, false);
+		}
+		replaceSeries(chart.getXYPlot(), balanceSeries, zeroSeries);
+	}
+
+
+	//This method builds retirement depletion chart
+	public static JFreeChart buildDepletionJFreeChart(List<Double> balances)
+	{
+		JFreeChart chart = depletionTemplate();
+		fillDepletion(chart, balances);
+		return chart;
+	}
+
+	static JFreeChart depletionTemplate()
+	{
+		JFreeChart chart = ChartFactory.createLineChart(
+				"Investment Growth Over Time",
+				"Year",
+				"Balance ($)",
+				new DefaultCategoryDataset()
+		);
+		styleCategoryPlot(chart.getCategoryPlot());
+		return chart;
+	}
+
+	static void fillDepletion(JFreeChart chart, List<Double> balances)
+	{
+		DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+
+		// Populate dataset using the balances list
+		for (int i = 0; i < balances.size(); i++) {
+			int year = i + 1; // Year starts at 1
+			dataset.addValue(balances.get(i), GROWTH_SERIES, String.valueOf(year));
+		}
+		chart.getCategoryPlot().setDataset(dataset);
+	}
+
+	static void fillDepletion(JFreeChart chart, SimulationResult history)
+	{
+		DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+		for (int i = 0; i < history.historyLength(); i++) {
+			dataset.addValue(history.balanceAt(i), GROWTH_SERIES, String.valueOf(i + 1));
+		}
+		chart.getCategoryPlot().setDataset(dataset);
+	}
+
+
+	//This method builds Optimal Withdrawal chart
+	public static JFreeChart buildOptimalWithdrawalChart(List<Double> history, double optimalSpend)
+	{
+		JFreeChart chart = optimalWithdrawalTemplate();
+		fillOptimalWithdrawal(chart, history, optimalSpend);
+		return chart;
+	}
+
+	static JFreeChart optimalWithdrawalTemplate()
+	{
+		XYSeriesCollection dataset = new XYSeriesCollection();
+		dataset.addSeries(new XYSeries("Balance"));
+		dataset.addSeries(new XYSeries("Zero"));
+
+		JFreeChart chart = ChartFactory.createXYLineChart(
+				"",
+				"Years",
+				"Account Balance ($)",
+				dataset
+		);
+
+		XYPlot plot = chart.getXYPlot();
+
+		// Renderer: series 0 (balance) as green line with circular markers
+		XYLineAndShapeRenderer renderer = new XYLineAndShapeRenderer(true, true);
+		renderer.setSeriesPaint(0, new Color(27, 94, 32));                  // dark green
+		renderer.setSeriesStroke(0, new BasicStroke(2.0f));
+		renderer.setSeriesShape(0, new Ellipse2D.Double(-4, -4, 8, 8));     // circle markers
+
+		// Renderer: series 1 (zero baseline) as thin red line, no markers
+		renderer.setSeriesPaint(1, new Color(198, 40, 40));                 // red
+		renderer.setSeriesStroke(1, new BasicStroke(1.5f));
+		renderer.setSeriesShapesVisible(1, false);
+
+		plot.setRenderer(renderer);
+
+		// Axis formatting: currency on Y
+		NumberAxis yAxis = (NumberAxis) plot.getRangeAxis();
+		yAxis.setNumberFormatOverride(NumberFormat.getCurrencyInstance(Locale.getDefault()));
+		yAxis.setAutoRangeIncludesZero(true);
+
+		// Visual polish
+		plot.setBackgroundPaint(Color.WHITE);
+		plot.setDomainGridlinePaint(new Color(210, 210, 210));
+		plot.setRangeGridlinePaint(new Color(210, 210, 210));
+		plot.setAxisOffset(new RectangleInsets(5, 5, 5, 5));
+		return chart;
+	}
+
+	static void fillOptimalWithdrawal(JFreeChart chart, List<Double> history, double optimalSpend)
+	{
+		// Series: account balance each year (Year 0 .. Year N) and a zero baseline
+		XYSeries balanceSeries = new XYSeries("Balance");
+		XYSeries zeroSeries = new XYSeries("Zero");
+		for (int year = 0; year < history.size(); year++) {
+			balanceSeries.add(year, history.get(year), false);
+			zeroSeries.add(year, 0.0, false);
+		}
+		replaceSeries(chart.getXYPlot(), balanceSeries, zeroSeries);
+		chart.setTitle(optimalWithdrawalTitle(optimalSpend));
+	}
+
+	static void fillOptimalWithdrawal(JFreeChart chart, SimulationResult history, double optimalSpend)
+	{
+		XYSeries balanceSeries = new XYSeries("Balance");
+		XYSeries zeroSeries = new XYSeries("Zero");
+		for (int year = 0; year < history.historyLength(); year++) {
+			balanceSeries.add(year, history.balanceAt(year), false);
+			zeroSeries.add(year, 0.0, false);
+		}
+		replaceSeries(chart.getXYPlot(), balanceSeries, zeroSeries);
+		chart.setTitle(optimalWithdrawalTitle(optimalSpend));
+	}
+
+	//Title with formatted withdrawal (locale-aware)
+	private static String optimalWithdrawalTitle(double optimalSpend)
+	{
+		NumberFormat currency = NumberFormat.getCurrencyInstance(Locale.getDefault());
+		return String.format("AofA Financial Simulation: Optimal Withdrawal (%s/yr)", currency.format(optimalSpend));
+	}
+
+
+	//Overlay of many scenarios on one XY plot (Compare page)
+	public static JFreeChart comparisonTemplate()
+	{
+		JFreeChart chart = ChartFactory.createXYLineChart(
+				"Scenario Comparison",
+				"Years",
+				"Account Balance ($)",
+				new XYSeriesCollection()
+		);
+
+		XYPlot plot = chart.getXYPlot();
+
+		// Draws at most one vertical segment per pixel column, so dozens of
+		// 1000-year curves stay cheap to repaint while zooming and panning
+		plot.setRenderer(new SamplingXYLineRenderer());
+
+		NumberAxis rangeAxis = (NumberAxis) plot.getRangeAxis();
+		rangeAxis.setNumberFormatOverride(NumberFormat.getCurrencyInstance(Locale.getDefault()));
+		rangeAxis.setAutoRangeIncludesZero(true);
+
+		NumberAxis domainAxis = (NumberAxis) plot.getDomainAxis();
+		domainAxis.setStandardTickUnits(NumberAxis.createIntegerTickUnits());
+
+		plot.setBackgroundPaint(Color.WHITE);
+		plot.setDomainGridlinePaint(new Color(210, 210, 210));
+		plot.setRangeGridlinePaint(new Color(210, 210, 210));
+		plot.setAxisOffset(new RectangleInsets(5, 5, 5, 5));
+		return chart;
+	}
+
+	/*
+	Builds the whole overlay dataset while it is detached from any chart (safe
+	off the EDT); attaching it with plot.setDataset is the only change event
+	the chart sees, however many curves and points it holds.
+	*/
+	public static XYSeriesCollection comparisonDataset(List<String> labels, List<double[]> curves)
+	{
+		XYSeriesCollection dataset = new XYSeriesCollection();
+		for (int i = 0; i < curves.size(); i++) {
+			// Series keys must be unique; the position keeps equal labels apart
+			XYSeries series = new XYSeries((i + 1) + ". " + labels.get(i), false, true);
+			double[] balances = curves.get(i);
+			for (int year = 0; year < balances.length; year++) {
+				series.add(year, balances[year], false);
+			}
+			dataset.addSeries(series);
+		}
+		return dataset;
+	}
+
+
+	//Light styling and currency axis format shared by the category line charts
+	private static void styleCategoryPlot(CategoryPlot plot)
+	{
+		plot.setBackgroundPaint(Color.WHITE);
+		plot.setDomainGridlinesVisible(true);
+		plot.setDomainGridlinePaint(new Color(210, 210, 210));
+		plot.setRangeGridlinePaint(new Color(210, 210, 210));
+
+		// Currency formatting on the range (Y) axis
+		NumberAxis rangeAxis = (NumberAxis) plot.getRangeAxis();
+		rangeAxis.setNumberFormatOverride(NumberFormat.getCurrencyInstance(Locale.getDefault()));
+	}
+
+	//Swaps in fully built series with a single dataset change event
+	private static void replaceSeries(XYPlot plot, XYSeries... series)
+	{
+		XYSeriesCollection dataset = new XYSeriesCollection();
+		for (XYSeries s : series) {
+			dataset.addSeries(s);
+		}
+		plot.setDataset(dataset);
+	}
+}
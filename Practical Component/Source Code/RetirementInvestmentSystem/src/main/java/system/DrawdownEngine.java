@@ -0,0 +1,316 @@
+package system;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+/*
+Tax-aware retirement drawdown over three buckets:
+
+  TAXABLE       brokerage account; the share of a withdrawal above cost basis
+                is taxed at the capital-gains rate, basis falls pro rata
+  TAX_DEFERRED  traditional IRA / 401(k); every withdrawal is taxed at the
+                ordinary income rate
+  TAX_FREE      Roth; withdrawals are not taxed
+
+Each year follows the withdraw-first step of finallyRetired: the household's
+after-tax spending is drawn from the buckets in the chosen Order (each
+withdrawal grossed up for its tax), then every bucket grows at its own rate,
+and spending rises with inflation. A year counts when its spending is at
+least partly paid; the run ends when every bucket is empty. Tax rates are
+flat (no brackets, no required distributions).
+
+A household book is held column-wise in primitive arrays (Book), one slot
+per household, and run() walks it in parallel. A household's state during
+its run is a handful of local doubles, so the yearly step allocates nothing
+and households share nothing, which lets the book spread over every core.
+*/
+public final class DrawdownEngine {
+
+	public static final int TAXABLE = 0;
+	public static final int TAX_DEFERRED = 1;
+	public static final int TAX_FREE = 2;
+	public static final int BUCKETS = 3;
+
+	//Order in which the buckets are drawn down
+	public enum Order
+	{
+		TAXABLE_FIRST(TAXABLE, TAX_DEFERRED, TAX_FREE),    // the conventional order: let sheltered money compound
+		DEFERRED_FIRST(TAX_DEFERRED, TAXABLE, TAX_FREE),
+		TAX_FREE_FIRST(TAX_FREE, TAXABLE, TAX_DEFERRED),
+		PROPORTIONAL();                                     // every bucket pro rata to its balance
+
+		private final int[] sequence;
+
+		Order(int... sequence)
+		{
+			this.sequence = sequence;
+		}
+
+		public static Order parse(String name)
+		{
+			try {
+				return valueOf(name.toUpperCase(Locale.ROOT).replace('-', '_'));
+			} catch (IllegalArgumentException unknown) {
+				throw new IllegalArgumentException("Order must be taxable-first, deferred-first, tax-free-first or proportional.");
+			}
+		}
+	}
+
+	private final double[] growth = new double[BUCKETS];
+	private final double gainsTax;
+	// After-tax share of a gross tax-deferred withdrawal
+	private final double deferredNet;
+
+
+	//Per-bucket decimal growth rates and flat tax rates
+	public DrawdownEngine(double taxableRate, double deferredRate, double taxFreeRate, double ordinaryTax, double gainsTax)
+	{
+		requireTax(ordinaryTax);
+		requireTax(gainsTax);
+		double[] rates = { taxableRate, deferredRate, taxFreeRate };
+		for (int b = 0; b < BUCKETS; b++) {
+			if (!(rates[b] > -1) || Double.isInfinite(rates[b])) {
+				throw new IllegalArgumentException("Bucket growth rates must be greater than -100%.");
+			}
+			growth[b] = 1 + rates[b];
+		}
+		this.gainsTax = gainsTax;
+		this.deferredNet = 1 - ordinaryTax;
+	}
+
+
+	/*
+	Households in column arrays. add() appends one and grows the columns by
+	doubling, like the rate table; results are written back into the output
+	columns by DrawdownEngine.run(Book).
+	*/
+	public static final class Book {
+
+		private static final int INITIAL_CAPACITY = 64;
+
+		private int size;
+		private String[] ids = new String[INITIAL_CAPACITY];
+		private double[] taxable = new double[INITIAL_CAPACITY];
+		private double[] basis = new double[INITIAL_CAPACITY];
+		private double[] deferred = new double[INITIAL_CAPACITY];
+		private double[] taxFree = new double[INITIAL_CAPACITY];
+		private double[] spending = new double[INITIAL_CAPACITY];
+		private double[] inflation = new double[INITIAL_CAPACITY];
+		private int[] horizon = new int[INITIAL_CAPACITY];
+		private Order[] order = new Order[INITIAL_CAPACITY];
+
+		// Outputs of the last run
+		private int[] yearsLasted = new int[0];
+		private double[] terminal = new double[0];   // BUCKETS per household
+		private double[] taxesPaid = new double[0];
+
+		//Returns the household's index
+		public int add(String id, double taxableBalance, double taxableBasis, double deferredBalance, double taxFreeBalance,
+				double annualSpending, double spendingInflation, int years, Order drawOrder)
+		{
+			if (!(taxableBalance >= 0) || !(deferredBalance >= 0) || !(taxFreeBalance >= 0) || !(annualSpending >= 0)
+					|| Double.isInfinite(taxableBalance + deferredBalance + taxFreeBalance + annualSpending)) {
+				throw new IllegalArgumentException("Balances and spending must be non-negative numbers.");
+			}
+			if (!(taxableBasis >= 0) || taxableBasis > taxableBalance) {
+				throw new IllegalArgumentException("Cost basis must be between 0 and the taxable balance.");
+			}
+			if (!(spendingInflation > -1)) {
+				throw new IllegalArgumentException("Inflation must be greater than -100%.");
+			}
+			if (years <= 0 || years > RetirementKernel.LIFETIME_CAP_YEARS) {
+				throw new IllegalArgumentException("Horizon must be 1 to " + RetirementKernel.LIFETIME_CAP_YEARS + " years.");
+			}
+			if (size == ids.length) {
+				int capacity = 2 * size;
+				ids = Arrays.copyOf(ids, capacity);
+				taxable = Arrays.copyOf(taxable, capacity);
+				basis = Arrays.copyOf(basis, capacity);
+				deferred = Arrays.copyOf(deferred, capacity);
+				taxFree = Arrays.copyOf(taxFree, capacity);
+				spending = Arrays.copyOf(spending, capacity);
+				inflation = Arrays.copyOf(inflation, capacity);
+				horizon = Arrays.copyOf(horizon, capacity);
+				order = Arrays.copyOf(order, capacity);
+			}
+			ids[size] = id;
+			taxable[size] = taxableBalance;
+			basis[size] = taxableBasis;
+			deferred[size] = deferredBalance;
+			taxFree[size] = taxFreeBalance;
+			spending[size] = annualSpending;
+			inflation[size] = spendingInflation;
+			horizon[size] = years;
+			order[size] = drawOrder;
+			return size++;
+		}
+
+		public int size()
+		{
+			return size;
+		}
+
+		public String id(int household)
+		{
+			return ids[household];
+		}
+
+		public Order order(int household)
+		{
+			return order[household];
+		}
+
+		public int yearsLasted(int household)
+		{
+			return yearsLasted[household];
+		}
+
+		//Balance left in one bucket at the end of the last run
+		public double terminal(int household, int bucket)
+		{
+			return terminal[household * BUCKETS + bucket];
+		}
+
+		public double taxesPaid(int household)
+		{
+			return taxesPaid[household];
+		}
+	}
+
+
+	public void run(Book book)
+	{
+		/*
+        Runs every household of the book in parallel.
+        Complexity: O(N * H) time, no allocation per household or year
+        Returns: (results in the book's output columns)
+        */
+		int n = book.size;
+		book.yearsLasted = new int[n];
+		book.terminal = new double[n * BUCKETS];
+		book.taxesPaid = new double[n];
+		try (EngineMonitor.Job job = EngineMonitor.shared().begin("Drawdown book", n, EngineMonitor.Counter.HOUSEHOLDS)) {
+			IntStream.range(0, n).parallel().forEach(h -> {
+				book.yearsLasted[h] = run(book.taxable[h], book.basis[h], book.deferred[h], book.taxFree[h],
+						book.spending[h], book.inflation[h], book.horizon[h], book.order[h], null, book.terminal,
+						h * BUCKETS, book.taxesPaid, h);
+				job.advance(1);
+			});
+			job.complete(n + " households");
+		}
+	}
+
+
+	public int run(double taxableBalance, double taxableBasis, double deferredBalance, double taxFreeBalance,
+			double annualSpending, double spendingInflation, int horizon, Order order, YearSink sink,
+			double[] terminal, int terminalOffset, double[] taxes, int taxesOffset)
+	{
+		/*
+        One household's drawdown. sink, when given, receives the total of the
+        three buckets per year; terminal[terminalOffset ..] receives the three
+        ending balances and taxes[taxesOffset] the total tax paid, when given.
+        Complexity: O(H) - Linear Time, no allocation
+        Returns: (years_lasted)
+        */
+		double t = taxableBalance;
+		// Basis as a share of the taxable balance: pro-rata withdrawals leave it unchanged, growth divides it
+		double basisShare = t > 0 ? taxableBasis / t : 1.0;
+		double basisDecay = 1 / growth[TAXABLE];
+		double deferredGross = 1 / deferredNet;
+		double d = deferredBalance;
+		double f = taxFreeBalance;
+		double need = annualSpending;
+		double indexation = 1 + spendingInflation;
+		double tax = 0;
+		int year = 0;
+		// An emptied bucket never refills, so the sequential orders skip the emptied ones at the front
+		int[] sequence = order.sequence;
+		int from = 0;
+		if (sink != null) {
+			sink.accept(0, t + d + f);
+		}
+
+		while (t + d + f > 0 && year < horizon) {
+			double left = year > 0 ? (need *= indexation) : need;
+			double gainsNet = basisShare < 1 ? 1 - gainsTax * (1 - basisShare) : 1.0;
+
+			if (order == Order.PROPORTIONAL) {
+				double total = t + d + f;
+				double net = (t * gainsNet + d * deferredNet + f) / total;
+				double share = net > 0 ? Math.min(1.0, left / (net * total)) : 1.0;
+				tax += share * (t * (1 - gainsNet) + d * (1 - deferredNet));
+				t -= share * t;
+				d -= share * d;
+				f -= share * f;
+				if (share == 1.0) {
+					t = 0;
+					d = 0;
+					f = 0;
+				}
+			} else {
+				for (int i = from; i < sequence.length && left > 0; i++) {
+					switch (sequence[i]) {
+					case TAXABLE: {
+						if (t > 0) {
+							double gross = Math.min(t, left / gainsNet);
+							left -= gross * gainsNet;
+							tax += gross * (1 - gainsNet);
+							t = t > gross ? t - gross : 0;
+						}
+						if (t == 0 && i == from) {
+							from++;
+						}
+						break;
+					}
+					case TAX_DEFERRED: {
+						double gross = Math.min(d, left * deferredGross);
+						left -= gross * deferredNet;
+						tax += gross * (1 - deferredNet);
+						d = d > gross ? d - gross : 0;
+						if (d == 0 && i == from) {
+							from++;
+						}
+						break;
+					}
+					default: {
+						double gross = Math.min(f, left);
+						left -= gross;
+						f -= gross;
+						if (f == 0 && i == from) {
+							from++;
+						}
+					}
+					}
+				}
+			}
+
+			t *= growth[TAXABLE];
+			basisShare *= basisDecay;
+			d *= growth[TAX_DEFERRED];
+			f *= growth[TAX_FREE];
+			year++;
+			if (sink != null) {
+				sink.accept(year, t + d + f);
+			}
+		}
+
+		if (terminal != null) {
+			terminal[terminalOffset + TAXABLE] = t;
+			terminal[terminalOffset + TAX_DEFERRED] = d;
+			terminal[terminalOffset + TAX_FREE] = f;
+		}
+		if (taxes != null) {
+			taxes[taxesOffset] = tax;
+		}
+		return year;
+	}
+
+
+	private static void requireTax(double rate)
+	{
+		if (!(rate >= 0 && rate < 1)) {
+			throw new IllegalArgumentException("Tax rates must be at least 0 and below 1.");
+		}
+	}
+}
@@ -0,0 +1,434 @@
+package system;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Progress and statistics of the simulation engines, published without locks
+so the window (or a service thread) can read them while workers run.
+
+  Counters   one LongAdder per Counter. A worker's add() lands in its own
+             striped cell, so parallel paths never fight over one cache line;
+             total() sums the cells on the reading side.
+  Jobs       every running job sits in a concurrent map keyed by its start
+             order, so jobs started side by side (two batch books, the
+             live-mode thread and a Calculate click) each keep their own
+             progress; snapshot() shows the newest, running() all of them.
+  Snapshots  a finished job is published as an immutable Snapshot by swapping
+             one AtomicReference; a running job's snapshot is built on read
+             from its own LongAdder. Readers never see a half-written result.
+  Events     STARTED / PROGRESS / FINISHED / FAILED events go into a ring of
+             the last 'capacity' events. Any number of threads may write: a
+             writer claims the next sequence number with one getAndIncrement
+             and then fills that slot, so writers never wait for or lose to
+             each other. Readers poll from a sequence number, stop at a slot
+             that has been claimed but not yet filled (it is picked up on the
+             next poll) and skip what newer events have already overwritten.
+
+Workers only ever touch the counters and their job's progress; events and
+snapshots are written by whichever thread begins, checkpoints or ends a job.
+shared() is the process-wide monitor the engines publish to.
+*/
+public final class EngineMonitor {
+
+	private static final EngineMonitor SHARED = new EngineMonitor(256);
+
+	//What the counters count
+	public enum Counter
+	{
+		PATHS("rate paths"),
+		ACCOUNT_PATHS("account-paths"),
+		HOUSEHOLDS("households"),
+		SOLVES("withdrawal solves"),
+		SCENARIOS("scenarios");
+
+		private final String label;
+
+		Counter(String label)
+		{
+			this.label = label;
+		}
+
+		public String label()
+		{
+			return label;
+		}
+	}
+
+	public enum EventKind { STARTED, PROGRESS, FINISHED, FAILED }
+
+	private final LongAdder[] counters = new LongAdder[Counter.values().length];
+	private final AtomicLong jobNumbers = new AtomicLong();
+	// Running jobs by start order
+	private final ConcurrentSkipListMap<Long, Job> jobs = new ConcurrentSkipListMap<>();
+	private final AtomicReference<Snapshot> latest = new AtomicReference<>();
+
+	private final AtomicReferenceArray<Event> ring;
+	private final int mask;
+	// Last sequence number handed to a writer; the slot may still be being filled
+	private final AtomicLong claimed = new AtomicLong();
+	private final LongAdder dropped = new LongAdder();
+
+
+	//capacity is rounded up to a power of two
+	public EngineMonitor(int capacity)
+	{
+		if (capacity <= 0 || capacity > 1 << 20) {
+			throw new IllegalArgumentException("Event capacity must be 1 to " + (1 << 20) + ".");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.ring = new AtomicReferenceArray<>(size);
+		this.mask = size - 1;
+		for (int c = 0; c < counters.length; c++) {
+			counters[c] = new LongAdder();
+		}
+	}
+
+	//The monitor the engines publish to
+	public static EngineMonitor shared()
+	{
+		return SHARED;
+	}
+
+
+	/*
+	Immutable view of one job: its progress while running, its outcome once
+	finished.
+	*/
+	public static final class Snapshot {
+
+		private final String task;
+		private final long done;
+		private final long total;
+		private final long elapsedNanos;
+		private final EventKind state;
+		private final String outcome;
+
+		Snapshot(String task, long done, long total, long elapsedNanos, EventKind state, String outcome)
+		{
+			this.task = task;
+			this.done = done;
+			this.total = total;
+			this.elapsedNanos = elapsedNanos;
+			this.state = state;
+			this.outcome = outcome;
+		}
+
+		public String getTask()
+		{
+			return task;
+		}
+
+		public long getDone()
+		{
+			return done;
+		}
+
+		public long getTotal()
+		{
+			return total;
+		}
+
+		public long getElapsedNanos()
+		{
+			return elapsedNanos;
+		}
+
+		//STARTED while the job runs, FINISHED or FAILED afterwards
+		public EventKind getState()
+		{
+			return state;
+		}
+
+		//Short description of the result (or of the failure), empty while running
+		public String getOutcome()
+		{
+			return outcome;
+		}
+
+		public boolean isRunning()
+		{
+			return state == EventKind.STARTED;
+		}
+
+		@Override
+		public String toString()
+		{
+			if (isRunning()) {
+				return task + ": " + done + " / " + total;
+			}
+			return String.format("%s: %s (%.0f ms)", task, outcome, elapsedNanos / 1e6);
+		}
+	}
+
+
+	//One entry of the event ring
+	public static final class Event {
+
+		private final long sequence;
+		private final EventKind kind;
+		private final String task;
+		private final long done;
+		private final long total;
+		private final long nanoTime;
+
+		Event(long sequence, EventKind kind, String task, long done, long total, long nanoTime)
+		{
+			this.sequence = sequence;
+			this.kind = kind;
+			this.task = task;
+			this.done = done;
+			this.total = total;
+			this.nanoTime = nanoTime;
+		}
+
+		public long getSequence()
+		{
+			return sequence;
+		}
+
+		public EventKind getKind()
+		{
+			return kind;
+		}
+
+		public String getTask()
+		{
+			return task;
+		}
+
+		public long getDone()
+		{
+			return done;
+		}
+
+		public long getTotal()
+		{
+			return total;
+		}
+
+		//System.nanoTime() when the event was written
+		public long getNanoTime()
+		{
+			return nanoTime;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "#" + sequence + " " + kind + " " + task + " " + done + "/" + total;
+		}
+	}
+
+
+	/*
+	A running job. begin() and complete()/close()/checkpoint() belong to the
+	thread that started it; advance() may be called from any worker.
+	Use with try-with-resources so a job that throws is published as FAILED.
+	*/
+	public final class Job implements AutoCloseable {
+
+		private final long number = jobNumbers.incrementAndGet();
+		private final String task;
+		private final long total;
+		private final long started = System.nanoTime();
+		private final LongAdder done = new LongAdder();
+		private final LongAdder counter;
+		private boolean closed;
+
+		Job(String task, long total, Counter counter)
+		{
+			this.task = task;
+			this.total = total;
+			this.counter = counter == null ? null : counters[counter.ordinal()];
+		}
+
+		//Worker side: n more units of this job are done
+		public void advance(long n)
+		{
+			done.add(n);
+			if (counter != null) {
+				counter.add(n);
+			}
+		}
+
+		//Owner side: records a PROGRESS event with the current count
+		public void checkpoint()
+		{
+			write(EventKind.PROGRESS, task, done.sum(), total);
+		}
+
+		public Snapshot snapshot()
+		{
+			return new Snapshot(task, done.sum(), total, System.nanoTime() - started, EventKind.STARTED, "");
+		}
+
+		//Owner side: publishes the outcome and ends the job
+		public void complete(String outcome)
+		{
+			end(EventKind.FINISHED, outcome);
+		}
+
+		//Ends the job as FAILED unless complete() was called
+		@Override
+		public void close()
+		{
+			end(EventKind.FAILED, "failed");
+		}
+
+		private void end(EventKind state, String outcome)
+		{
+			if (closed) {
+				return;
+			}
+			closed = true;
+			long count = done.sum();
+			latest.set(new Snapshot(task, count, total, System.nanoTime() - started, state, outcome));
+			jobs.remove(number);
+			write(state, task, count, total);
+		}
+	}
+
+
+	//Starts a job of 'total' units that count only towards the job itself
+	public Job begin(String task, long total)
+	{
+		return begin(task, total, null);
+	}
+
+	//Starts a job of 'total' units, each of which also counts towards 'counter'
+	public Job begin(String task, long total, Counter counter)
+	{
+		Job job = new Job(task, total, counter);
+		jobs.put(job.number, job);
+		write(EventKind.STARTED, task, 0, total);
+		return job;
+	}
+
+	//Adds to a counter outside any job
+	public void count(Counter counter, long n)
+	{
+		counters[counter.ordinal()].add(n);
+	}
+
+	public long total(Counter counter)
+	{
+		return counters[counter.ordinal()].sum();
+	}
+
+	//The newest running job's progress, else the last finished job's outcome, else null
+	public Snapshot snapshot()
+	{
+		Map.Entry<Long, Job> newest = jobs.lastEntry();
+		return newest != null ? newest.getValue().snapshot() : latest.get();
+	}
+
+	//Progress of every running job, oldest first
+	public List<Snapshot> running()
+	{
+		List<Snapshot> out = new ArrayList<>();
+		for (Job job : jobs.values()) {
+			out.add(job.snapshot());
+		}
+		return out;
+	}
+
+	//Last finished (or failed) job, or null before the first
+	public Snapshot lastResult()
+	{
+		return latest.get();
+	}
+
+
+	//Sequence number of the newest event claimed by a writer (0 before the first)
+	public long lastSequence()
+	{
+		return claimed.get();
+	}
+
+	//Events written after 'sequence' that are still in the ring, oldest first, up to the first one still being written
+	public List<Event> eventsAfter(long sequence)
+	{
+		long end = claimed.get();
+		long start = Math.max(sequence + 1, end - mask);
+		List<Event> out = new ArrayList<>((int) Math.max(0, end - start + 1));
+		for (long s = start; s <= end; s++) {
+			Event e = ring.get((int) (s & mask));
+			if (e == null || e.sequence < s) {
+				// Claimed but not filled yet: stop here so the next poll still sees it
+				break;
+			}
+			// A slot already reused by a newer event has lost this one
+			if (e.sequence == s) {
+				out.add(e);
+			}
+		}
+		return out;
+	}
+
+	//Events lost before they were stored: the ring wrapped round while their writer was stalled
+	public long droppedEvents()
+	{
+		return dropped.sum();
+	}
+
+	//A reader's position in the event ring: poll() returns what arrived since the last poll
+	public Subscription subscribe()
+	{
+		return new Subscription(claimed.get());
+	}
+
+	public final class Subscription {
+
+		private long position;
+		private long missed;
+
+		Subscription(long position)
+		{
+			this.position = position;
+		}
+
+		public List<Event> poll()
+		{
+			List<Event> events = eventsAfter(position);
+			long newest = events.isEmpty() ? position : events.get(events.size() - 1).sequence;
+			missed += newest - position - events.size();
+			position = newest;
+			return events;
+		}
+
+		//Events overwritten before this reader got to them
+		public long missed()
+		{
+			return missed;
+		}
+	}
+
+
+	private void write(EventKind kind, String task, long done, long total)
+	{
+		long sequence = claimed.incrementAndGet();
+		Event event = new Event(sequence, kind, task, done, total, System.nanoTime());
+		int slot = (int) (sequence & mask);
+		while (true) {
+			Event current = ring.get(slot);
+			// Never put an older event over a newer one that lapped this writer
+			if (current != null && current.sequence > sequence) {
+				dropped.increment();
+				return;
+			}
+			if (ring.compareAndSet(slot, current, event)) {
+				return;
+			}
+		}
+	}
+}
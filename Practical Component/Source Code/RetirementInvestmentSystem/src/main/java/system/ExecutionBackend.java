@@ -0,0 +1,340 @@
+package system;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/*
+Where a headless book runs. A book is the list of input lines of one batch
+command (one account per line for strategy, one scenario per line for
+montecarlo and sustainable); a backend cuts it into contiguous shards, runs
+each shard through BatchCli in shard mode and returns the shard outputs
+concatenated in book order, so the merged output is the same as a serial run.
+
+  forkJoin(N)     shards on a dedicated ForkJoinPool of N threads. The engines'
+                  parallel streams started from a shard run in that pool too,
+                  so N bounds the whole run.
+  virtualThreads  one thread per shard: a virtual thread on Java 21+, found by
+                  reflection so the code still builds for Java 8, else a
+                  platform thread. Meant for shards that mostly wait on I/O;
+                  CPU-bound engine work inside still uses the common pool.
+  processes(N)    N worker JVMs on this host (Launcher --worker), one shard
+                  each. A shard travels to its worker over the worker's stdin
+                  pipe and the results come back over its stdout; workers
+                  share no memory, so a book can use more heap and cores than
+                  one JVM is given.
+
+Shard protocol, used in and out of process: every input line is
+"<default id>TAB<line>", every output line is "+<csv>" for a result or
+"!<message>" for a rejected line, one output per input line in order.
+*/
+public abstract class ExecutionBackend implements AutoCloseable {
+
+	private final int shards;
+
+	ExecutionBackend(int shards)
+	{
+		if (shards <= 0) {
+			throw new IllegalArgumentException("Number of workers must be at least 1.");
+		}
+		this.shards = shards;
+	}
+
+
+	//Runs 'args' (command and options, without input files) over the book; one output line per entry
+	public List<String> run(String[] args, List<String> entries) throws IOException
+	{
+		/*
+        Cuts the book into at most 'shards' contiguous slices and concatenates
+        the slices' outputs.
+        Complexity: O(E) beyond the shard work itself
+        Returns: (output entries in book order)
+        */
+		int n = Math.min(shards, Math.max(1, entries.size()));
+		List<List<String>> slices = new ArrayList<>(n);
+		for (int s = 0; s < n; s++) {
+			slices.add(entries.subList((int) ((long) entries.size() * s / n), (int) ((long) entries.size() * (s + 1) / n)));
+		}
+		List<List<String>> outputs = runShards(args, slices);
+		List<String> merged = new ArrayList<>(entries.size());
+		for (int s = 0; s < n; s++) {
+			List<String> out = outputs.get(s);
+			if (out.size() != slices.get(s).size()) {
+				throw new IOException("Shard " + (s + 1) + " returned " + out.size() + " lines for " + slices.get(s).size());
+			}
+			merged.addAll(out);
+		}
+		return merged;
+	}
+
+	abstract List<List<String>> runShards(String[] args, List<List<String>> slices) throws IOException;
+
+	public abstract String describe();
+
+	@Override
+	public void close()
+	{
+	}
+
+
+	public static ExecutionBackend forkJoin(int threads)
+	{
+		return new ForkJoin(threads);
+	}
+
+	public static ExecutionBackend virtualThreads(int shards)
+	{
+		return new PerTask(shards);
+	}
+
+	public static ExecutionBackend processes(int workers)
+	{
+		return new Processes(workers);
+	}
+
+	//Parses "forkjoin[:N]", "virtual[:N]" or "processes[:N]"; N defaults to the number of cores
+	public static ExecutionBackend parse(String spec)
+	{
+		String[] parts = spec.trim().toLowerCase(Locale.ROOT).split(":", 2);
+		int n = Runtime.getRuntime().availableProcessors();
+		if (parts.length == 2) {
+			try {
+				n = Integer.parseInt(parts[1].trim());
+			} catch (NumberFormatException nf) {
+				throw new IllegalArgumentException("Backend worker count must be a whole number.");
+			}
+		}
+		switch (parts[0]) {
+		case "forkjoin":
+			return forkJoin(n);
+		case "virtual":
+			return virtualThreads(n);
+		case "processes":
+			return processes(n);
+		default:
+			throw new IllegalArgumentException("Backend must be forkjoin[:N], virtual[:N] or processes[:N].");
+		}
+	}
+
+
+	//Runs one slice in this JVM through BatchCli's shard mode
+	private static Callable<List<String>> inProcess(String[] args, List<String> slice)
+	{
+		return () -> BatchCli.runShard(args, slice);
+	}
+
+	//Waits for every shard; the first failure is rethrown
+	private static List<List<String>> join(List<Future<List<String>>> futures) throws IOException
+	{
+		List<List<String>> out = new ArrayList<>(futures.size());
+		try {
+			for (Future<List<String>> f : futures) {
+				out.add(f.get());
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a shard", ex);
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) cause).getCause();
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		} finally {
+			for (Future<List<String>> f : futures) {
+				f.cancel(true);
+			}
+		}
+		return out;
+	}
+
+
+	private static final class ForkJoin extends ExecutionBackend {
+
+		private final ForkJoinPool pool;
+
+		ForkJoin(int threads)
+		{
+			super(threads);
+			this.pool = new ForkJoinPool(threads);
+		}
+
+		@Override
+		List<List<String>> runShards(String[] args, List<List<String>> slices) throws IOException
+		{
+			List<Future<List<String>>> futures = new ArrayList<>(slices.size());
+			for (List<String> slice : slices) {
+				futures.add(pool.submit(inProcess(args, slice)));
+			}
+			return join(futures);
+		}
+
+		@Override
+		public String describe()
+		{
+			return "fork-join pool of " + pool.getParallelism();
+		}
+
+		@Override
+		public void close()
+		{
+			pool.shutdown();
+		}
+	}
+
+
+	private static final class PerTask extends ExecutionBackend {
+
+		private final ExecutorService executor;
+		private final boolean virtual;
+
+		PerTask(int shards)
+		{
+			super(shards);
+			ExecutorService found = null;
+			try {
+				// Java 21+: Executors.newVirtualThreadPerTaskExecutor()
+				found = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException | RuntimeException unavailable) {
+				found = null;
+			}
+			this.virtual = found != null;
+			this.executor = found != null ? found : Executors.newCachedThreadPool(r -> {
+				Thread t = new Thread(r, "shard");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+
+		@Override
+		List<List<String>> runShards(String[] args, List<List<String>> slices) throws IOException
+		{
+			List<Future<List<String>>> futures = new ArrayList<>(slices.size());
+			for (List<String> slice : slices) {
+				futures.add(executor.submit(inProcess(args, slice)));
+			}
+			return join(futures);
+		}
+
+		@Override
+		public String describe()
+		{
+			return (virtual ? "virtual" : "platform") + " thread per shard";
+		}
+
+		@Override
+		public void close()
+		{
+			executor.shutdown();
+		}
+	}
+
+
+	private static final class Processes extends ExecutionBackend {
+
+		private final int workers;
+
+		Processes(int workers)
+		{
+			super(workers);
+			this.workers = workers;
+		}
+
+		@Override
+		List<List<String>> runShards(String[] args, List<List<String>> slices) throws IOException
+		{
+			List<String> command = new ArrayList<>();
+			command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add(Launcher.class.getName());
+			command.add("--worker");
+			command.addAll(Arrays.asList(args));
+
+			// Start every worker first so they run side by side, then feed and drain each on its own thread
+			List<Process> started = new ArrayList<>(slices.size());
+			ExecutorService io = Executors.newCachedThreadPool(r -> {
+				Thread t = new Thread(r, "worker-io");
+				t.setDaemon(true);
+				return t;
+			});
+			try {
+				for (int s = 0; s < slices.size(); s++) {
+					started.add(new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start());
+				}
+				List<Future<List<String>>> futures = new ArrayList<>(slices.size());
+				for (int s = 0; s < slices.size(); s++) {
+					Process worker = started.get(s);
+					List<String> slice = slices.get(s);
+					io.submit(() -> feed(worker, slice));
+					futures.add(io.submit(() -> drain(worker)));
+				}
+				return join(futures);
+			} finally {
+				for (Process p : started) {
+					p.destroy();
+				}
+				io.shutdownNow();
+			}
+		}
+
+		//Writes the slice to the worker's stdin and closes it, which ends the worker's input
+		private static Void feed(Process worker, List<String> slice) throws IOException
+		{
+			try (Writer in = new BufferedWriter(new OutputStreamWriter(worker.getOutputStream(), StandardCharsets.UTF_8),
+					1 << 16)) {
+				for (String entry : slice) {
+					in.write(entry);
+					in.write('\n');
+				}
+			}
+			return null;
+		}
+
+		//Reads the worker's output lines until it exits
+		private static List<String> drain(Process worker) throws IOException, InterruptedException
+		{
+			List<String> out = new ArrayList<>();
+			try (BufferedReader reader = new BufferedReader(
+					new InputStreamReader(worker.getInputStream(), StandardCharsets.UTF_8), 1 << 16)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					out.add(line);
+				}
+			}
+			int exit = worker.waitFor();
+			if (exit == BatchCli.USAGE) {
+				throw new IOException("Worker rejected its command line (exit " + exit + ")");
+			}
+			return out;
+		}
+
+		@Override
+		public String describe()
+		{
+			return workers + " worker processes";
+		}
+	}
+}
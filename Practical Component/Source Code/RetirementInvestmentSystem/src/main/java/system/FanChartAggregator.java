@@ -0,0 +1,223 @@
+package system;
+
+import java.util.stream.IntStream;
+
+/*
+Folds many simulated paths into per-year distributions without keeping the
+paths: each year owns one QuantileSketch and one RunningStats, and depletion
+years get their own pair. Memory is O(horizon * k) however many paths run,
+so a P5/P50/P95 fan chart over 1000 years stays small.
+
+Not thread-safe by design: every leaf task of a parallel run folds into its
+own aggregator and the results are merged at the end (see aggregate()).
+*/
+public final class FanChartAggregator implements YearSink {
+
+	//Runs one path, streaming its balances into the sink; returns the last year written
+	public interface PathSimulator {
+		int simulate(int path, YearSink sink);
+	}
+
+	private final int horizon;
+	private final int k;
+	private final QuantileSketch[] yearSketches;
+	private final RunningStats[] yearStats;
+	private final QuantileSketch depletionSketch;
+	private final RunningStats depletionStats;
+	private long paths;
+	private long survivors;
+
+	// Tracks the path currently being folded
+	private int lastYear = -1;
+	private double lastBalance;
+
+	public FanChartAggregator(int horizon, int k)
+	{
+		if (horizon <= 0) {
+			throw new IllegalArgumentException("Horizon must be at least one year.");
+		}
+		this.horizon = horizon;
+		this.k = k;
+		this.yearSketches = new QuantileSketch[horizon + 1];
+		this.yearStats = new RunningStats[horizon + 1];
+		for (int y = 0; y <= horizon; y++) {
+			yearSketches[y] = new QuantileSketch(k);
+			yearStats[y] = new RunningStats();
+		}
+		this.depletionSketch = new QuantileSketch(k);
+		this.depletionStats = new RunningStats();
+	}
+
+
+	public static FanChartAggregator aggregate(int paths, int horizon, int k, PathSimulator simulator)
+	{
+		/*
+        Runs the paths in parallel. The stream's collect() makes one
+        aggregator per leaf of its split (a few per worker, not one), folds
+        that leaf's paths into it and merges the partial aggregators pairwise
+        as the leaves finish; the sketches' merge is unbiased however many
+        partials there are.
+        Complexity: O(P * H) time, O(leaves * H * k) memory
+        Returns: (merged aggregator)
+        */
+		return IntStream.range(0, paths).parallel().collect(
+				() -> new FanChartAggregator(horizon, k),
+				(agg, path) -> {
+					int last = simulator.simulate(path, agg);
+					agg.finishPath(last);
+				},
+				FanChartAggregator::merge);
+	}
+
+
+	public static FanChartAggregator of(BalanceMatrix matrix, int k)
+	{
+		/*
+        The same fan read back from stored paths (one row per path, columns =
+        years 0..H, zeros after depletion as MonteCarloEngine.depletionPaths
+        writes them). Each year's column streams from the matrix into its own
+        sketch, years in parallel; a path's depletion year is the first year
+        at zero, found by bisection since balances stay at zero once gone.
+        Complexity: O(P * H) time, O(H * k) memory
+        Returns: (aggregator over years 0..H)
+        */
+		int horizon = matrix.columns() - 1;
+		FanChartAggregator fan = new FanChartAggregator(horizon, k);
+		IntStream.rangeClosed(0, horizon).parallel().forEach(y -> {
+			QuantileSketch sketch = matrix.columnSketch(y, k);
+			fan.yearSketches[y].merge(sketch);
+			RunningStats stats = fan.yearStats[y];
+			for (int r = 0; r < matrix.rows(); r++) {
+				stats.add(matrix.get(r, y));
+			}
+		});
+		for (int r = 0; r < matrix.rows(); r++) {
+			if (matrix.get(r, horizon) > 0) {
+				fan.survivors++;
+				continue;
+			}
+			int low = -1;
+			int high = horizon;
+			while (high - low > 1) {
+				int mid = (low + high) >>> 1;
+				if (matrix.get(r, mid) > 0) {
+					low = mid;
+				} else {
+					high = mid;
+				}
+			}
+			fan.depletionSketch.add(high);
+			fan.depletionStats.add(high);
+		}
+		fan.paths = matrix.rows();
+		return fan;
+	}
+
+
+	@Override
+	public void accept(int year, double balance)
+	{
+		if (year > horizon) {
+			return;
+		}
+		yearSketches[year].add(balance);
+		yearStats[year].add(balance);
+		lastYear = year;
+		lastBalance = balance;
+	}
+
+	//Closes the current path: depleted years count as zero balances for the fan chart
+	public void finishPath(int lastYearWritten)
+	{
+		int last = Math.min(lastYearWritten, horizon);
+		boolean depleted = lastYear >= 0 && lastBalance <= 0;
+		for (int y = last + 1; y <= horizon; y++) {
+			yearSketches[y].add(0.0);
+			yearStats[y].add(0.0);
+		}
+		if (depleted) {
+			depletionSketch.add(last);
+			depletionStats.add(last);
+		} else {
+			survivors++;
+		}
+		paths++;
+		lastYear = -1;
+	}
+
+	public void merge(FanChartAggregator other)
+	{
+		if (other.horizon != horizon) {
+			throw new IllegalArgumentException("Cannot merge aggregators with different horizons.");
+		}
+		for (int y = 0; y <= horizon; y++) {
+			yearSketches[y].merge(other.yearSketches[y]);
+			yearStats[y].merge(other.yearStats[y]);
+		}
+		depletionSketch.merge(other.depletionSketch);
+		depletionStats.merge(other.depletionStats);
+		paths += other.paths;
+		survivors += other.survivors;
+	}
+
+	public int horizon()
+	{
+		return horizon;
+	}
+
+	public int sketchSize()
+	{
+		return k;
+	}
+
+	public long paths()
+	{
+		return paths;
+	}
+
+	//Share of paths that still had money at the horizon
+	public double successRate()
+	{
+		return paths == 0 ? 0.0 : (double) survivors / paths;
+	}
+
+	//One value per year (0..horizon) at percentile p in [0, 100]
+	public double[] percentileSeries(double p)
+	{
+		double[] out = new double[horizon + 1];
+		for (int y = 0; y <= horizon; y++) {
+			out[y] = yearSketches[y].quantile(p / 100.0);
+		}
+		return out;
+	}
+
+	//Percentile p in [0, 100] of one year's balances
+	public double percentile(int year, double p)
+	{
+		return yearSketches[year].quantile(p / 100.0);
+	}
+
+	public double[] meanSeries()
+	{
+		double[] out = new double[horizon + 1];
+		for (int y = 0; y <= horizon; y++) {
+			out[y] = yearStats[y].mean();
+		}
+		return out;
+	}
+
+	public RunningStats yearStats(int year)
+	{
+		return yearStats[year];
+	}
+
+	public QuantileSketch depletionYears()
+	{
+		return depletionSketch;
+	}
+
+	public RunningStats depletionStats()
+	{
+		return depletionStats;
+	}
+}
@@ -0,0 +1,209 @@
+package system;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/*
+Backtests a withdrawal strategy against a historical annual-returns series by
+replaying it from every possible start year (rolling windows).
+
+For the withdraw-first convention used by finallyRetired, the un-floored
+balance after a window s .. s+H-1 unrolls to
+
+    X = B0 * P(s, s+H) - e * sum_{k=s}^{s+H-1} (1+g)^(k-s) * P(k, s+H)
+
+where P(a, b) is the growth factor of returns a .. b-1. With the log-sum
+prefix L[i] = sum_{j<i} log(1 + r_j) and a second prefix
+Q[i] = sum_{j<i} exp(j*log(1+g) - L[j]) every window is O(1), so all windows
+together cost O(n) instead of O(n * horizon). Once a withdrawal overdraws the
+account the un-floored balance can never recover, so the window succeeds
+exactly when X > 0 (money left after the last year; see BacktestReport).
+A window whose scale factor exp(L[s+H] - s*log(1+g)) or result would overflow
+a double is replayed year by year instead.
+*/
+public final class HistoricalBacktester {
+
+	// exp() of anything larger overflows a double; beyond it we replay each window instead
+	private static final double MAX_EXPONENT = 600.0;
+
+	private final double[] returns;
+	private final int[] yearLabels;
+	private final double[] logPrefix;
+
+	public HistoricalBacktester(double[] returns, int[] yearLabels)
+	{
+		if (returns.length == 0) {
+			throw new IllegalArgumentException("Return series is empty.");
+		}
+		if (yearLabels != null && yearLabels.length != returns.length) {
+			throw new IllegalArgumentException("Year labels must match the number of returns.");
+		}
+		for (int i = 0; i < returns.length; i++) {
+			if (!(returns[i] > -1.0) || Double.isInfinite(returns[i])) {
+				throw new IllegalArgumentException(String.format("Return %d (%s) must be a finite value above -100%%.", i + 1, returns[i]));
+			}
+		}
+
+		this.returns = returns.clone();
+		this.yearLabels = yearLabels == null ? null : yearLabels.clone();
+		this.logPrefix = new double[returns.length + 1];
+		for (int i = 0; i < returns.length; i++) {
+			logPrefix[i + 1] = logPrefix[i] + Math.log1p(returns[i]);
+		}
+	}
+
+
+	//Loads one return per line ("0.07", "7" or "1929,-8.4"); '#' starts a comment.
+	//Like the rate fields, a series with any value of magnitude 1 or more is read as percentages.
+	public static HistoricalBacktester load(Path file) throws IOException
+	{
+		double[] values = new double[256];
+		int[] labels = new int[256];
+		boolean labelled = true;
+		boolean percent = false;
+		int n = 0;
+		int lineNo = 0;
+
+		try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				lineNo++;
+				int hash = line.indexOf('#');
+				if (hash >= 0) {
+					line = line.substring(0, hash);
+				}
+				line = line.trim();
+				if (line.isEmpty()) {
+					continue;
+				}
+
+				String[] parts = line.split("[,;\\s]+");
+				try {
+					double value = Double.parseDouble(parts[parts.length - 1]);
+					if (n == values.length) {
+						values = Arrays.copyOf(values, n * 2);
+						labels = Arrays.copyOf(labels, n * 2);
+					}
+					if (parts.length >= 2) {
+						labels[n] = Integer.parseInt(parts[0]);
+					} else {
+						labelled = false;
+					}
+					values[n++] = value;
+					percent |= Math.abs(value) >= 1;
+				} catch (NumberFormatException nf) {
+					if (n == 0) {
+						continue; // header row
+					}
+					throw new IOException(String.format("%s line %d: '%s' is not a number.", file, lineNo, line));
+				}
+			}
+		}
+
+		double[] series = Arrays.copyOf(values, n);
+		if (percent) {
+			for (int i = 0; i < n; i++) {
+				series[i] /= 100.0;
+			}
+		}
+		return new HistoricalBacktester(series, labelled ? Arrays.copyOf(labels, n) : null);
+	}
+
+
+	public int length()
+	{
+		return returns.length;
+	}
+
+	public int labelOf(int index)
+	{
+		return yearLabels == null ? index + 1 : yearLabels[index];
+	}
+
+
+	public BacktestReport run(double balance, double annualExpense, int horizon)
+	{
+		return run(balance, WithdrawalSchedule.constant(annualExpense), horizon);
+	}
+
+
+	public BacktestReport run(double balance, WithdrawalSchedule schedule, int horizon)
+	{
+		/*
+        Evaluates every rolling start year in parallel.
+        Complexity: O(n) for inflation-indexed schedules (prefix sums; a window
+                    that would overflow is replayed in O(H)),
+                    O(n * H) replay for step-down schedules
+        Returns: (success rate, worst / best terminal balance)
+        */
+		if (horizon <= 0 || horizon > returns.length) {
+			throw new IllegalArgumentException(String.format("Horizon must be between 1 and %d years.", returns.length));
+		}
+
+		int windows = returns.length - horizon + 1;
+		double[] terminal = new double[windows];
+
+		double[] scaled = schedule.isInflationIndexedOnly() ? scaledWithdrawalPrefix(schedule.getInflation()) : null;
+		if (scaled != null) {
+			double lg = Math.log1p(schedule.getInflation());
+			double e = schedule.getBaseExpense();
+			IntStream.range(0, windows).parallel().forEach(s -> {
+				int end = s + horizon;
+				double scale = logPrefix[end] - s * lg;
+				if (Math.abs(scale) > MAX_EXPONENT) {
+					terminal[s] = replay(balance, schedule, s, horizon);
+					return;
+				}
+				double x = balance * Math.exp(logPrefix[end] - logPrefix[s])
+						- e * Math.exp(scale) * (scaled[end] - scaled[s]);
+				if (Double.isNaN(x) || Double.isInfinite(x)) {
+					// The product overflowed although each factor fits
+					terminal[s] = replay(balance, schedule, s, horizon);
+					return;
+				}
+				terminal[s] = x > 0 ? x : 0;
+			});
+		} else {
+			IntStream.range(0, windows).parallel().forEach(s -> terminal[s] = replay(balance, schedule, s, horizon));
+		}
+
+		return BacktestReport.of(this, horizon, terminal);
+	}
+
+
+	//Q[i] = sum_{j<i} exp(j*log(1+g) - L[j]); null when the exponents would overflow
+	private double[] scaledWithdrawalPrefix(double inflation)
+	{
+		double lg = Math.log1p(inflation);
+		double[] q = new double[returns.length + 1];
+		for (int j = 0; j < returns.length; j++) {
+			double exponent = j * lg - logPrefix[j];
+			if (Math.abs(exponent) > MAX_EXPONENT || Math.abs(logPrefix[j + 1]) > MAX_EXPONENT) {
+				return null;
+			}
+			q[j + 1] = q[j] + Math.exp(exponent);
+		}
+		return q;
+	}
+
+
+	//Direct withdraw-first replay of one window; glide-path rates are ignored (history supplies the returns)
+	private double replay(double balance, WithdrawalSchedule schedule, int start, int horizon)
+	{
+		double inflate = 1 + schedule.getInflation();
+		double expense = schedule.getBaseExpense();
+		double B = balance;
+
+		for (int year = 1; year <= horizon && B > 0; year++) {
+			B -= expense * schedule.stepFactorAt(year);
+			B = B > 0 ? B * (1 + returns[start + year - 1]) : 0;
+			expense *= inflate;
+		}
+		return B;
+	}
+}
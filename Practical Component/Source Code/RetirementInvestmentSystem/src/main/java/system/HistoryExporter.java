@@ -0,0 +1,273 @@
+package system;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/*
+Streams year-by-year balance histories to a file as the kernels produce them.
+
+series(id) hands out a YearSink for one scenario; the kernel loop
+(ScenarioEngine.stream) pushes each year's balance into it, and the row is
+encoded straight into one direct buffer that is written to the channel
+whenever it fills. Nothing per year is kept, so exporting millions of
+client-years uses the same memory as exporting one, and numbers are encoded
+by hand instead of through String.format so the encoder keeps up with the disk.
+
+Formats:
+  CSV     id,year,balance             (header line first)
+  JSONL   {"id":"..","year":n,"balance":x}
+  BINARY  "RISH", int version, then per series: unsigned short id length,
+          UTF-8 id, (int year, double balance) rows, int -1 terminator
+Text formats write balances to the cent; BINARY keeps the full double.
+
+Not thread-safe: one exporter is fed by one thread.
+*/
+public final class HistoryExporter implements AutoCloseable {
+
+	public enum Format
+	{
+		CSV, JSONL, BINARY;
+
+		//By file extension: .jsonl / .json, .bin / .ris, anything else CSV
+		public static Format forFileName(String name)
+		{
+			String lower = name.toLowerCase(Locale.ROOT);
+			if (lower.endsWith(".jsonl") || lower.endsWith(".json")) {
+				return JSONL;
+			}
+			if (lower.endsWith(".bin") || lower.endsWith(".ris")) {
+				return BINARY;
+			}
+			return CSV;
+		}
+
+		public static Format parse(String name)
+		{
+			try {
+				return valueOf(name.toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException unknown) {
+				throw new IllegalArgumentException("Format must be csv, jsonl or binary.");
+			}
+		}
+	}
+
+	private static final int BINARY_MAGIC = 0x52495348;   // "RISH"
+	private static final int BINARY_VERSION = 1;
+	private static final int BUFFER_BYTES = 1 << 20;
+	// Longest text row after the id: ,"year":-2147483648,"balance":<Double.toString>}\n
+	private static final int MAX_ROW_TAIL = 64;
+	// |balance| below this is written from whole cents; larger values fall back to Double.toString
+	private static final double CENT_LIMIT = 1e15;
+
+	private final WritableByteChannel channel;
+	private final Format format;
+	private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_BYTES);
+	private final byte[] digits = new byte[20];
+	private final YearSink sink = this::row;
+	private byte[] prefix = new byte[0];
+	private boolean inSeries;
+	private long rows;
+	private long series;
+
+
+	public HistoryExporter(WritableByteChannel channel, Format format)
+	{
+		this.channel = channel;
+		this.format = format;
+		if (format == Format.CSV) {
+			ascii("id,year,balance\n");
+		} else if (format == Format.BINARY) {
+			buf.putInt(BINARY_MAGIC).putInt(BINARY_VERSION);
+		}
+	}
+
+	public static HistoryExporter open(Path file, Format format) throws IOException
+	{
+		return new HistoryExporter(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING), format);
+	}
+
+
+	//Starts the next scenario's rows; the sink stays valid until series() or close() is called again
+	public YearSink series(String id)
+	{
+		endSeries();
+		byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+		switch (format) {
+		case JSONL:
+			prefix = ("{\"id\":\"" + jsonEscape(id) + "\",\"year\":").getBytes(StandardCharsets.UTF_8);
+			break;
+		case BINARY:
+			if (idBytes.length > 0xFFFF) {
+				throw new IllegalArgumentException("Scenario id is too long to export.");
+			}
+			ensure(2 + idBytes.length);
+			buf.putShort((short) idBytes.length).put(idBytes);
+			break;
+		case CSV:
+		default:
+			prefix = (csvEscape(id) + ",").getBytes(StandardCharsets.UTF_8);
+		}
+		inSeries = true;
+		series++;
+		return sink;
+	}
+
+	//Rows written so far, over all series
+	public long rowsWritten()
+	{
+		return rows;
+	}
+
+	public long seriesWritten()
+	{
+		return series;
+	}
+
+	//Flushes everything encoded so far to the channel
+	public void flush() throws IOException
+	{
+		buf.flip();
+		while (buf.hasRemaining()) {
+			channel.write(buf);
+		}
+		buf.clear();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try {
+			endSeries();
+			flush();
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		} finally {
+			channel.close();
+		}
+	}
+
+
+	private void row(int year, double balance)
+	{
+		if (format == Format.BINARY) {
+			ensure(12);
+			buf.putInt(year).putDouble(balance);
+		} else {
+			ensure(prefix.length + MAX_ROW_TAIL);
+			buf.put(prefix);
+			if (format == Format.JSONL) {
+				putLong(year);
+				ascii(",\"balance\":");
+				putMoney(balance);
+				buf.put((byte) '}');
+			} else {
+				putLong(year);
+				buf.put((byte) ',');
+				putMoney(balance);
+			}
+			buf.put((byte) '\n');
+		}
+		rows++;
+	}
+
+	private void endSeries()
+	{
+		if (inSeries && format == Format.BINARY) {
+			ensure(4);
+			buf.putInt(-1);
+		}
+		inSeries = false;
+	}
+
+	//Makes room for n more bytes; a single row never exceeds the buffer except for a huge id
+	private void ensure(int n)
+	{
+		if (buf.remaining() >= n) {
+			return;
+		}
+		try {
+			flush();
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		if (buf.remaining() < n) {
+			throw new IllegalArgumentException("Scenario id is too long to export.");
+		}
+	}
+
+	//Two decimals from whole cents; NaN, infinities and huge values use Double.toString
+	private void putMoney(double value)
+	{
+		if (!(Math.abs(value) < CENT_LIMIT)) {
+			ascii(Double.isNaN(value) || Double.isInfinite(value) ? "null" : Double.toString(value));
+			return;
+		}
+		long cents = Math.round(value * 100);
+		if (cents < 0) {
+			buf.put((byte) '-');
+			cents = -cents;
+		}
+		putLong(cents / 100);
+		int frac = (int) (cents % 100);
+		buf.put((byte) '.').put((byte) ('0' + frac / 10)).put((byte) ('0' + frac % 10));
+	}
+
+	private void putLong(long value)
+	{
+		if (value < 0) {
+			if (value == Long.MIN_VALUE) {
+				ascii(Long.toString(value));
+				return;
+			}
+			buf.put((byte) '-');
+			value = -value;
+		}
+		int n = 0;
+		do {
+			digits[n++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+		while (n > 0) {
+			buf.put(digits[--n]);
+		}
+	}
+
+	private void ascii(String text)
+	{
+		for (int i = 0; i < text.length(); i++) {
+			buf.put((byte) text.charAt(i));
+		}
+	}
+
+	private static String csvEscape(String id)
+	{
+		if (id.indexOf(',') < 0 && id.indexOf('"') < 0 && id.indexOf('\n') < 0 && id.indexOf('\r') < 0) {
+			return id;
+		}
+		return "\"" + id.replace("\"", "\"\"") + "\"";
+	}
+
+	private static String jsonEscape(String id)
+	{
+		StringBuilder sb = new StringBuilder(id.length() + 8);
+		for (int i = 0; i < id.length(); i++) {
+			char c = id.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,45 @@
+package system;
+
+/*
+Entry point of the executable JAR.
+
+Keeps the GUI out of the picture until it is actually needed: MainWindow (and
+with it Swing and JFreeChart) is only loaded when no launcher mode is given.
+
+  (no arguments)     start the Swing GUI
+  --headless CMD     batch calculators on stdin/files, no AWT (see BatchCli)
+  --worker CMD       one shard of a 'processes' backend run: shard lines on
+                     stdin, shard results on stdout (see ExecutionBackend)
+  --cds-training     exercise the startup path once (opening the window when
+                     there is a display) and exit; used by the Maven 'cds' and
+                     'aot' profiles to record which classes go into the Class
+                     Data Sharing archive
+*/
+public final class Launcher {
+
+	private Launcher()
+	{
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		String mode = args.length > 0 ? args[0] : "";
+
+		switch (mode) {
+		case "--headless":
+		case "--worker":
+			// A worker is a headless run whose command carries --shard (added by the processes backend)
+			System.setProperty("java.awt.headless", "true");
+			System.exit(BatchCli.run(java.util.Arrays.copyOfRange(args, 1, args.length), System.in, System.out, System.err));
+			break;
+		case "--cds-training":
+			CdsTraining.run();
+			// The training window's timers would keep the JVM (and the archive dump) waiting
+			System.exit(0);
+			break;
+		default:
+			MainWindow.main(args);
+			break;
+		}
+	}
+}
@@ -27,7 +27,6 @@ The algorithmic logic and complexity analysis remain the work of the students.
 */
 
 
-import java.awt.BasicStroke;
 import java.awt.BorderLayout;
 import java.awt.CardLayout;
 import java.awt.Color;
@@ -37,28 +36,14 @@ import java.awt.Font;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
-import java.awt.geom.Ellipse2D;
-import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableCellRenderer;
-import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableCellEditor;
 
-import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
-import org.jfree.chart.axis.NumberAxis;
-import org.jfree.chart.plot.CategoryPlot;
-import org.jfree.chart.plot.XYPlot;
-import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
-import org.jfree.chart.ui.RectangleInsets;
-import org.jfree.data.category.DefaultCategoryDataset;
-import org.jfree.data.xy.XYSeries;
-import org.jfree.data.xy.XYSeriesCollection;
 
 
 public class MainWindow extends JFrame {
@@ -67,50 +52,39 @@ public class MainWindow extends JFrame {
 	 * 
 	 */
 	private static final long serialVersionUID = 1L;
-	private java.util.Set<Integer> invalidRowSet = new java.util.HashSet<>();
 
-	static double principal;
-	static double rate;
-	double endBalance;
-	double expense;
-	double balance;
-	static int years; 
-    private static DefaultTableModel model;
+	//Every calculation in this window runs through its own session; the inputs of a
+	//click live only in that listener and travel as an immutable Scenario
+	private final CalculationSession session = new CalculationSession();
+	//Variable page: validation dialog lists at most this many bad rows
+	private static final int MAX_LISTED_RATE_ERRORS = 20;
+	//Compare page: the chart legend is hidden beyond this many overlaid scenarios
+	private static final int MAX_LEGEND_SERIES = 12;
+	//Live mode: one debounced background recomputation per window
+	private final RecomputeScheduler liveScheduler = new RecomputeScheduler();
+	//Every Calculate click is saved to the scenario store; it is opened in the background
+	//so the first frame never waits on the disk (null when it could not be opened)
+	private final java.util.concurrent.CompletableFuture<ScenarioStore> store =
+			java.util.concurrent.CompletableFuture.supplyAsync(MainWindow::openStore);
+	private static final String STORE_CLIENT = System.getProperty("user.name", "local");
+	//Recent Scenarios page: at most this many runs are listed
+	private static final int RECENT_LIMIT = 200;
+	//Status bar: engine progress is polled this often, never pushed from worker threads
+	private static final int STATUS_POLL_MILLIS = 250;
+	private final JLabel engineStatus = new JLabel(" ");
+	private final EngineMonitor.Subscription engineEvents = EngineMonitor.shared().subscribe();
+    private RateTableModel model;
+
+	//Creates a main JPanel object with a primary constructor that accepts a CardLayout
+	//This CardLayout would allow the user to switch pages using mainPanel object
+	private final CardLayout cardLayout = new CardLayout();
+	private final JPanel mainPanel = new JPanel(cardLayout);
+	private final java.util.Map<String, java.util.function.Supplier<JPanel>> pageBuilders = new java.util.LinkedHashMap<>();
+	private final java.util.Set<String> builtPages = new java.util.HashSet<>();
 
 	
-	private static double fixedInvestor(double principal, double rate, int years)
-	{
-		/*
-        Simulates compound interest with a fixed rate.
-        Complexity: O(T) - Linear Time
-        Returns: (balance)
-        */
-		
-		double balance = principal;
-		for (int i = 1; i <= years; i++)
-		{
-			balance = balance * (1 + rate);
-		}
-		
-		return balance;		  
-	}
-	
-	
-	private double variableInvestor(double principal, double[] rate_list)
-	{
-		/*
-	    Simulates growth based on a list of changing rates.
-	    Complexity: O(N) - Linear Time based on list size
-	    Returns: (balance)
-	    """*/
-		double balance = principal; 
-	    for (double rate : rate_list)
-	    {
-	        balance = balance * (1 + rate);
-	    }	 
-	    return balance;
-	}
-	
+	//The calculator kernels live in RetirementKernel so the headless modes can use them
+	//without loading Swing; the pages reach them through CalculationSession
 
 	//This follows a withdraw first, then grow approach
 	public static int finallyRetired(double balance, double annualExpense, double rate, int capYears) 
@@ -122,22 +96,9 @@ public class MainWindow extends JFrame {
         Returns: (years_lasted, history_list)
         """
         */
-	    int years = 0;
-	    while (balance > 0 && years < capYears) {
-	        // Withdraw at start of year
-	        balance -= annualExpense;
-	
-	        if (balance > 0) {
-	            // Grow remainder
-	            balance += balance * rate;
-	        } else {
-	            balance = 0; // floor at zero for cleanliness
-	        }
-	
-	        years++;
-	    }
-	
-	    return years ;
+	    // Delegates to the shared single-pass kernel so every view uses the same convention
+	    return RetirementKernel.yearsLasted(balance, annualExpense, rate, capYears,
+	            RetirementKernel.Timing.WITHDRAW_FIRST);
 	}
 	
 	public static double maximumExpensed(double balance, double rate, int targetYears) {
@@ -154,27 +115,7 @@ public class MainWindow extends JFrame {
         Returns: (low)
         */
 
-	    double low = 0.0;
-	    double high = balance;      // Upper bound (withdraw everything in year 1)
-	    double epsilon = 0.01;      // Precision to 1 cent
-
-	    // Binary Search Loop
-	    while ((high - low) > epsilon) {
-	        double mid = (high + low) / 2.0;
-
-	        // Run simulation using mid as the withdrawal amount
-	        int yearsLasted = finallyRetired(balance, mid, rate, 120);
-
-	        if (yearsLasted < targetYears) {
-	            // Money ran out too fast → spending too much
-	            high = mid;
-	        } else {
-	            // Money lasted too long or just right → can spend more
-	            low = mid;
-	        }
-	    }
-
-	    return low; // best estimate
+	    return RetirementKernel.maximumExpensed(balance, rate, targetYears);
 	}
 
 	    
@@ -187,79 +128,27 @@ public class MainWindow extends JFrame {
 		setDefaultCloseOperation(EXIT_ON_CLOSE);
 	    setLocationRelativeTo(null);
 	
-		 CardLayout cardLayout = new CardLayout();
-		
-		 
-		 //Creates a main JPanel object with a primary constructor that accepts a CardLayout
-		 //This CardLayout would allow the user to switch pages using mainPanel object
-		 JPanel mainPanel = new JPanel(cardLayout);
-		
-		
-		 //Creates JPanel objects with a primary constructor that accepts a new GridBagLayout
+		 //Only the Menu is built here; the calculator pages are built on first
+		 //navigation (see showPage) so the first frame appears sooner
 		 JPanel homePage = new JPanel(new GridBagLayout());
-		 JPanel fixedGrowthPage = new JPanel(new BorderLayout());
-		 JPanel variableGrowthPage = new JPanel(new BorderLayout());
-		 JPanel retireExpenPage = new JPanel(new BorderLayout());
-		 JPanel optimizePage = new JPanel(new BorderLayout());
-
-
-		//Splits Fixed Investment Page into left and right sections
-
-		JPanel left = new JPanel(new GridBagLayout());   // form
-		JPanel right = new JPanel(new GridBagLayout());   // results
-		
-		fixedGrowthPage.add(left, BorderLayout.WEST);
-		fixedGrowthPage.add(right, BorderLayout.CENTER);
-		
-		left.setPreferredSize(new Dimension(300, 400));
-
-		//Splits Variable Investment Page into left and right sections
-
-		JPanel leftVar = new JPanel(new GridBagLayout());   // form
-		JPanel rightVar = new JPanel(new GridBagLayout());   // results
-		
-		variableGrowthPage.add(leftVar, BorderLayout.WEST);
-		variableGrowthPage.add(rightVar, BorderLayout.CENTER);
-		
-		// Constrain widths by wrapping left in a fixed size container
-
-		leftVar.setPreferredSize(new Dimension(300, 400));
-		
-		
-		//Splits Retirement Expense Page into left and right sections
-		JPanel leftExpen = new JPanel(new GridBagLayout());   // form
-		JPanel rightExpen = new JPanel(new GridBagLayout());   // results
-		
-		retireExpenPage.add(leftExpen, BorderLayout.WEST);
-		retireExpenPage.add(rightExpen, BorderLayout.CENTER);
-		
-		// Constrain widths by wrapping left in a fixed size container
-
-		leftExpen.setPreferredSize(new Dimension(300, 400));
-		
-		//Splits Optimize Withdrawal Page into left and right sections
-		JPanel leftOp = new JPanel(new GridBagLayout());   // form
-		JPanel rightOp = new JPanel(new GridBagLayout());   // results
-				
-		optimizePage.add(leftOp, BorderLayout.WEST);
-		optimizePage.add(rightOp, BorderLayout.CENTER);
-		
-		// Constrain widths by wrapping left in a fixed size container
-
-		leftOp.setPreferredSize(new Dimension(300, 400));
-
-
-		//Adds Pages to the Main
-		
-		mainPanel.add(homePage, "Menu");
-		mainPanel.add(fixedGrowthPage, "FixedGrowth");
-		mainPanel.add(variableGrowthPage,"VariableGrowth");
-		mainPanel.add(retireExpenPage,"RetirementExpense");
-		mainPanel.add(optimizePage, "OptimizeWithdrawal");
+		 
+		 mainPanel.add(homePage, "Menu");
+		 builtPages.add("Menu");
+		 pageBuilders.put("FixedGrowth", this::buildFixedGrowthPage);
+		 pageBuilders.put("VariableGrowth", this::buildVariableGrowthPage);
+		 pageBuilders.put("RetirementExpense", this::buildRetirementExpensePage);
+		 pageBuilders.put("OptimizeWithdrawal", this::buildOptimizeWithdrawalPage);
+		 pageBuilders.put("Compare", this::buildComparePage);
+		 pageBuilders.put("Recent", this::buildRecentPage);
 
 		add(mainPanel);
 	    cardLayout.show(mainPanel, "Menu");
 
+	    //Status bar along the bottom of every page
+	    engineStatus.setBorder(BorderFactory.createEmptyBorder(2, 6, 2, 6));
+	    add(engineStatus, BorderLayout.SOUTH);
+	    new javax.swing.Timer(STATUS_POLL_MILLIS, e -> refreshEngineStatus()).start();
+
 	    //This creates a label with the title of this project
 		JLabel topic = new JLabel("AofA Financial Services - Investment Optimization",SwingConstants.CENTER);
 		topic.setFont(new Font("Arial", Font.BOLD, 20));
@@ -288,6 +177,12 @@ public class MainWindow extends JFrame {
 		JButton optiWithdrawlBtn = new JButton("Optimize Withdrawal");
 		optiWithdrawlBtn.setBackground( new Color(0, 0, 139));
 		optiWithdrawlBtn.setForeground(Color.white);
+		JButton compareBtn = new JButton("Compare Scenarios");
+		compareBtn.setBackground( new Color(0, 0, 139));
+		compareBtn.setForeground(Color.white);
+		JButton recentBtn = new JButton("Recent Scenarios");
+		recentBtn.setBackground( new Color(0, 0, 139));
+		recentBtn.setForeground(Color.white);
 		
 		
 		GridBagConstraints gc = new GridBagConstraints();
@@ -303,32 +198,138 @@ public class MainWindow extends JFrame {
         addToGridBag(homePage,variableGrowthBtn,gc,1,2,1,1);
         addToGridBag(homePage,retDeplBtn,gc,2,2,1,1);
         addToGridBag(homePage,optiWithdrawlBtn,gc,3,2,1,1);
+        addToGridBag(homePage,compareBtn,gc,0,3,4,1);
+        addToGridBag(homePage,recentBtn,gc,0,4,4,1);
 
         //Switches from the Home Page to Fixed Growth Page
         fixedGrowthBtn.addActionListener(e ->
         {
-        	cardLayout.show(mainPanel, "FixedGrowth");
+        	showPage("FixedGrowth");
         });
         
         //Switches from the Home Page to Variable Growth Page
 
         variableGrowthBtn.addActionListener(e ->{
-        	cardLayout.show(mainPanel, "VariableGrowth");
+        	showPage("VariableGrowth");
         });
         
         //Switches from the Home Page to Retirement Expense Page
 
         
         retDeplBtn.addActionListener(e ->{
-        	cardLayout.show(mainPanel, "RetirementExpense");
+        	showPage("RetirementExpense");
         });
         
         //Switches from the Home Page to Optimize Withdrawal Page
 
         optiWithdrawlBtn.addActionListener(e ->{
-        	cardLayout.show(mainPanel, "OptimizeWithdrawal");
+        	showPage("OptimizeWithdrawal");
         });
         
+        //Switches from the Home Page to Compare Scenarios Page
+
+        compareBtn.addActionListener(e ->{
+        	showPage("Compare");
+        });
+
+        //Switches from the Home Page to Recent Scenarios Page
+
+        recentBtn.addActionListener(e ->{
+        	showPage("Recent");
+        });
+
+        //-Dris.eagerPages=true restores the old build-everything-up-front startup (used by StartupBenchmark)
+        if (Boolean.getBoolean("ris.eagerPages")) {
+        	for (String name : pageBuilders.keySet()) {
+        		ensurePage(name);
+        	}
+        }
+
+		this.setVisible(true);	
+
+		warmUpCharts();
+	}
+	//end Main() 
+	
+	
+	//Reads the engine monitor on the EDT; the reads are lock-free, so workers are never held up
+	private void refreshEngineStatus()
+	{
+		EngineMonitor monitor = EngineMonitor.shared();
+		String counts = monitor.total(EngineMonitor.Counter.SCENARIOS) + " scenarios, "
+				+ monitor.total(EngineMonitor.Counter.PATHS) + " rate paths";
+		EngineMonitor.Snapshot snapshot = monitor.snapshot();
+		int others = monitor.running().size() - 1;
+		String text = snapshot == null ? counts
+				: snapshot + (others > 0 ? " (+" + others + " more)" : "") + "  |  " + counts;
+		if (!text.equals(engineStatus.getText())) {
+			engineStatus.setText(text);
+		}
+		List<EngineMonitor.Event> events = engineEvents.poll();
+		if (!events.isEmpty()) {
+			engineStatus.setToolTipText("Last event: " + events.get(events.size() - 1));
+		}
+	}
+
+
+	//Shows a page, building it the first time it is requested
+	private void showPage(String name)
+	{
+		ensurePage(name);
+		cardLayout.show(mainPanel, name);
+	}
+	
+	private void ensurePage(String name)
+	{
+		if (builtPages.add(name)) {
+			mainPanel.add(pageBuilders.get(name).get(), name);
+		}
+	}
+
+	//Shows every page once and returns to the Menu (the CDS training run's walk through the window)
+	void visitAllPages()
+	{
+		for (String name : pageBuilders.keySet()) {
+			showPage(name);
+			mainPanel.paintImmediately(mainPanel.getBounds());
+		}
+		cardLayout.show(mainPanel, "Menu");
+	}
+	
+	
+	//Loads and initialises JFreeChart off the EDT while the user is still on the Menu,
+	//so the first Calculate click does not pay for chart class loading
+	private static void warmUpCharts()
+	{
+		Thread warmUp = new Thread(() -> {
+			try {
+				buildFixedInvestmentChart(1000, 0.05, 2);
+				buildOptimalWithdrawalChart(retirementHistory(1000, 100, 0.05, 2), 100);
+			} catch (RuntimeException | LinkageError ex) {
+				System.err.println("Chart warm-up skipped: " + ex);
+			}
+		}, "chart-warmup");
+		warmUp.setDaemon(true);
+		warmUp.setPriority(Thread.MIN_PRIORITY);
+		warmUp.start();
+	}
+	
+	
+	//Builds the Fixed Growth Page
+	private JPanel buildFixedGrowthPage()
+	{
+		 JPanel fixedGrowthPage = new JPanel(new BorderLayout());
+
+		//Splits Fixed Investment Page into left and right sections
+
+		JPanel left = new JPanel(new GridBagLayout());   // form
+		JPanel right = new JPanel(new GridBagLayout());   // results
+		
+		fixedGrowthPage.add(left, BorderLayout.WEST);
+		fixedGrowthPage.add(right, BorderLayout.CENTER);
+		
+		left.setPreferredSize(new Dimension(300, 400));
+
         //Initializes left and right side of Fixed Growth Page Components
                 
         
@@ -394,28 +395,18 @@ public class MainWindow extends JFrame {
         addToGridBag(left,calculateFixedGrowth,gc2,0,4,2,1);
         addToGridBag(left,clearfBtn,gc2,0,5,2,1);
         addToGridBag(left,backToMenuF,gc2,0,6,2,1);
+        
+        JCheckBox liveF = new JCheckBox("Live");
+        liveF.setToolTipText("Recalculate while typing");
+        addToGridBag(left,liveF,gc2,0,7,2,1);
+        addToGridBag(left,exportButton(fixedGrowthPage, Scenario.Kind.GROWTH),gc2,0,8,2,1);
 
- 
-        //Initializes JScrollPane objects for all pages
+        //Initializes JScrollPane object for this page
         //sets properties to allow nice scrolling
-	    // Scroll container in CENTER of right panel
 	     JScrollPane chartScrollPane = new JScrollPane();
 	     chartScrollPane.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
-	     chartScrollPane.getVerticalScrollBar().setUnitIncrement(16); 
-
-	     JScrollPane variableScrollPane = new JScrollPane();
-	     variableScrollPane.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
-	     variableScrollPane.getVerticalScrollBar().setUnitIncrement(16);
+	     chartScrollPane.getVerticalScrollBar().setUnitIncrement(16);
 
-	     JScrollPane expenseScrollPane = new JScrollPane();
-	     expenseScrollPane.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
-	     expenseScrollPane.getVerticalScrollBar().setUnitIncrement(16); 
-	     
-	     JScrollPane optimizeScrollPane = new JScrollPane();
-	     optimizeScrollPane.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
-	     optimizeScrollPane.getVerticalScrollBar().setUnitIncrement(16); 
-	     
-	     
 	    //Uses addToGridBag method to add components to right side of Fixed Growth Page
 
 		GridBagConstraints gc3 = new GridBagConstraints();
@@ -440,6 +431,20 @@ public class MainWindow extends JFrame {
 		right.add(chartScrollPane, gc3);
 
 
+        //Shows one result on the page; used by the Calculate button and by live mode
+        java.util.function.BiConsumer<ScenarioResult, JFreeChart> showFixed = (result, chart) -> {
+        	endBalValue.setText("$" + String.format("%.2f",result.getValue()));
+        	
+			ChartPanel chartPanel = new org.jfree.chart.ChartPanel(chart);
+			chartPanel.setPreferredSize(new java.awt.Dimension(600, 400));
+			chartPanel.setMouseWheelEnabled(true);
+			
+			// Put inside your scroll pane (keeping finalYear label intact)
+			
+			    chartScrollPane.setViewportView(chartPanel);
+			    chartScrollPane.revalidate();
+			    chartScrollPane.repaint();
+        };
         
         calculateFixedGrowth.addActionListener(e ->{
         	
@@ -454,6 +459,9 @@ public class MainWindow extends JFrame {
         	
         	//Validation Check to see if the values in the fields are in number format
         	
+        	double balance;
+        	double rate;
+        	int years;
         	try
         	{
         		 balance = Double.parseDouble(initialValueField.getText());
@@ -506,35 +514,22 @@ public class MainWindow extends JFrame {
         		return;
         	}
         	
-        	//Converts whole numbers into decimal format if it is > 1
+        	//Scenario converts whole numbers into decimal format if it is > 1
         	//This allows both whole numbers and decimals to be used
-        	if (rate >= 1) {
-                rate /= 100.0;
-            }
-        	
-        	
-        	endBalance = fixedInvestor(balance, rate, years);
-        	
-        	endBalValue.setText("$" + String.format("%.2f",endBalance));
+        	ScenarioResult result = runScenario(fixedGrowthPage, () -> Scenario.growth("fixed", balance, rate, years));
+        	if (result == null) {
+        		return;
+        	}
         	
-
-
         	//Builds and create chart upon successful submission
-			JFreeChart chart = buildFixedInvestmentChart(balance, rate, years);
-			ChartPanel chartPanel = new org.jfree.chart.ChartPanel(chart);
-			chartPanel.setPreferredSize(new java.awt.Dimension(600, 400));
-			chartPanel.setMouseWheelEnabled(true);
-			
-			// Put inside your scroll pane (keeping finalYear label intact)
-			
-			    chartScrollPane.setViewportView(chartPanel);
-			    chartScrollPane.revalidate();
-			    chartScrollPane.repaint();
-		
-
-        	
+        	showFixed.accept(result, fixedChart(result));
         });
         
+        liveRecalculation(liveF,
+        		() -> Scenario.growth("fixed", number(initialValueField), number(interestField), wholeNumber(yearField)),
+        		MainWindow::fixedChart, showFixed,
+        		initialValueField, interestField, yearField);
+        
         
         //Clears Components of Fixed Growth PAGE
         //Placeholder label is set for the chart
@@ -561,10 +556,36 @@ public class MainWindow extends JFrame {
         });
 
         backToMenuF.addActionListener(e ->{
-        	cardLayout.show(mainPanel, "Menu");
+        	showPage("Menu");
         	clearfBtn.doClick();
         });
-        
+
+		return fixedGrowthPage;
+	}
+	
+	
+	//Builds the Variable Growth Page
+	private JPanel buildVariableGrowthPage()
+	{
+		 JPanel variableGrowthPage = new JPanel(new BorderLayout());
+
+		//Splits Variable Investment Page into left and right sections
+
+		JPanel leftVar = new JPanel(new GridBagLayout());   // form
+		JPanel rightVar = new JPanel(new GridBagLayout());   // results
+		
+		variableGrowthPage.add(leftVar, BorderLayout.WEST);
+		variableGrowthPage.add(rightVar, BorderLayout.CENTER);
+		
+		// Constrain widths by wrapping left in a fixed size container
+
+		leftVar.setPreferredSize(new Dimension(300, 400));
+
+        //Initializes JScrollPane object for this page
+        //sets properties to allow nice scrolling
+	     JScrollPane variableScrollPane = new JScrollPane();
+	     variableScrollPane.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+	     variableScrollPane.getVerticalScrollBar().setUnitIncrement(16);
 
      //Initializes left and right side of Variable Growth Page Components
 
@@ -608,7 +629,7 @@ public class MainWindow extends JFrame {
      JButton generateBtn = new JButton("Generate Rate Table");
 
 
-     model = new DefaultTableModel(new Object[]{"Year", "Rate (%)"}, 0);
+     model = new RateTableModel();
 
 
      JTable rateTable = new JTable(model);
@@ -620,6 +641,19 @@ public class MainWindow extends JFrame {
      rateTable.getColumnModel().getColumn(0).setPreferredWidth(80);
      rateTable.getColumnModel().getColumn(1).setPreferredWidth(150);
 
+     // One renderer for the life of the table; it reads the model's invalid-row bits
+     rateTable.setDefaultRenderer(Object.class, new RateTableModel.InvalidRowRenderer());
+
+     // Ctrl+V pastes a column of rates (e.g. from a spreadsheet) at the selected row
+     rateTable.setTransferHandler(new RateTableModel.PasteHandler(rateTable.getTransferHandler()));
+
+     // Keep the year count in step when a paste grows the table
+     model.addTableModelListener(e -> {
+         if (model.getRowCount() > 0) {
+             yearVField.setText(String.valueOf(model.getRowCount()));
+         }
+     });
+
      // Place table in a scroll pane (only once!)
      JScrollPane tableScroll = new JScrollPane(rateTable);
      tableScroll.setPreferredSize(new Dimension(400, 180));
@@ -642,6 +676,11 @@ public class MainWindow extends JFrame {
      addToGridBag(leftVar, calcuBtn,    gc4, 0, 4, 2, 1);
      addToGridBag(leftVar, clearvBtn,    gc4, 0, 5, 2, 1);
      addToGridBag(leftVar, backToMenuV,    gc4, 0, 6, 2, 1);
+     
+     JCheckBox liveV = new JCheckBox("Live");
+     liveV.setToolTipText("Recalculate while typing");
+     addToGridBag(leftVar, liveV,    gc4, 0, 9, 2, 1);
+     addToGridBag(leftVar, exportButton(variableGrowthPage, Scenario.Kind.VARIABLE), gc4, 0, 10, 2, 1);
 
 
 
@@ -691,6 +730,15 @@ public class MainWindow extends JFrame {
 
 
 
+//Shows one result on the page; used by the Calculate button and by live mode
+java.util.function.BiConsumer<ScenarioResult, JFreeChart> showVariable = (result, chart) -> {
+    endBalValueV.setText(String.format("$%,.2f", result.getValue()));
+
+    variableScrollPane.setViewportView(variableChartPanel(chart));
+    rightVar.revalidate();
+    rightVar.repaint();
+};
+
 calcuBtn.addActionListener(e -> {
     commitTableEdits(rateTable);
 
@@ -714,67 +762,29 @@ calcuBtn.addActionListener(e -> {
         return;
     }
 
-    double[] rateList = new double[rows];
-    java.util.List<Integer> badRows = new java.util.ArrayList<>();
-    StringBuilder errors = new StringBuilder();
-
-    for (int r = 0; r < rows; r++) {
-        Object rateObj = model.getValueAt(r, 1);
-        if (rateObj == null) {
-            errors.append(String.format("Row %d: Rate is empty.%n", r + 1));
-            badRows.add(r);
-            continue;
-        }
-        double rateVal;
-        try {
-            rateVal = (rateObj instanceof Number)
-                    ? ((Number) rateObj).doubleValue()
-                    : Double.parseDouble(rateObj.toString().trim());
-        } catch (NumberFormatException ex2) {
-            errors.append(String.format("Row %d: Rate '%s' is not numeric.%n", r + 1, rateObj));
-            badRows.add(r);
-            continue;
-        }
-
-        if (rateVal < 0.0 || rateVal > 1000) {
-	         errors.append(String.format("Row %d: Rate %.2f out of range [0, 1000].%n", r + 1, rateVal));
-	         badRows.add(r);
-	         continue;
-	     }
-        
-        if (rateVal >= 1) {
-            rateVal /= 100.0;
-        }
-
-	     // Bounds: decimal format in [0.0, 1.0] → 0%..100% (non-negative only)
-	     if (Double.isNaN(rateVal) || Double.isInfinite(rateVal)) {
-	         errors.append(String.format("Row %d: Rate must be a finite number.%n", r + 1));
-	         badRows.add(r);
-	         continue;
-	     }
-	     
-
-        rateList[r] = rateVal;
-    }
-
-    if (!badRows.isEmpty()) {
-        highlightInvalidRows(rateTable, badRows);
-        JOptionPane.showMessageDialog(rateTable, errors.toString(),
+    // Every cell was parsed when it was edited; only the flagged rows need reporting
+    if (model.hasInvalidRows()) {
+        rateTable.repaint();
+        JOptionPane.showMessageDialog(rateTable, model.describeInvalidRows(MAX_LISTED_RATE_ERRORS),
                 "Validation Errors", JOptionPane.ERROR_MESSAGE);
         return;
-    } else {
-        clearHighlight(rateTable);
     }
 
-    double finalBalance = variableInvestor(principal, rateList);
-    endBalValueV.setText(String.format("$%,.2f", finalBalance));
-
-    ChartPanel chartPanel = buildVariableXYChartFromRates(principal, rateList);
-    variableScrollPane.setViewportView(chartPanel);
-    right.revalidate();
-    right.repaint();
+    // Read straight from the table's array; Scenario keeps its own converted copy
+    ScenarioResult result = runScenario(rateTable,
+            () -> Scenario.variable("variable", principal, model.ratesView(), model.getRowCount()));
+    if (result == null) {
+        return;
+    }
+    showVariable.accept(result, variableChart(result));
 });
 
+Runnable liveVariable = liveRecalculation(liveV,
+        () -> tableScenario(number(principalField), model),
+        MainWindow::variableChart, showVariable,
+        principalField);
+model.addTableModelListener(e -> liveVariable.run());
+
 
 	// Action: generate a rate table template for the given number of years
 	generateBtn.addActionListener(e -> {
@@ -810,13 +820,8 @@ calcuBtn.addActionListener(e -> {
 	        return;
 	    }
 	
-	    // Clear old data
-	    model.setRowCount(0);
-	
-	    // Populate rows: Year = 1..years, Rate default 0.00
-	    for (int i = 1; i <= years; i++) {
-	        model.addRow(new Object[] { i, 0.00 });
-	    }
+	    // Replace old data with rows Year = 1..years, Rate default 0.00 (one table event)
+	    model.reset(years);
 	
 	    // Optional: move focus to the first rate cell for quick editing
 	    if (years > 0) {
@@ -832,8 +837,8 @@ calcuBtn.addActionListener(e -> {
 	    principalField.setText("");
 	    yearVField.setText("");
 	
-	    // 2) Clear table data
-	    model.setRowCount(0);
+	    // 2) Clear table data (and with it any validation highlighting)
+	    model.reset(0);
 	
 	    // 3) Reset Ending Balance label
 	    endBalValueV.setText("$");
@@ -852,14 +857,11 @@ calcuBtn.addActionListener(e -> {
 	    variableScrollPane.setViewportView(placeholder);
 	   
 	
-	    // 5) Clear any validation highlighting
-	    clearHighlight(rateTable);
-	
-	    // 6) Refresh UI
-	    right.revalidate();
-	    right.repaint();
+	    // 5) Refresh UI
+	    rightVar.revalidate();
+	    rightVar.repaint();
 	
-	    // 7) (Optional) Return focus to the first field
+	    // 6) (Optional) Return focus to the first field
 	    principalField.requestFocusInWindow();
 	});
 
@@ -867,9 +869,34 @@ calcuBtn.addActionListener(e -> {
      // Back to menu
      backToMenuV.addActionListener(e -> {
     	 clearvBtn.doClick();
-         cardLayout.show(mainPanel, "Menu");
+         showPage("Menu");
      });
 
+		return variableGrowthPage;
+	}
+	
+	
+	//Builds the Retirement Expense Page
+	private JPanel buildRetirementExpensePage()
+	{
+		 JPanel retireExpenPage = new JPanel(new BorderLayout());
+
+		//Splits Retirement Expense Page into left and right sections
+		JPanel leftExpen = new JPanel(new GridBagLayout());   // form
+		JPanel rightExpen = new JPanel(new GridBagLayout());   // results
+		
+		retireExpenPage.add(leftExpen, BorderLayout.WEST);
+		retireExpenPage.add(rightExpen, BorderLayout.CENTER);
+		
+		// Constrain widths by wrapping left in a fixed size container
+
+		leftExpen.setPreferredSize(new Dimension(300, 400));
+
+        //Initializes JScrollPane object for this page
+        //sets properties to allow nice scrolling
+	     JScrollPane expenseScrollPane = new JScrollPane();
+	     expenseScrollPane.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+	     expenseScrollPane.getVerticalScrollBar().setUnitIncrement(16);
 
      //Initializes Components of Retirement Depletion Page
      JLabel titleE = new JLabel("Retirement Depletion", SwingConstants.CENTER);
@@ -936,6 +963,11 @@ calcuBtn.addActionListener(e -> {
     addToGridBag(leftExpen,clearEBtn,gc6,1,6,1,1);
     addToGridBag(leftExpen,backToMenuE,gc6,1,7,1,1);
     
+    JCheckBox liveE = new JCheckBox("Live");
+    liveE.setToolTipText("Recalculate while typing");
+    addToGridBag(leftExpen,liveE,gc6,1,8,1,1);
+    addToGridBag(leftExpen,exportButton(retireExpenPage, Scenario.Kind.DEPLETE),gc6,1,9,1,1);
+    
     GridBagConstraints gc7 = new GridBagConstraints();
     gc7.insets = new Insets(10, 10, 10, 10);
     gc7.fill = GridBagConstraints.HORIZONTAL;
@@ -964,6 +996,34 @@ calcuBtn.addActionListener(e -> {
 
      
 
+    //Shows one result on the page; used by the Calculate button and by live mode
+    java.util.function.BiConsumer<ScenarioResult, JFreeChart> showDepletion = (result, chart) -> {
+    	int years = result.getYearsLasted();
+    	
+    	
+    	finalYearValue.setText(String.valueOf(years));
+    	
+    	//Sets final year to
+    	if (finalYearValue.getText().contains("120"))
+    	{
+    		finalYearValue.setText("120 | Retirement funds will never deplete in lifetime");
+    	}
+    	
+    	    ChartPanel chartPanel = new ChartPanel(chart);
+
+    	    // Large preferred size so scroll bars are useful
+    	    chartPanel.setPreferredSize(new Dimension(700, 400));
+    	    chartPanel.setMouseWheelEnabled(true);
+    	    chartPanel.setDomainZoomable(true);
+    	    chartPanel.setRangeZoomable(true);
+
+    	    // Update ONLY the scroll pane viewport; do NOT remove rightExpen
+    	    
+    	     expenseScrollPane.setViewportView(chartPanel);
+    	     expenseScrollPane.revalidate();  // revalidate the scroll pane
+    	     expenseScrollPane.repaint();
+    };
+    
     calculate.addActionListener(e ->{
     	
     	//Validation Check to see if one or more fields are empty. 
@@ -975,6 +1035,9 @@ calcuBtn.addActionListener(e -> {
     		return;
     	}
     	//Validation Check to see if the values in the fields are in number format
+    	double principal;
+    	double expense;
+    	double rate;
     	try
     	{
     		 principal = Double.parseDouble(balanceField.getText());
@@ -985,27 +1048,27 @@ calcuBtn.addActionListener(e -> {
     	//Prevents calculation of contents if fields are not in number format
     	catch(NumberFormatException nf)
     	{
-    		JOptionPane.showMessageDialog(fixedGrowthPage, "Invalid datatype. All fields must be in number format.", "Warning", JOptionPane.WARNING_MESSAGE);
+    		JOptionPane.showMessageDialog(retireExpenPage, "Invalid datatype. All fields must be in number format.", "Warning", JOptionPane.WARNING_MESSAGE);
     		return;
     	}
     	
     	//Validation check to see if balance, rate, years are non-negative numbers
     	if(principal <= 0)
     	{
-    		JOptionPane.showMessageDialog(fixedGrowthPage, "Initial Investment must be a postive number (numbers greater than 0)", "Warning", JOptionPane.WARNING_MESSAGE);
+    		JOptionPane.showMessageDialog(retireExpenPage, "Initial Investment must be a postive number (numbers greater than 0)", "Warning", JOptionPane.WARNING_MESSAGE);
     		return;
     	}
     	
     	if(rate <= 0)
     	{
-    		JOptionPane.showMessageDialog(fixedGrowthPage, "Interest Rate must be a postive number (numbers greater than 0)", "Warning", JOptionPane.WARNING_MESSAGE);
+    		JOptionPane.showMessageDialog(retireExpenPage, "Interest Rate must be a postive number (numbers greater than 0)", "Warning", JOptionPane.WARNING_MESSAGE);
     		return;
     	}
     	
     	if (rate > 1000) 
     	{ 
 			
-    		JOptionPane.showMessageDialog(fixedGrowthPage, "Rate is too large. Please use 1000 or less.", "Warning", JOptionPane.ERROR_MESSAGE);
+    		JOptionPane.showMessageDialog(retireExpenPage, "Rate is too large. Please use 1000 or less.", "Warning", JOptionPane.ERROR_MESSAGE);
 		   
 		    System.err.println("Rate is value too large. Please use 1000 or less.");
     		return;
@@ -1014,62 +1077,36 @@ calcuBtn.addActionListener(e -> {
     	
     	if(expense <= 0)
     	{
-    		JOptionPane.showMessageDialog(fixedGrowthPage, "Expense must be a postive number (numbers greater than 0)", "Warning", JOptionPane.WARNING_MESSAGE);
+    		JOptionPane.showMessageDialog(retireExpenPage, "Expense must be a postive number (numbers greater than 0)", "Warning", JOptionPane.WARNING_MESSAGE);
     		return;
     	}
     	
     	if(expense > principal)
     	{
-    		JOptionPane.showMessageDialog(fixedGrowthPage, "Expense cannot be higher than balance\nPlease enter either a lower expense or higher balance", "Warning", JOptionPane.WARNING_MESSAGE);
+    		JOptionPane.showMessageDialog(retireExpenPage, "Expense cannot be higher than balance\nPlease enter either a lower expense or higher balance", "Warning", JOptionPane.WARNING_MESSAGE);
     		return;
     	}
     	
-    	//Converts whole numbers into decimal format if it is > 1
+    	//Scenario converts whole numbers into decimal format if it is > 1
     	//This allows both whole numbers and decimals to be used
-    	if (rate >= 1) {
-            rate = rate / 100.0;
-        }
-    	
-    	
-    	int years = finallyRetired( principal,  expense,  rate, 120);
-    	
-    	
-    	finalYearValue.setText(String.valueOf(years));
-    	
-    	//Sets final year to
-    	if (finalYearValue.getText().contains("120"))
-    	{
-    		finalYearValue.setText("120 | Retirement funds will never deplete in lifetime");
+    	ScenarioResult result = runScenario(retireExpenPage, () -> Scenario.deplete("depletion", principal, expense, rate));
+    	if (result == null) {
+    		return;
     	}
     	
-    	
-
-
-    	// Build the series & chart
-    	    List<Double> series = balanceSeries(principal, expense, rate);
-    	    JFreeChart chart = buildDepletionJFreeChart(series);
-    	    ChartPanel chartPanel = new ChartPanel(chart);
-
-    	    // Large preferred size so scroll bars are useful
-    	    chartPanel.setPreferredSize(new Dimension(700, 400));
-    	    chartPanel.setMouseWheelEnabled(true);
-    	    chartPanel.setDomainZoomable(true);
-    	    chartPanel.setRangeZoomable(true);
-
-    	    // Update ONLY the scroll pane viewport; do NOT remove rightExpen
-    	    
-    	     expenseScrollPane.setViewportView(chartPanel);
-    	     expenseScrollPane.revalidate();  // revalidate the scroll pane
-    	     expenseScrollPane.repaint();
-    
-
-
-
+    	// One simulation feeds both the displayed depletion year and the chart,
+    	// so they always agree on the withdraw-first convention
+    	showDepletion.accept(result, depletionChart(result));
     });
     
+    liveRecalculation(liveE,
+    		() -> Scenario.deplete("depletion", number(balanceField), number(expenseField), number(rateField)),
+    		MainWindow::depletionChart, showDepletion,
+    		balanceField, expenseField, rateField);
+    
     backToMenuE.addActionListener(e->{
     	clearEBtn.doClick();
-    	cardLayout.show(mainPanel, "Menu");
+    	showPage("Menu");
     });
     
     clearEBtn.addActionListener(e ->{
@@ -1090,7 +1127,33 @@ calcuBtn.addActionListener(e -> {
 	    rightExpen.revalidate();
 	    rightExpen.repaint();
     });
-    
+
+		return retireExpenPage;
+	}
+	
+	
+	//Builds the Optimize Withdrawal Page
+	private JPanel buildOptimizeWithdrawalPage()
+	{
+		 JPanel optimizePage = new JPanel(new BorderLayout());
+
+		//Splits Optimize Withdrawal Page into left and right sections
+		JPanel leftOp = new JPanel(new GridBagLayout());   // form
+		JPanel rightOp = new JPanel(new GridBagLayout());   // results
+				
+		optimizePage.add(leftOp, BorderLayout.WEST);
+		optimizePage.add(rightOp, BorderLayout.CENTER);
+		
+		// Constrain widths by wrapping left in a fixed size container
+
+		leftOp.setPreferredSize(new Dimension(300, 400));
+
+        //Initializes JScrollPane object for this page
+        //sets properties to allow nice scrolling
+	     JScrollPane optimizeScrollPane = new JScrollPane();
+	     optimizeScrollPane.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+	     optimizeScrollPane.getVerticalScrollBar().setUnitIncrement(16);
+
     //Initializes left and right Components of Optimization Withdrawal Page
     JLabel titleO = new JLabel("Optimization Withdrawal", SwingConstants.CENTER);
     titleO.setFont(new Font("Arial", Font.BOLD, 20));
@@ -1154,6 +1217,17 @@ calcuBtn.addActionListener(e -> {
     addToGridBag(leftOp,clearOpBtn,gc8,1,7,1,1);
     addToGridBag(leftOp,backToMenuOp,gc8,1,8,1,1);
     
+    JCheckBox liveO = new JCheckBox("Live");
+    liveO.setToolTipText("Recalculate while typing");
+    addToGridBag(leftOp,liveO,gc8,1,9,1,1);
+
+    JCheckBox exactO = new JCheckBox("Exact cents");
+    exactO.setToolTipText("Whole cents, rounded half-even every year");
+    addToGridBag(leftOp,exactO,gc8,1,10,1,1);
+    addToGridBag(leftOp,exportButton(optimizePage, Scenario.Kind.OPTIMIZE),gc8,1,11,1,1);
+    java.util.function.Supplier<ScenarioEngine.Precision> precisionO = () -> exactO.isSelected()
+    		? ScenarioEngine.Precision.CENTS_HALF_EVEN : ScenarioEngine.Precision.DOUBLE;
+    
     //Uses addToGridBag method to add components to right side of Optimization Withdrawal Page
 
     
@@ -1181,7 +1255,7 @@ calcuBtn.addActionListener(e -> {
     //Back to Home Page from the Optimization Withdrawal Menu
     backToMenuOp.addActionListener(e->{
     	clearOpBtn.doClick();
-    	cardLayout.show(mainPanel,"Menu");
+    	showPage("Menu");
     });
     
     
@@ -1206,17 +1280,37 @@ calcuBtn.addActionListener(e -> {
     	
     });
     
+    //Shows one result on the page; used by the Calculate button and by live mode
+    java.util.function.BiConsumer<ScenarioResult, JFreeChart> showOptimal = (result, chart) -> {
+    	 annualWithdrawlValue.setText("$" + result.formatAmount());
+
+    	// Build the chart that matches the screenshot
+    	ChartPanel chartPanel = new ChartPanel(chart);
+    	chartPanel.setPreferredSize(new Dimension(700, 400));
+    	chartPanel.setMouseWheelEnabled(true);
+    	chartPanel.setDomainZoomable(true);
+    	chartPanel.setRangeZoomable(true);
+
+    	// Update ONLY the scroll pane’s viewport (do not remove right panel or the finalYear label)
+    	    optimizeScrollPane.setViewportView(chartPanel);
+    	    optimizeScrollPane.revalidate();
+    	    optimizeScrollPane.repaint();
+    };
+    
     calculateOp.addActionListener(e->{
     	//Validation Check to see if one or more fields are empty.
     	//This prevents calculation if this is met
     	if(initialBalField.getText().compareTo("") ==0 || returnRateField.getText().compareTo("") == 0 || targetYearField.getText().compareTo("") == 0)
     	{
-    		JOptionPane.showMessageDialog(retireExpenPage, "One or more fields are empty", "Warning", JOptionPane.WARNING_MESSAGE);
+    		JOptionPane.showMessageDialog(optimizePage, "One or more fields are empty", "Warning", JOptionPane.WARNING_MESSAGE);
     		return;
     	}
     	
     	//Validation check to see if one or more fields are in the data type
     	//Throws Exception and prevents calculation if this is met
+    	double balance;
+    	double rate;
+    	int years;
     	try
     	{
     		 balance = Double.parseDouble(initialBalField.getText());
@@ -1269,141 +1363,428 @@ calcuBtn.addActionListener(e -> {
 		}
 
     	
-    	//Converts whole numbers into decimal format if it is > 1
+    	//Scenario converts whole numbers into decimal format if it is > 1
     	//This allows both whole numbers and decimals to be used
+    	ScenarioResult result = runScenario(optimizePage, () -> Scenario.optimize("optimize", balance, rate, years),
+    			precisionO.get());
+    	if (result == null) {
+    		return;
+    	}
     	
-    	if (rate >= 1) {
-            rate = rate / 100.0;
-        }
-    	
-    	 double withdrawal =  maximumExpensed(balance, rate, years);
-    	 
-    	 annualWithdrawlValue.setText("$" + String.format("%.2f",(withdrawal)));
-    	 
+    	// The optimal spending found via binary search and the balance history it produces
+    	showOptimal.accept(result, optimalChart(result));
+    });
+    
+    Runnable liveOptimal = liveRecalculation(liveO,
+    		() -> Scenario.optimize("optimize", number(initialBalField), number(returnRateField), wholeNumber(targetYearField)),
+    		precisionO, MainWindow::optimalChart, showOptimal,
+    		initialBalField, returnRateField, targetYearField);
+    exactO.addActionListener(e -> liveOptimal.run());
+
+		return optimizePage;
+	}	
+	
+	//Builds the Compare Scenarios Page: pinned scenarios overlaid on one chart
+	private JPanel buildComparePage()
+	{
+		JPanel comparePage = new JPanel(new BorderLayout());
+
+		JPanel leftCmp = new JPanel(new GridBagLayout());   // form and pinned list
+		JPanel rightCmp = new JPanel(new BorderLayout());   // overlay chart
+
+		comparePage.add(leftCmp, BorderLayout.WEST);
+		comparePage.add(rightCmp, BorderLayout.CENTER);
+
+		leftCmp.setPreferredSize(new Dimension(320, 400));
+
+		JLabel titleC = new JLabel("Compare Scenarios", SwingConstants.CENTER);
+		titleC.setFont(new Font("Arial", Font.BOLD, 20));
+
+		JLabel kindLabel = new JLabel("Calculator");
+		JComboBox<String> kindBox = new JComboBox<>(new String[] { "Fixed Growth", "Retirement Expense", "Optimize Withdrawal" });
+
+		JLabel nameLabel = new JLabel("Label");
+		JTextField nameField = new JTextField(15);
+
+		JLabel balanceLabelC = new JLabel("Balance");
+		JTextField balanceFieldC = new JTextField(15);
+
+		JLabel rateLabelC = new JLabel("Rate (%)");
+		JTextField rateFieldC = new JTextField(15);
+
+		JLabel yearsLabelC = new JLabel("Years");
+		JTextField yearsFieldC = new JTextField(15);
+
+		JLabel expenseLabelC = new JLabel("Expense");
+		JTextField expenseFieldC = new JTextField(15);
+
+		JButton pinBtn = new JButton("Pin Scenario");
+		pinBtn.setBackground(new Color(0, 100, 0));
+		pinBtn.setForeground(Color.white);
+
+		DefaultListModel<String> pinnedModel = new DefaultListModel<>();
+		JList<String> pinnedList = new JList<>(pinnedModel);
+		JScrollPane pinnedScroll = new JScrollPane(pinnedList);
+		pinnedScroll.setPreferredSize(new Dimension(280, 140));
+
+		JButton removeBtn = new JButton("Remove Selected");
+		removeBtn.setBackground(Color.DARK_GRAY);
+		removeBtn.setForeground(Color.white);
+
+		JButton clearCBtn = new JButton("Clear All");
+		clearCBtn.setBackground(Color.DARK_GRAY);
+		clearCBtn.setForeground(Color.white);
+
+		JButton backToMenuC = new JButton("Back to Menu");
+		backToMenuC.setBackground(new Color(0, 0, 139));
+		backToMenuC.setForeground(Color.white);
+
+		JLabel statusC = new JLabel(" ");
+
+		GridBagConstraints gc10 = new GridBagConstraints();
+		gc10.insets = new Insets(6, 10, 6, 10);
+		gc10.fill = GridBagConstraints.HORIZONTAL;
+
+		addToGridBag(leftCmp, titleC, gc10, 0, 0, 2, 1);
+		addToGridBag(leftCmp, kindLabel, gc10, 0, 1, 1, 1);
+		addToGridBag(leftCmp, kindBox, gc10, 1, 1, 1, 1);
+		addToGridBag(leftCmp, nameLabel, gc10, 0, 2, 1, 1);
+		addToGridBag(leftCmp, nameField, gc10, 1, 2, 1, 1);
+		addToGridBag(leftCmp, balanceLabelC, gc10, 0, 3, 1, 1);
+		addToGridBag(leftCmp, balanceFieldC, gc10, 1, 3, 1, 1);
+		addToGridBag(leftCmp, rateLabelC, gc10, 0, 4, 1, 1);
+		addToGridBag(leftCmp, rateFieldC, gc10, 1, 4, 1, 1);
+		addToGridBag(leftCmp, yearsLabelC, gc10, 0, 5, 1, 1);
+		addToGridBag(leftCmp, yearsFieldC, gc10, 1, 5, 1, 1);
+		addToGridBag(leftCmp, expenseLabelC, gc10, 0, 6, 1, 1);
+		addToGridBag(leftCmp, expenseFieldC, gc10, 1, 6, 1, 1);
+		addToGridBag(leftCmp, pinBtn, gc10, 0, 7, 2, 1);
+		addToGridBag(leftCmp, pinnedScroll, gc10, 0, 8, 2, 1);
+		addToGridBag(leftCmp, removeBtn, gc10, 0, 9, 2, 1);
+		addToGridBag(leftCmp, clearCBtn, gc10, 0, 10, 2, 1);
+		addToGridBag(leftCmp, backToMenuC, gc10, 0, 11, 2, 1);
+		addToGridBag(leftCmp, statusC, gc10, 0, 12, 2, 1);
+
+		//One chart for the life of the page; each refresh only swaps its dataset
+		JFreeChart compareChart = Charts.comparisonTemplate();
+		ChartPanel compareChartPanel = new ChartPanel(compareChart);
+		compareChartPanel.setPreferredSize(new Dimension(700, 400));
+		compareChartPanel.setMouseWheelEnabled(true);
+		compareChartPanel.setDomainZoomable(true);
+		compareChartPanel.setRangeZoomable(true);
+		rightCmp.add(compareChartPanel, BorderLayout.CENTER);
+
+		//Growth and Optimize use years, Retirement Expense uses the expense instead
+		Runnable syncFields = () -> {
+			boolean deplete = kindBox.getSelectedIndex() == 1;
+			yearsFieldC.setEnabled(!deplete);
+			expenseFieldC.setEnabled(deplete);
+			yearsLabelC.setText(kindBox.getSelectedIndex() == 2 ? "Target Years" : "Years");
+		};
+		kindBox.addActionListener(e -> syncFields.run());
+		syncFields.run();
+
+		ScenarioWorkspace workspace = new ScenarioWorkspace();
+		//Evaluation and dataset building run off the EDT; only the newest refresh is shown
+		RecomputeScheduler refresher = new RecomputeScheduler(0);
+
+		Runnable refresh = () -> {
+			List<Scenario> snapshot = workspace.pinned();
+			long before = workspace.evaluatedCount();
+			refresher.submit(() -> {
+				List<ScenarioWorkspace.Curve> curves = workspace.evaluate(snapshot);
+				List<String> labels = new ArrayList<>(curves.size());
+				List<double[]> balances = new ArrayList<>(curves.size());
+				for (ScenarioWorkspace.Curve curve : curves) {
+					labels.add(curve.getScenario().getId());
+					balances.add(curve.balances());
+				}
+				return Charts.comparisonDataset(labels, balances);
+			}, dataset -> {
+				// A legend with dozens of entries costs as much to draw as the curves;
+				// past a dozen the pinned list names them instead
+				compareChart.getLegend().setVisible(dataset.getSeriesCount() <= MAX_LEGEND_SERIES);
+				compareChart.getXYPlot().setDataset(dataset);
+				statusC.setText(String.format("%d pinned, %d recomputed", snapshot.size(),
+						workspace.evaluatedCount() - before));
+			});
+		};
+
+		pinBtn.addActionListener(e -> {
+			int kind = kindBox.getSelectedIndex();
+			JTextField second = kind == 1 ? expenseFieldC : yearsFieldC;
+			if (balanceFieldC.getText().trim().isEmpty() || rateFieldC.getText().trim().isEmpty()
+					|| second.getText().trim().isEmpty()) {
+				JOptionPane.showMessageDialog(comparePage, "One or more fields are empty", "Warning", JOptionPane.WARNING_MESSAGE);
+				return;
+			}
+			String label = nameField.getText().trim().isEmpty()
+					? kindBox.getSelectedItem() + " " + (pinnedModel.size() + 1)
+					: nameField.getText().trim();
+			Scenario scenario;
+			try {
+				double balance = number(balanceFieldC);
+				double rate = number(rateFieldC);
+				if (kind == 0) {
+					scenario = Scenario.growth(label, balance, rate, wholeNumber(yearsFieldC));
+				} else if (kind == 1) {
+					scenario = Scenario.deplete(label, balance, number(expenseFieldC), rate);
+				} else {
+					scenario = Scenario.optimize(label, balance, rate, wholeNumber(yearsFieldC));
+				}
+			} catch (NumberFormatException nf) {
+				JOptionPane.showMessageDialog(comparePage, "Invalid datatype. All fields must be in number format.", "Warning", JOptionPane.WARNING_MESSAGE);
+				return;
+			} catch (IllegalArgumentException bad) {
+				JOptionPane.showMessageDialog(comparePage, bad.getMessage(), "Warning", JOptionPane.WARNING_MESSAGE);
+				return;
+			}
+			if (!workspace.pin(scenario)) {
+				JOptionPane.showMessageDialog(comparePage, "A scenario with these values is already pinned.", "Warning", JOptionPane.WARNING_MESSAGE);
+				return;
+			}
+			pinnedModel.addElement(scenario.toString());
+			nameField.setText("");
+			refresh.run();
+		});
+
+		removeBtn.addActionListener(e -> {
+			int[] selected = pinnedList.getSelectedIndices();
+			for (int i = selected.length - 1; i >= 0; i--) {
+				workspace.unpin(selected[i]);
+				pinnedModel.remove(selected[i]);
+			}
+			if (selected.length > 0) {
+				refresh.run();
+			}
+		});
+
+		clearCBtn.addActionListener(e -> {
+			workspace.clear();
+			pinnedModel.clear();
+			balanceFieldC.setText("");
+			rateFieldC.setText("");
+			yearsFieldC.setText("");
+			expenseFieldC.setText("");
+			nameField.setText("");
+			refresh.run();
+		});
+
+		backToMenuC.addActionListener(e -> showPage("Menu"));
+
+		return comparePage;
+	}
 
-    	// targetYears: from a field or combo; for example:
+	//Builds the Recent Scenarios Page: saved Calculate runs, newest first, and bulk re-runs
+	private JPanel buildRecentPage()
+	{
+		JPanel recentPage = new JPanel(new BorderLayout());
+		JPanel topR = new JPanel(new GridBagLayout());
+		recentPage.add(topR, BorderLayout.NORTH);
+
+		JLabel titleR = new JLabel("Recent Scenarios", SwingConstants.CENTER);
+		titleR.setFont(new Font("Arial", Font.BOLD, 20));
+
+		JLabel filterLabel = new JLabel("Calculator");
+		JComboBox<String> filterBox = new JComboBox<>(
+				new String[] { "All", "Fixed Growth", "Variable Growth", "Retirement Expense", "Optimize Withdrawal" });
+
+		JButton rerunBtn = new JButton("Re-run Shown");
+		rerunBtn.setBackground(new Color(0, 100, 0));
+		rerunBtn.setForeground(Color.white);
+
+		JButton backToMenuR = new JButton("Back to Menu");
+		backToMenuR.setBackground(new Color(0, 0, 139));
+		backToMenuR.setForeground(Color.white);
+
+		JLabel statusR = new JLabel(" ");
+
+		DefaultListModel<String> recentModel = new DefaultListModel<>();
+		JList<String> recentList = new JList<>(recentModel);
+		recentList.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		JScrollPane recentScroll = new JScrollPane(recentList);
+		recentScroll.setBorder(BorderFactory.createEmptyBorder(5, 10, 10, 10));
+		recentPage.add(recentScroll, BorderLayout.CENTER);
+
+		GridBagConstraints gc11 = new GridBagConstraints();
+		gc11.insets = new Insets(6, 10, 6, 10);
+		gc11.fill = GridBagConstraints.HORIZONTAL;
+
+		addToGridBag(topR, titleR, gc11, 0, 0, 4, 1);
+		addToGridBag(topR, filterLabel, gc11, 0, 1, 1, 1);
+		addToGridBag(topR, filterBox, gc11, 1, 1, 1, 1);
+		addToGridBag(topR, rerunBtn, gc11, 2, 1, 1, 1);
+		addToGridBag(topR, backToMenuR, gc11, 3, 1, 1, 1);
+		addToGridBag(topR, statusR, gc11, 0, 2, 4, 1);
+
+		//Entries behind the listed lines, replaced as a whole on every reload
+		List<ScenarioStore.Entry> shown = new ArrayList<>();
+		//Decoding and re-running happen off the EDT; only the newest request is shown
+		RecomputeScheduler loader = new RecomputeScheduler(0);
+
+		java.util.function.Consumer<RecentRows> showRows = rows -> {
+			shown.clear();
+			shown.addAll(rows.entries);
+			recentModel.clear();
+			for (String line : rows.lines) {
+				recentModel.addElement(line);
+			}
+			statusR.setText(rows.status);
+		};
+
+		Runnable reload = () -> {
+			int filter = filterBox.getSelectedIndex();
+			loader.submit(() -> {
+				ScenarioStore s = store.join();
+				if (s == null) {
+					return new RecentRows(new ArrayList<>(), new ArrayList<>(), "Scenario history is not available.");
+				}
+				List<ScenarioStore.Entry> entries;
+				if (filter == 0) {
+					entries = s.recent(RECENT_LIMIT);
+				} else {
+					List<ScenarioStore.Entry> tagged = s.byTag(storeTag(Scenario.Kind.values()[filter - 1]));
+					entries = new ArrayList<>(tagged.subList(Math.max(0, tagged.size() - RECENT_LIMIT), tagged.size()));
+					java.util.Collections.reverse(entries);
+				}
+				List<String> lines = new ArrayList<>(entries.size());
+				for (ScenarioStore.Entry e : entries) {
+					lines.add(describeRun(e, s.read(e), null));
+				}
+				return new RecentRows(entries, lines,
+						String.format("%d of %d saved runs shown (%s)", entries.size(), s.size(), s.path()));
+			}, showRows);
+		};
+
+		rerunBtn.addActionListener(e -> {
+			List<ScenarioStore.Entry> entries = new ArrayList<>(shown);
+			loader.submit(() -> {
+				ScenarioStore s = store.join();
+				if (s == null) {
+					return new RecentRows(entries, new ArrayList<>(), "Scenario history is not available.");
+				}
+				List<ScenarioResult> replayed = s.replay(entries);
+				List<String> lines = new ArrayList<>(entries.size());
+				int changed = 0;
+				for (int i = 0; i < entries.size(); i++) {
+					ScenarioResult stored = s.read(entries.get(i));
+					if (!describeFigure(stored).equals(describeFigure(replayed.get(i)))) {
+						changed++;
+					}
+					lines.add(describeRun(entries.get(i), stored, replayed.get(i)));
+				}
+				return new RecentRows(entries, lines,
+						String.format("%d re-run, %d with a different result", entries.size(), changed));
+			}, showRows);
+		});
+
+		filterBox.addActionListener(e -> reload.run());
+
+		//Reloaded every time the page is shown, so the latest runs are always listed
+		recentPage.addComponentListener(new java.awt.event.ComponentAdapter() {
+			@Override
+			public void componentShown(java.awt.event.ComponentEvent e) {
+				reload.run();
+			}
+		});
 
-    	// 1) Find optimal spending via binary search
-    	double optimalSpend  = maximumExpensed(balance, rate, years);
+		backToMenuR.addActionListener(e -> showPage("Menu"));
 
-    	// 2) Build the balance history for the optimal spending
+		return recentPage;
+	}
 
-		List<Double> history = retirementHistory(balance, optimalSpend, rate, 120);
-		JFreeChart chart = buildOptimalWithdrawalChart(history, optimalSpend);
+	//One line of the Recent Scenarios list; 'replayed' is null until the run is re-run
+	private static String describeRun(ScenarioStore.Entry e, ScenarioResult stored, ScenarioResult replayed)
+	{
+		String line = String.format("%tF %<tR  %-9s %s = %s%s", e.getTime(), e.getTag(), stored.getScenario(),
+				describeFigure(stored), e.getPrecision().isExact() ? " (exact)" : "");
+		return replayed == null ? line : line + "  ->  " + describeFigure(replayed);
+	}
 
-    	// 3) Build the chart that matches the screenshot
-    	ChartPanel chartPanel = new ChartPanel(chart);
-    	chartPanel.setPreferredSize(new Dimension(700, 400));
-    	chartPanel.setMouseWheelEnabled(true);
-    	chartPanel.setDomainZoomable(true);
-    	chartPanel.setRangeZoomable(true);
+	private static String describeFigure(ScenarioResult r)
+	{
+		return r.getScenario().getKind() == Scenario.Kind.DEPLETE
+				? r.getYearsLasted() + " years"
+				: "$" + r.formatAmount();
+	}
 
-    	// 4) Update ONLY the scroll pane’s viewport (do not remove right panel or the finalYear label)
-    	    optimizeScrollPane.setViewportView(chartPanel);
-    	    optimizeScrollPane.revalidate();
-    	    optimizeScrollPane.repaint();
-    	 
-    	
-    });
-     
-		this.setVisible(true);	
-	
+	//Export button of a calculator page: streams the year-by-year balances of the result
+	//on screen (the session's latest) to .csv, .jsonl or .bin
+	private JButton exportButton(Component page, Scenario.Kind kind)
+	{
+		JButton exportBtn = new JButton("Export History");
+		exportBtn.setBackground(Color.DARK_GRAY);
+		exportBtn.setForeground(Color.white);
+		exportBtn.addActionListener(e -> {
+			ScenarioResult latest = session.latest(kind);
+			if (latest == null) {
+				JOptionPane.showMessageDialog(page, "Nothing to export yet. Click Calculate first.", "Warning", JOptionPane.WARNING_MESSAGE);
+				return;
+			}
+			JFileChooser chooser = new JFileChooser();
+			chooser.setDialogTitle("Export History (.csv, .jsonl or .bin)");
+			chooser.setSelectedFile(new java.io.File(storeTag(kind) + "-history.csv"));
+			if (chooser.showSaveDialog(page) != JFileChooser.APPROVE_OPTION) {
+				return;
+			}
+			java.nio.file.Path file = chooser.getSelectedFile().toPath();
+			try (HistoryExporter exporter = HistoryExporter.open(file, HistoryExporter.Format.forFileName(file.toString()))) {
+				ScenarioEngine.stream(latest.getScenario(), exporter.series(latest.getScenario().getId()));
+				JOptionPane.showMessageDialog(page, String.format("Exported %d years to %s", exporter.rowsWritten(), file),
+						"Export History", JOptionPane.INFORMATION_MESSAGE);
+			} catch (java.io.IOException | java.io.UncheckedIOException ex) {
+				JOptionPane.showMessageDialog(page, "Export failed: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+			}
+		});
+		return exportBtn;
 	}
-	//end Main() 
+
+	//Store tag of a calculator page
+	private static String storeTag(Scenario.Kind kind)
+	{
+		return kind.name().toLowerCase(java.util.Locale.ROOT);
+	}
+
+	//-Dris.store=none turns the history off (used by the startup measurements)
+	private static ScenarioStore openStore()
+	{
+		if ("none".equals(System.getProperty("ris.store"))) {
+			return null;
+		}
+		try {
+			return ScenarioStore.open(ScenarioStore.defaultPath());
+		} catch (java.io.IOException | RuntimeException ex) {
+			System.err.println("Scenario history disabled: " + ex.getMessage());
+			return null;
+		}
+	}
+
+	//Saves a Calculate click; inline once the store is open, otherwise when it opens
+	private void recordRun(ScenarioResult result, ScenarioEngine.Precision precision)
+	{
+		store.thenAccept(s -> {
+			if (s == null) {
+				return;
+			}
+			try {
+				s.append(STORE_CLIENT, storeTag(result.getScenario().getKind()), result, precision);
+			} catch (java.io.IOException | RuntimeException ex) {
+				System.err.println("Could not save scenario: " + ex.getMessage());
+			}
+		});
+	}
+
 	
 	
 	//This methods builds the fixed investor chart
 	public static JFreeChart buildFixedInvestmentChart(double principal, double rate, int years) {
-	    // Convert percentage to decimal if needed (e.g., 80 -> 0.80)
-	    if (rate >= 1.0) {
-	        rate = rate / 100.0;
-	    }
-
-	    DefaultCategoryDataset dataset = new DefaultCategoryDataset();
-	    double balance = principal;
-
-	    // Populate dataset by simulating growth per year
-	    for (int year = 1; year <= years; year++) {
-	        balance = fixedInvestor(balance, rate, 1); // assuming 1 year per step
-	        dataset.addValue(balance, "Investment Growth", String.valueOf(year));
-	    }
-
-	    // Create a category line chart
-	    JFreeChart chart = ChartFactory.createLineChart(
-	            "Investment Growth Over Time",
-	            "Year",
-	            "Balance ($)",
-	            dataset
-	    );
-
-	    // Optional: light styling and currency axis format
-	    CategoryPlot plot = chart.getCategoryPlot();
-	    plot.setBackgroundPaint(java.awt.Color.WHITE);
-	    plot.setDomainGridlinesVisible(true);
-	    plot.setDomainGridlinePaint(new java.awt.Color(210, 210, 210));
-	    plot.setRangeGridlinePaint(new java.awt.Color(210, 210, 210));
-
-	    // Currency formatting on the range (Y) axis
-	    org.jfree.chart.axis.NumberAxis rangeAxis = (org.jfree.chart.axis.NumberAxis) plot.getRangeAxis();
-	    rangeAxis.setNumberFormatOverride(NumberFormat.getCurrencyInstance(Locale.getDefault()));
-
-	    return chart; // <-- return JFreeChart
+	    return Charts.buildFixedInvestmentChart(principal, rate, years);
 	}
 	
 	//End of buildFixedInvestmentChart method
 	
 	//This methods builds variable investor chart
-	private ChartPanel buildVariableXYChartFromRates(double principal, double[] rateList) {
-	    XYSeries balanceSeries = new XYSeries("Balance");
-	    XYSeries zeroSeries = new XYSeries("Zero");
-
-	    double balance = principal;
-	    for (int i = 0; i < rateList.length; i++) {
-	        balance *= (1.0 + rateList[i]);
-	        int year = i + 1;
-	        balanceSeries.add(year, balance);
-	        zeroSeries.add(year, 0.0);
-	    }
-
-	    XYSeriesCollection dataset = new XYSeriesCollection();
-	    dataset.addSeries(balanceSeries);
-	    dataset.addSeries(zeroSeries);
-
-	    JFreeChart chart = ChartFactory.createXYLineChart(
-	        "Variable Rate Growth",
-	        "Years",
-	        "Account Balance ($)",
-	        dataset
-	    );
-
-	    XYPlot plot = chart.getXYPlot();
-
-	    NumberAxis rangeAxis = (NumberAxis) plot.getRangeAxis();
-	    rangeAxis.setNumberFormatOverride(java.text.NumberFormat.getCurrencyInstance());
-	    rangeAxis.setAutoRangeIncludesZero(false);
-
-	    NumberAxis domainAxis = (NumberAxis) plot.getDomainAxis();
-	    domainAxis.setStandardTickUnits(NumberAxis.createIntegerTickUnits());
-	    domainAxis.setLowerMargin(0.05);
-	    domainAxis.setUpperMargin(0.05);
-
-	    plot.setBackgroundPaint(Color.WHITE);
-	    plot.setDomainGridlinesVisible(true);
-	    plot.setRangeGridlinesVisible(true);
-	    plot.setDomainGridlinePaint(new Color(200, 200, 200));
-	    plot.setRangeGridlinePaint(new Color(200, 200, 200));
-
-	    XYLineAndShapeRenderer renderer = new XYLineAndShapeRenderer(true, true);
-	    renderer.setSeriesPaint(0, new Color(27, 94, 32)); // balance series dark green
-	    renderer.setSeriesStroke(0, new BasicStroke(2f));
-	    renderer.setSeriesShape(0, new Ellipse2D.Double(-4, -4, 8, 8));     // circle markers
-
-	    renderer.setSeriesPaint(1, new Color(198, 40, 40));                 // red
-	    renderer.setSeriesStroke(1, new BasicStroke(1.2f));
-	    renderer.setSeriesShapesVisible(1, false);
-
-	    plot.setRenderer(renderer);
-
+	private ChartPanel variableChartPanel(JFreeChart chart) {
 	    ChartPanel chartPanel = new ChartPanel(chart);
 	    chartPanel.setPreferredSize(new Dimension(700, 400)); // large -> scrollbars appear
 	    chartPanel.setMouseWheelEnabled(true);
@@ -1413,43 +1794,9 @@ calcuBtn.addActionListener(e -> {
 	    return chartPanel;
 	}
 	
-	//end of buildVariableXYChartFromRates method
+	//end of variableChartPanel method
 	
 //Helper functions of variable investor chart
-	private void highlightInvalidRows(JTable table, java.util.List<Integer> rows) {
-	    invalidRowSet.clear();
-	    invalidRowSet.addAll(rows);
-
-	    table.setDefaultRenderer(Object.class, new DefaultTableCellRenderer() {
-	        /**
-			 * 
-			 */
-			private static final long serialVersionUID = 1L;
-
-			@Override
-	        public Component getTableCellRendererComponent(JTable tbl, Object value, boolean isSelected,
-	                                                       boolean hasFocus, int row, int column) {
-	            Component c = super.getTableCellRendererComponent(tbl, value, isSelected, hasFocus, row, column);
-	            if (invalidRowSet.contains(row)) {
-	                c.setBackground(new Color(255, 235, 238)); // light red
-	            } else {
-	                c.setBackground(isSelected ? tbl.getSelectionBackground() : Color.WHITE);
-	            }
-	            return c;
-	        }
-	    });
-
-	    table.repaint();
-	}
-
-	private void clearHighlight(JTable table) {
-	    invalidRowSet.clear();
-	    // Reset renderer to default
-	    table.setDefaultRenderer(Object.class, new DefaultTableCellRenderer());
-	    table.repaint();
-	}
-	
-	
 	private void commitTableEdits(JTable table) {
 	    if (table.isEditing()) {
 	        TableCellEditor editor = table.getCellEditor();
@@ -1462,133 +1809,173 @@ calcuBtn.addActionListener(e -> {
 //This method builds retirement depletion chart
 
 public static JFreeChart buildDepletionJFreeChart(List<Double> balances) {
-    DefaultCategoryDataset dataset = new DefaultCategoryDataset();
-
-    // Populate dataset using the balances list
-    for (int i = 0; i < balances.size(); i++) {
-        int year = i + 1; // Year starts at 1
-        dataset.addValue(balances.get(i), "Investment Growth", String.valueOf(year));
-    }
-
-    // Create a category line chart
-    JFreeChart chart = ChartFactory.createLineChart(
-            "Investment Growth Over Time",
-            "Year",
-            "Balance ($)",
-            dataset
-    );
-
-    // Styling
-    CategoryPlot plot = chart.getCategoryPlot();
-    plot.setBackgroundPaint(java.awt.Color.WHITE);
-    plot.setDomainGridlinesVisible(true);
-    plot.setDomainGridlinePaint(new java.awt.Color(210, 210, 210));
-    plot.setRangeGridlinePaint(new java.awt.Color(210, 210, 210));
-
-    // Currency formatting on Y-axis
-    org.jfree.chart.axis.NumberAxis rangeAxis = (org.jfree.chart.axis.NumberAxis) plot.getRangeAxis();
-    rangeAxis.setNumberFormatOverride(NumberFormat.getCurrencyInstance(Locale.getDefault()));
-
-    return chart;
+    return Charts.buildDepletionJFreeChart(balances);
 }
 
 
 
 //helper function of retirement depletion chart
 public static List<Double> balanceSeries(double balance, double expense, double rate) {
-    List<Double> series = new ArrayList<>();
-    series.add(balance);               // Year 0 starting balance
-    int years = 0;
+    // Grow first, then subtract the expense (year-end withdrawal)
     int MAX_YEARS = 2000;              // safety cap for runaway scenarios
-
-    while (balance > 0 && years < MAX_YEARS) {
-        double interest = balance * rate;         // annual growth
-        balance = balance + interest - expense;   // net after expense
-        series.add(Math.max(balance, 0));         // clamp at 0 for last point
-        years++;
-    }
-    return series;
-}	
+    return RetirementKernel.simulate(balance, expense, rate, MAX_YEARS,
+            RetirementKernel.Timing.GROW_FIRST).toList();
+}
 
 
 //This method builds Optimal Withdrawal chart
 public static JFreeChart buildOptimalWithdrawalChart(List<Double> history, double optimalSpend) {
-    // Series: account balance each year (Year 0 .. Year N)
-    XYSeries balanceSeries = new XYSeries("Balance");
-    for (int year = 0; year < history.size(); year++) {
-        balanceSeries.add(year, history.get(year));
-    }
-
-    // Series: zero baseline across the same horizon
-    XYSeries zeroSeries = new XYSeries("Zero");
-    for (int year = 0; year < history.size(); year++) {
-        zeroSeries.add(year, 0.0);
-    }
-
-    XYSeriesCollection dataset = new XYSeriesCollection();
-    dataset.addSeries(balanceSeries);
-    dataset.addSeries(zeroSeries);
-
-    // Title with formatted withdrawal (locale-aware)
-    NumberFormat currency = NumberFormat.getCurrencyInstance(Locale.getDefault());
-    String title = String.format("AofA Financial Simulation: Optimal Withdrawal (%s/yr)",
-            currency.format(optimalSpend));
-
-    JFreeChart chart = ChartFactory.createXYLineChart(
-            title,
-            "Years",
-            "Account Balance ($)",
-            dataset
-    );
-
-    XYPlot plot = chart.getXYPlot();
-
-    // Renderer: series 0 (balance) as green line with circular markers
-    XYLineAndShapeRenderer renderer = new XYLineAndShapeRenderer(true, true);
-    renderer.setSeriesPaint(0, new Color(27, 94, 32));                  // dark green
-    renderer.setSeriesStroke(0, new java.awt.BasicStroke(2.0f));
-    renderer.setSeriesShape(0, new Ellipse2D.Double(-4, -4, 8, 8));     // circle markers
-
-    // Renderer: series 1 (zero baseline) as thin red line, no markers
-    renderer.setSeriesPaint(1, new Color(198, 40, 40));                 // red
-    renderer.setSeriesStroke(1, new java.awt.BasicStroke(1.5f));
-    renderer.setSeriesShapesVisible(1, false);
-
-    plot.setRenderer(renderer);
-
-    // Axis formatting: currency on Y
-    NumberAxis yAxis = (NumberAxis) plot.getRangeAxis();
-    yAxis.setNumberFormatOverride(currency);
-    yAxis.setAutoRangeIncludesZero(true);
-
-    // Visual polish
-    plot.setBackgroundPaint(Color.WHITE);
-    plot.setDomainGridlinePaint(new Color(210, 210, 210));
-    plot.setRangeGridlinePaint(new Color(210, 210, 210));
-    plot.setAxisOffset(new RectangleInsets(5, 5, 5, 5));
-
-    return chart;
+    return Charts.buildOptimalWithdrawalChart(history, optimalSpend);
 }
 
 //end of buildOptimalWithdrawalChart method
 
 //helper function of optimal withdrawal chart
 public static List<Double> retirementHistory(double balance, double annualExpense, double rate, int capYears) {
-    List<Double> history = new ArrayList<>();
-    history.add(balance); // Year 0
-    int years = 0;
-    double B = balance;
-    while (B > 0 && years < capYears) {
-        B -= annualExpense;          // withdraw first
-        if (B > 0) B *= (1 + rate);  // grow remaining
-        else B = 0;
-        history.add(B);
-        years++;
+    // Withdraw first, then grow the remainder (same convention as finallyRetired)
+    return RetirementKernel.simulate(balance, annualExpense, rate, capYears,
+            RetirementKernel.Timing.WITHDRAW_FIRST).toList();
+}
+
+
+
+//Page charts built from a result alone; no Swing involved, so live mode builds them off the EDT
+private static JFreeChart fixedChart(ScenarioResult result) {
+    Scenario request = result.getScenario();
+    return buildFixedInvestmentChart(request.getBalance(), request.getRate(), request.getYears());
+}
+
+private static JFreeChart variableChart(ScenarioResult result) {
+    return Charts.buildVariableChart(result.getScenario().getBalance(), result.getScenario().ratesView());
+}
+
+private static JFreeChart depletionChart(ScenarioResult result) {
+    return buildDepletionJFreeChart(result.getSimulation().toList());
+}
+
+private static JFreeChart optimalChart(ScenarioResult result) {
+    return buildOptimalWithdrawalChart(result.getSimulation().toList(), result.getValue());
+}
+
+
+//Live mode for one page: edits in the inputs are parsed quietly and, when they form a
+//valid request, recomputed off the EDT through liveScheduler; invalid input just drops
+//whatever was pending and leaves the last result on screen.
+//Returns the trigger so other inputs (e.g. a table) can feed it too
+private Runnable liveRecalculation(JCheckBox live, java.util.function.Supplier<Scenario> request,
+		java.util.function.Function<ScenarioResult, JFreeChart> chart,
+		java.util.function.BiConsumer<ScenarioResult, JFreeChart> show, JTextField... inputs)
+	{
+		return liveRecalculation(live, request, () -> ScenarioEngine.Precision.DOUBLE, chart, show, inputs);
+	}
+
+//As above, for a page with a precision selector
+private Runnable liveRecalculation(JCheckBox live, java.util.function.Supplier<Scenario> request,
+		java.util.function.Supplier<ScenarioEngine.Precision> precision,
+		java.util.function.Function<ScenarioResult, JFreeChart> chart,
+		java.util.function.BiConsumer<ScenarioResult, JFreeChart> show, JTextField... inputs)
+	{
+		Runnable recompute = () -> {
+			if (!live.isSelected()) {
+				return;
+			}
+			Scenario scenario;
+			try {
+				scenario = request.get();
+			} catch (IllegalArgumentException quiet) {
+				liveScheduler.cancel();
+				return;
+			}
+			ScenarioEngine.Precision mode = precision.get();
+			liveScheduler.submit(() -> {
+				ScenarioResult result = session.calculate(scenario, mode);
+				return new LiveResult(result, chart.apply(result));
+			}, update -> show.accept(update.result, update.chart));
+		};
+
+		javax.swing.event.DocumentListener onEdit = new javax.swing.event.DocumentListener() {
+			@Override
+			public void insertUpdate(javax.swing.event.DocumentEvent e) { recompute.run(); }
+			@Override
+			public void removeUpdate(javax.swing.event.DocumentEvent e) { recompute.run(); }
+			@Override
+			public void changedUpdate(javax.swing.event.DocumentEvent e) { recompute.run(); }
+		};
+		for (JTextField input : inputs) {
+			input.getDocument().addDocumentListener(onEdit);
+		}
+		live.addActionListener(e -> {
+			if (live.isSelected()) {
+				recompute.run();
+			} else {
+				liveScheduler.cancel();
+			}
+		});
+		return recompute;
+	}
+
+//Quiet parsers for live mode; NumberFormatException is an IllegalArgumentException
+private static double number(JTextField field) {
+    return Double.parseDouble(field.getText().trim());
+}
+
+private static int wholeNumber(JTextField field) {
+    return Integer.parseInt(field.getText().trim());
+}
+
+//Variable scenario read from the rate table in place; runs on the EDT, so the array cannot change meanwhile
+private static Scenario tableScenario(double principal, RateTableModel model) {
+    if (model.hasInvalidRows()) {
+        throw new IllegalArgumentException(model.describeInvalidRows(1));
+    }
+    return Scenario.variable("variable", principal, model.ratesView(), model.getRowCount());
+}
+
+//Lines of the Recent Scenarios page and the entries behind them, built off the EDT
+private static final class RecentRows {
+    final List<ScenarioStore.Entry> entries;
+    final List<String> lines;
+    final String status;
+
+    RecentRows(List<ScenarioStore.Entry> entries, List<String> lines, String status) {
+        this.entries = entries;
+        this.lines = lines;
+        this.status = status;
+    }
+}
+
+//Result and chart computed together off the EDT
+private static final class LiveResult {
+    final ScenarioResult result;
+    final JFreeChart chart;
+
+    LiveResult(ScenarioResult result, JFreeChart chart) {
+        this.result = result;
+        this.chart = chart;
     }
-    return history;
 }
 
 
+//Runs one immutable request through this window's session; a request the page
+//validation let through but Scenario rejects (e.g. NaN) is reported on the page
+private ScenarioResult runScenario(Component page, java.util.function.Supplier<Scenario> request)
+	{
+		return runScenario(page, request, ScenarioEngine.Precision.DOUBLE);
+	}
+
+private ScenarioResult runScenario(Component page, java.util.function.Supplier<Scenario> request,
+		ScenarioEngine.Precision precision)
+	{
+		try {
+			ScenarioResult result = session.calculate(request.get(), precision);
+			recordRun(result, precision);
+			return result;
+		} catch (IllegalArgumentException bad) {
+			JOptionPane.showMessageDialog(page, bad.getMessage(), "Warning", JOptionPane.WARNING_MESSAGE);
+			return null;
+		}
+	}
+
 
 //This allows components to be added to panel at a certain position
 public void addToGridBag(JPanel panel, Component component, GridBagConstraints gbc, int column, int row,  int colspan, int rowspan)
@@ -1621,9 +2008,9 @@ public void addToGridBag(JPanel panel, Component component, GridBagConstraints g
 	
 	public static void main(String[] args)
 	{
-		//Creates an anonymous object of MainWindow() 
-		//This method helps to run and load up the GUI
-		new MainWindow();
+		//Creates an anonymous object of MainWindow() on the Event Dispatch Thread
+		//Swing components must only be created and updated on the EDT
+		SwingUtilities.invokeLater(MainWindow::new);
 	}
 		
 
@@ -0,0 +1,214 @@
+package system;
+
+import java.util.stream.IntStream;
+
+/*
+Runs the calculators over many rate paths drawn from a RateModel.
+
+Generation is fused with the balance loop: each year's rate is drawn and
+applied straight away, so a path never exists as an array and memory is
+O(paths) for terminal balances, or O(horizon * k) when the years are folded
+into a FanChartAggregator, instead of O(paths * years). When every path's
+history is needed, depletionPaths() keeps them in an off-heap BalanceMatrix.
+
+Paths run in parallel on the common fork-join pool. Every worker thread
+keeps one Generator and one SplitMix64 and re-seeds them per path from
+SplitMix64.pathSeed(seed, path), so path i is the same on every run with the
+same seed, however the work happens to be split. (Fan chart percentiles come
+from mergeable sketches and may still move by a fraction of a percentile rank
+with the way the work is split; terminalBalances() is exact.)
+*/
+public final class MonteCarloEngine {
+
+	private final RateModel model;
+	private final long seed;
+	private final ThreadLocal<Worker> workers;
+
+	public MonteCarloEngine(RateModel model, long seed)
+	{
+		this.model = model;
+		this.seed = seed;
+		this.workers = ThreadLocal.withInitial(() -> new Worker(model.newGenerator()));
+	}
+
+
+	public RateModel model()
+	{
+		return model;
+	}
+
+	public long seed()
+	{
+		return seed;
+	}
+
+
+	public double[] terminalBalances(double principal, int years, int paths)
+	{
+		/*
+        variableInvestor over 'paths' generated rate paths.
+        Complexity: O(P * T) time, O(P) memory
+        Returns: (terminal balance per path)
+        */
+		requirePaths(paths);
+		double[] out = new double[paths];
+		try (EngineMonitor.Job job = EngineMonitor.shared().begin("Monte Carlo growth", paths, EngineMonitor.Counter.PATHS)) {
+			IntStream.range(0, paths).parallel().forEach(path -> {
+				out[path] = grow(path, principal, years, null);
+				job.advance(1);
+			});
+			job.complete(paths + " terminal balances");
+		}
+		return out;
+	}
+
+
+	public FanChartAggregator growthFan(double principal, int years, int paths, int k)
+	{
+		/*
+        Growth paths folded year by year into a fan chart.
+        Complexity: O(P * T) time, O(leaves * T * k) memory (see FanChartAggregator.aggregate)
+        Returns: (aggregator over years 0..T)
+        */
+		requirePaths(paths);
+		try (EngineMonitor.Job job = EngineMonitor.shared().begin("Growth fan", paths, EngineMonitor.Counter.PATHS)) {
+			FanChartAggregator fan = FanChartAggregator.aggregate(paths, years, k, (path, sink) -> {
+				grow(path, principal, years, sink);
+				job.advance(1);
+				return years;
+			});
+			job.complete(String.format("median %.2f at year %d", fan.percentile(years, 50), years));
+			return fan;
+		}
+	}
+
+
+	public FanChartAggregator depletionFan(double balance, double annualExpense, int horizon, int paths, int k)
+	{
+		/*
+        Withdraw-first depletion (as RetirementKernel, WITHDRAW_FIRST) over
+        generated paths; a depleted path stops drawing rates.
+        Complexity: O(P * H) time, O(leaves * H * k) memory (see FanChartAggregator.aggregate)
+        Returns: (aggregator with per-year balances and depletion years)
+        */
+		requirePaths(paths);
+		try (EngineMonitor.Job job = EngineMonitor.shared().begin("Depletion fan", paths, EngineMonitor.Counter.PATHS)) {
+			FanChartAggregator fan = FanChartAggregator.aggregate(paths, horizon, k, (path, sink) -> {
+				int lasted = deplete(path, balance, annualExpense, horizon, sink);
+				job.advance(1);
+				return lasted;
+			});
+			job.complete(String.format("%.1f%% lasted %d years", 100 * fan.successRate(), horizon));
+			return fan;
+		}
+	}
+
+
+	public BalanceMatrix depletionPaths(double balance, double annualExpense, int horizon, int paths)
+	{
+		/*
+        The depletionFan paths kept whole: row = path, column = year 0..H,
+        zeros after depletion, written in parallel straight into the
+        off-heap matrix. The caller owns (and closes) the matrix.
+        Complexity: O(P * H) time, 8 * P * (H + 1) bytes off-heap
+        Returns: (paths x (horizon + 1) matrix)
+        */
+		requirePaths(paths);
+		BalanceMatrix matrix = new BalanceMatrix(paths, horizon + 1);
+		try (EngineMonitor.Job job = EngineMonitor.shared().begin("Depletion paths", paths, EngineMonitor.Counter.PATHS)) {
+			IntStream.range(0, paths).parallel().forEach(path -> {
+				int lasted = deplete(path, balance, annualExpense, horizon, matrix.rowSink(path));
+				for (int year = lasted + 1; year <= horizon; year++) {
+					matrix.set(path, year, 0.0);
+				}
+				job.advance(1);
+			});
+			job.complete(String.format("%.1f MB of paths", matrix.sizeInBytes() / 1e6));
+		} catch (RuntimeException ex) {
+			matrix.close();
+			throw ex;
+		}
+		return matrix;
+	}
+
+
+	//Writes the first 'years' rates of path 'path' into out, e.g. to show one path in the rate table
+	public void ratePath(int path, int years, double[] out)
+	{
+		Worker w = workers.get();
+		w.start(path);
+		for (int i = 0; i < years; i++) {
+			out[i] = w.generator.nextRate(w.random);
+		}
+	}
+
+
+	//Balance after 'years' years of path 'path', streaming each year to sink when one is given
+	private double grow(int path, double principal, int years, YearSink sink)
+	{
+		Worker w = workers.get();
+		w.start(path);
+		RateModel.Generator g = w.generator;
+		SplitMix64 random = w.random;
+		double balance = principal;
+		if (sink != null) {
+			sink.accept(0, balance);
+		}
+		for (int i = 1; i <= years; i++) {
+			balance = balance * (1 + g.nextRate(random));
+			if (sink != null) {
+				sink.accept(i, balance);
+			}
+		}
+		return balance;
+	}
+
+	//Withdraw-first loop; returns the last year written
+	private int deplete(int path, double balance, double annualExpense, int horizon, YearSink sink)
+	{
+		Worker w = workers.get();
+		w.start(path);
+		RateModel.Generator g = w.generator;
+		SplitMix64 random = w.random;
+		double B = balance;
+		int year = 0;
+		sink.accept(0, B);
+		while (B > 0 && year < horizon) {
+			B -= annualExpense;
+			if (B <= 0) {
+				B = 0;
+			} else {
+				B = B * (1 + g.nextRate(random));
+			}
+			year++;
+			sink.accept(year, B);
+		}
+		return year;
+	}
+
+	private static void requirePaths(int paths)
+	{
+		if (paths <= 0) {
+			throw new IllegalArgumentException("Number of paths must be at least 1.");
+		}
+	}
+
+
+	//Per-thread generator state and random stream, re-seeded for every path
+	private final class Worker {
+
+		final RateModel.Generator generator;
+		final SplitMix64 random = new SplitMix64(0);
+
+		Worker(RateModel.Generator generator)
+		{
+			this.generator = generator;
+		}
+
+		void start(int path)
+		{
+			random.seed(SplitMix64.pathSeed(seed, path));
+			generator.startPath(random);
+		}
+	}
+}
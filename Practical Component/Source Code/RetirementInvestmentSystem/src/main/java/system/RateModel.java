@@ -0,0 +1,28 @@
+package system;
+
+/*
+A stochastic model of the yearly growth rate, used in place of a typed rate
+list when simulating many possible futures (see MonteCarloEngine and the
+factories in RateModels).
+
+The model itself is immutable and shared; all per-path state lives in a
+Generator, which a worker creates once and then restarts for every path it
+runs. Rates are decimals (0.05 = 5%) and never below -1 (a total loss).
+*/
+public interface RateModel {
+
+	//Mutable per-path state of a model; one per worker thread, not thread-safe
+	interface Generator {
+
+		//Restarts the state for a new path
+		void startPath(SplitMix64 random);
+
+		//Rate earned in the next year of the current path; must not allocate
+		double nextRate(SplitMix64 random);
+	}
+
+	Generator newGenerator();
+
+	//Short description with the parameters, for reports
+	String describe();
+}
@@ -0,0 +1,282 @@
+package system;
+
+import java.util.Locale;
+
+/*
+The stochastic rate models, all stepped once per year (dt = 1):
+
+  Vasicek   r' = theta + (r - theta) e^-kappa + sigma sqrt((1 - e^-2kappa) / 2kappa) Z
+            (exact transition of the mean-reverting Ornstein-Uhlenbeck process)
+  CIR       r' = r + kappa (theta - r+) + sigma sqrt(r+) Z,  rate = r'+
+            (full-truncation Euler, which keeps rates at or above zero)
+  Regime    a Markov chain over market regimes; each year first moves the
+            chain with the transition matrix, then draws mean + vol Z of
+            the new regime
+  GARCH     h' = omega + alpha e^2 + beta h,  e = sqrt(h) Z,  rate = mu + e
+            (GARCH(1,1): volatility clusters after large moves), starting
+            from the long-run variance omega / (1 - alpha - beta)
+
+Rates are decimals. Generators hold only primitives and arrays sized when
+they are created, so stepping a path never allocates. Anything below -100%
+is floored at -1 (the balance is wiped out, not turned negative).
+*/
+public final class RateModels {
+
+	private RateModels()
+	{
+	}
+
+
+	public static RateModel vasicek(double r0, double kappa, double theta, double sigma)
+	{
+		requireNonNegative(kappa, "kappa");
+		requireNonNegative(sigma, "sigma");
+		double decay = Math.exp(-kappa);
+		double sd = kappa > 0 ? sigma * Math.sqrt((1 - decay * decay) / (2 * kappa)) : sigma;
+		return new RateModel() {
+			@Override
+			public Generator newGenerator()
+			{
+				return new Generator() {
+					private double r;
+
+					@Override
+					public void startPath(SplitMix64 random)
+					{
+						r = r0;
+					}
+
+					@Override
+					public double nextRate(SplitMix64 random)
+					{
+						r = theta + (r - theta) * decay + sd * random.nextGaussian();
+						return Math.max(r, -1.0);
+					}
+				};
+			}
+
+			@Override
+			public String describe()
+			{
+				return String.format(Locale.ROOT, "vasicek(r0=%s, kappa=%s, theta=%s, sigma=%s)", r0, kappa, theta, sigma);
+			}
+		};
+	}
+
+
+	public static RateModel cir(double r0, double kappa, double theta, double sigma)
+	{
+		requireNonNegative(r0, "r0");
+		requireNonNegative(kappa, "kappa");
+		requireNonNegative(theta, "theta");
+		requireNonNegative(sigma, "sigma");
+		return new RateModel() {
+			@Override
+			public Generator newGenerator()
+			{
+				return new Generator() {
+					private double r;
+
+					@Override
+					public void startPath(SplitMix64 random)
+					{
+						r = r0;
+					}
+
+					@Override
+					public double nextRate(SplitMix64 random)
+					{
+						double positive = Math.max(r, 0.0);
+						r = r + kappa * (theta - positive) + sigma * Math.sqrt(positive) * random.nextGaussian();
+						return Math.max(r, 0.0);
+					}
+				};
+			}
+
+			@Override
+			public String describe()
+			{
+				return String.format(Locale.ROOT, "cir(r0=%s, kappa=%s, theta=%s, sigma=%s)", r0, kappa, theta, sigma);
+			}
+		};
+	}
+
+
+	//transition[i][j] = chance of moving from regime i to regime j in a year; rows must sum to 1
+	public static RateModel regimeSwitching(double[] means, double[] vols, double[][] transition, int startRegime)
+	{
+		int n = means.length;
+		if (n == 0 || vols.length != n || transition.length != n) {
+			throw new IllegalArgumentException("Every regime needs a mean, a volatility and a transition row.");
+		}
+		if (startRegime < 0 || startRegime >= n) {
+			throw new IllegalArgumentException("Start regime must be between 1 and " + n + ".");
+		}
+		// Rows as cumulative sums, flattened, so a step is one uniform and a short scan
+		double[] cumulative = new double[n * n];
+		for (int i = 0; i < n; i++) {
+			if (transition[i].length != n) {
+				throw new IllegalArgumentException("Transition matrix must be square.");
+			}
+			requireNonNegative(vols[i], "volatility");
+			double sum = 0;
+			for (int j = 0; j < n; j++) {
+				if (!(transition[i][j] >= 0)) {
+					throw new IllegalArgumentException("Transition probabilities cannot be negative.");
+				}
+				sum += transition[i][j];
+				cumulative[i * n + j] = sum;
+			}
+			if (Math.abs(sum - 1) > 1e-9) {
+				throw new IllegalArgumentException("Transition row " + (i + 1) + " must sum to 1.");
+			}
+			cumulative[i * n + n - 1] = 1.0;
+		}
+		double[] mu = means.clone();
+		double[] sd = vols.clone();
+		return new RateModel() {
+			@Override
+			public Generator newGenerator()
+			{
+				return new Generator() {
+					private int regime;
+
+					@Override
+					public void startPath(SplitMix64 random)
+					{
+						regime = startRegime;
+					}
+
+					@Override
+					public double nextRate(SplitMix64 random)
+					{
+						double u = random.nextDouble();
+						int row = regime * n;
+						int next = 0;
+						while (next < n - 1 && u >= cumulative[row + next]) {
+							next++;
+						}
+						regime = next;
+						return Math.max(mu[next] + sd[next] * random.nextGaussian(), -1.0);
+					}
+				};
+			}
+
+			@Override
+			public String describe()
+			{
+				return "regime(" + n + " regimes, start " + (startRegime + 1) + ")";
+			}
+		};
+	}
+
+
+	public static RateModel garch(double mu, double omega, double alpha, double beta)
+	{
+		if (!(omega > 0)) {
+			throw new IllegalArgumentException("GARCH omega must be positive.");
+		}
+		requireNonNegative(alpha, "alpha");
+		requireNonNegative(beta, "beta");
+		if (alpha + beta >= 1) {
+			throw new IllegalArgumentException("GARCH alpha + beta must be below 1.");
+		}
+		double longRunVariance = omega / (1 - alpha - beta);
+		return new RateModel() {
+			@Override
+			public Generator newGenerator()
+			{
+				return new Generator() {
+					private double variance;
+					private double shock;
+
+					@Override
+					public void startPath(SplitMix64 random)
+					{
+						variance = longRunVariance;
+						shock = 0;
+					}
+
+					@Override
+					public double nextRate(SplitMix64 random)
+					{
+						variance = omega + alpha * shock * shock + beta * variance;
+						shock = Math.sqrt(variance) * random.nextGaussian();
+						return Math.max(mu + shock, -1.0);
+					}
+				};
+			}
+
+			@Override
+			public String describe()
+			{
+				return String.format(Locale.ROOT, "garch(mu=%s, omega=%s, alpha=%s, beta=%s)", mu, omega, alpha, beta);
+			}
+		};
+	}
+
+
+	/*
+	Parses "name" or "name:p1,p2,..." (decimal parameters) for the command line:
+	  vasicek[:r0,kappa,theta,sigma]                default 0.05,0.3,0.05,0.02
+	  cir[:r0,kappa,theta,sigma]                    default 0.05,0.3,0.05,0.1
+	  regime[:mean1,vol1,stay1,mean2,vol2,stay2]    default 0.10,0.12,0.9,-0.05,0.25,0.7  (starts in 1)
+	  garch[:mu,omega,alpha,beta]                   default 0.06,0.0008,0.1,0.85
+	*/
+	public static RateModel parse(String spec)
+	{
+		int colon = spec.indexOf(':');
+		String name = (colon < 0 ? spec : spec.substring(0, colon)).trim().toLowerCase(Locale.ROOT);
+		double[] p = colon < 0 ? null : numbers(spec.substring(colon + 1));
+		switch (name) {
+		case "vasicek":
+			p = orDefault(p, 4, 0.05, 0.3, 0.05, 0.02);
+			return vasicek(p[0], p[1], p[2], p[3]);
+		case "cir":
+			p = orDefault(p, 4, 0.05, 0.3, 0.05, 0.1);
+			return cir(p[0], p[1], p[2], p[3]);
+		case "regime":
+			p = orDefault(p, 6, 0.10, 0.12, 0.9, -0.05, 0.25, 0.7);
+			return regimeSwitching(new double[] { p[0], p[3] }, new double[] { p[1], p[4] },
+					new double[][] { { p[2], 1 - p[2] }, { 1 - p[5], p[5] } }, 0);
+		case "garch":
+			p = orDefault(p, 4, 0.06, 0.0008, 0.1, 0.85);
+			return garch(p[0], p[1], p[2], p[3]);
+		default:
+			throw new IllegalArgumentException("Rate model must be vasicek, cir, regime or garch.");
+		}
+	}
+
+
+	private static double[] numbers(String list)
+	{
+		String[] tokens = list.split(",");
+		double[] out = new double[tokens.length];
+		try {
+			for (int i = 0; i < tokens.length; i++) {
+				out[i] = Double.parseDouble(tokens[i].trim());
+			}
+		} catch (NumberFormatException nf) {
+			throw new IllegalArgumentException("Rate model parameters must be numbers.");
+		}
+		return out;
+	}
+
+	private static double[] orDefault(double[] given, int count, double... defaults)
+	{
+		if (given == null) {
+			return defaults;
+		}
+		if (given.length != count) {
+			throw new IllegalArgumentException("This rate model takes " + count + " parameters.");
+		}
+		return given;
+	}
+
+	private static void requireNonNegative(double value, String name)
+	{
+		if (!(value >= 0) || Double.isInfinite(value)) {
+			throw new IllegalArgumentException("Rate model " + name + " must be a non-negative number.");
+		}
+	}
+}
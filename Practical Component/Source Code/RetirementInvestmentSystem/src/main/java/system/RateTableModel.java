@@ -0,0 +1,412 @@
+package system;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.swing.JComponent;
+import javax.swing.JTable;
+import javax.swing.TransferHandler;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+
+/*
+Year / Rate table of the Variable Growth page, backed by a growable double[]
+(capacity doubles, rows beyond getRowCount() are spare).
+
+Every edit is parsed once, when it is made: a good value lands in the array,
+a bad one sets the row's bit in 'invalid' and its text is kept so the cell
+still shows what was typed. Validation is therefore always up to date, and
+Calculate only has to look at the BitSet instead of re-reading and
+re-parsing every cell. Rates are stored as typed (5 = 5%); Scenario.variable
+does the percentage conversion like every other page, reading the array
+through ratesView() without an intermediate copy.
+
+Bulk changes fire one rows-updated and/or rows-inserted event for the
+affected range, so JTable only re-lays out what changed.
+*/
+public final class RateTableModel extends AbstractTableModel {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String[] COLUMNS = { "Year", "Rate (%)" };
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private double[] rates = new double[INITIAL_CAPACITY];
+	private int size;
+	private final BitSet invalid = new BitSet();
+	// Text of the invalid cells only, keyed by row
+	private final Map<Integer, String> invalidText = new HashMap<>();
+
+
+	//Replaces the table with 'years' rows of 0.00; events cover only the rows that existed or exist now
+	public void reset(int years)
+	{
+		int oldSize = size;
+		if (years > rates.length) {
+			rates = new double[Math.max(years, INITIAL_CAPACITY)];
+		} else {
+			Arrays.fill(rates, 0, years, 0.0);
+		}
+		size = years;
+		invalid.clear();
+		invalidText.clear();
+		if (years < oldSize) {
+			fireTableRowsDeleted(years, oldSize - 1);
+		}
+		if (years > 0) {
+			fireRangeChanged(0, years - 1, Math.min(oldSize, years));
+		}
+	}
+
+	/*
+	Bulk paste: one rate per line starting at 'firstRow'; on tab / comma /
+	semicolon separated lines (spreadsheet copies of Year + Rate) the last cell
+	is the rate. The table grows to fit. Fires one event per kind of change
+	(updated rows, appended rows). Returns the number of rates pasted.
+	*/
+	public int paste(int firstRow, String text)
+	{
+		// First pass only counts non-blank lines so the array is resized once
+		int count = 0;
+		for (int start = 0; start < text.length(); start = lineEnd(text, start) + 1) {
+			if (!isBlank(text, start, lineEnd(text, start))) {
+				count++;
+			}
+		}
+		if (count == 0) {
+			return 0;
+		}
+
+		int first = Math.max(0, Math.min(firstRow, size));
+		int oldSize = size;
+		growTo(first + count);
+
+		int row = first;
+		for (int start = 0; start < text.length(); ) {
+			int end = lineEnd(text, start);
+			if (!isBlank(text, start, end)) {
+				store(row++, lastCell(text, start, end));
+			}
+			start = end + 1;
+		}
+		fireRangeChanged(first, first + count - 1, oldSize);
+		return count;
+	}
+
+	//Bulk set from numbers (e.g. an imported rate path); grows the table as needed
+	public void setRates(int firstRow, double[] values, int offset, int length)
+	{
+		if (length <= 0) {
+			return;
+		}
+		int first = Math.max(0, Math.min(firstRow, size));
+		int oldSize = size;
+		growTo(first + length);
+		for (int i = 0; i < length; i++) {
+			store(first + i, values[offset + i]);
+		}
+		fireRangeChanged(first, first + length - 1, oldSize);
+	}
+
+
+	public boolean hasInvalidRows()
+	{
+		return !invalid.isEmpty();
+	}
+
+	public boolean isInvalid(int row)
+	{
+		return invalid.get(row);
+	}
+
+	public int invalidCount()
+	{
+		return invalid.cardinality();
+	}
+
+	//One line per invalid row, at most 'limit' lines, in the page's message style
+	public String describeInvalidRows(int limit)
+	{
+		StringBuilder sb = new StringBuilder();
+		int shown = 0;
+		for (int row = invalid.nextSetBit(0); row >= 0; row = invalid.nextSetBit(row + 1)) {
+			if (shown == limit) {
+				sb.append(String.format("... and %d more.%n", invalid.cardinality() - shown));
+				break;
+			}
+			sb.append(problem(row)).append(System.lineSeparator());
+			shown++;
+		}
+		return sb.toString();
+	}
+
+	//Copy of the rates as typed; only meaningful when there are no invalid rows
+	public double[] rates()
+	{
+		return Arrays.copyOf(rates, size);
+	}
+
+	//The live backing array, valid for indexes [0, getRowCount()); callers must not modify or keep it
+	double[] ratesView()
+	{
+		return rates;
+	}
+
+
+	@Override
+	public int getRowCount()
+	{
+		return size;
+	}
+
+	@Override
+	public int getColumnCount()
+	{
+		return COLUMNS.length;
+	}
+
+	@Override
+	public String getColumnName(int column)
+	{
+		return COLUMNS[column];
+	}
+
+	@Override
+	public Class<?> getColumnClass(int column)
+	{
+		// Rates are edited as text so bad input reaches setValueAt and gets flagged
+		return Object.class;
+	}
+
+	@Override
+	public boolean isCellEditable(int row, int column)
+	{
+		return column == 1;
+	}
+
+	@Override
+	public Object getValueAt(int row, int column)
+	{
+		if (column == 0) {
+			return row + 1;
+		}
+		return invalid.get(row) ? invalidText.get(row) : (Object) rates[row];
+	}
+
+	@Override
+	public void setValueAt(Object value, int row, int column)
+	{
+		if (column != 1) {
+			return;
+		}
+		if (value instanceof Number) {
+			store(row, ((Number) value).doubleValue());
+		} else {
+			store(row, value == null ? "" : value.toString().trim());
+		}
+		fireTableCellUpdated(row, column);
+	}
+
+
+	//Makes 'rows' rows available, doubling the capacity when it runs out; new rows are 0.00
+	private void growTo(int rows)
+	{
+		if (rows <= size) {
+			return;
+		}
+		if (rows > rates.length) {
+			rates = Arrays.copyOf(rates, Math.max(rows, 2 * rates.length));
+		}
+		Arrays.fill(rates, size, rows, 0.0);
+		size = rows;
+	}
+
+	//Rows [first, last] changed; those at or past oldSize are new
+	private void fireRangeChanged(int first, int last, int oldSize)
+	{
+		if (first < oldSize) {
+			fireTableRowsUpdated(first, Math.min(last, oldSize - 1));
+		}
+		if (last >= oldSize) {
+			fireTableRowsInserted(Math.max(first, oldSize), last);
+		}
+	}
+
+	//Index of the '\n' or '\r' ending the line that starts at 'start' (or text.length())
+	private static int lineEnd(String text, int start)
+	{
+		int i = start;
+		while (i < text.length() && text.charAt(i) != '\n' && text.charAt(i) != '\r') {
+			i++;
+		}
+		return i;
+	}
+
+	private static boolean isBlank(String text, int start, int end)
+	{
+		for (int i = start; i < end; i++) {
+			if (!Character.isWhitespace(text.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//Last non-empty tab / comma / semicolon separated cell of text[start, end), trimmed
+	private static String lastCell(String text, int start, int end)
+	{
+		int cellEnd = end;
+		while (cellEnd > start) {
+			int cellStart = cellEnd;
+			while (cellStart > start && !isSeparator(text.charAt(cellStart - 1))) {
+				cellStart--;
+			}
+			String cell = text.substring(cellStart, cellEnd).trim();
+			if (!cell.isEmpty()) {
+				return cell;
+			}
+			cellEnd = cellStart - 1;
+		}
+		return "";
+	}
+
+	private static boolean isSeparator(char c)
+	{
+		return c == '\t' || c == ',' || c == ';';
+	}
+
+	//Parses one cell; accepts a trailing '%'
+	private void store(int row, String text)
+	{
+		String number = text.endsWith("%") ? text.substring(0, text.length() - 1).trim() : text;
+		try {
+			store(row, Double.parseDouble(number));
+			if (invalid.get(row)) {
+				invalidText.put(row, text);
+			}
+		} catch (NumberFormatException nf) {
+			invalid.set(row);
+			invalidText.put(row, text);
+		}
+	}
+
+	private void store(int row, double value)
+	{
+		if (value >= 0.0 && value <= Scenario.MAX_RATE) {
+			rates[row] = value;
+			invalid.clear(row);
+			invalidText.remove(row);
+		} else {
+			invalid.set(row);
+			invalidText.put(row, String.valueOf(value));
+		}
+	}
+
+	private String problem(int row)
+	{
+		String text = invalidText.get(row);
+		if (text == null || text.isEmpty()) {
+			return String.format("Row %d: Rate is empty.", row + 1);
+		}
+		String number = text.endsWith("%") ? text.substring(0, text.length() - 1).trim() : text;
+		try {
+			double value = Double.parseDouble(number);
+			if (Double.isNaN(value) || Double.isInfinite(value)) {
+				return String.format("Row %d: Rate must be a finite number.", row + 1);
+			}
+			return String.format("Row %d: Rate %.2f out of range [0, 1000].", row + 1, value);
+		} catch (NumberFormatException nf) {
+			return String.format("Row %d: Rate '%s' is not numeric.", row + 1, text);
+		}
+	}
+
+
+	/*
+	The table's only renderer: paints rows whose bit is set in the model light
+	red. Installed once, so validation never swaps renderers or repaints more
+	than the rows that changed.
+	*/
+	public static final class InvalidRowRenderer extends DefaultTableCellRenderer {
+
+		private static final long serialVersionUID = 1L;
+		private static final Color INVALID = new Color(255, 235, 238); // light red
+
+		@Override
+		public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+				boolean hasFocus, int row, int column)
+		{
+			Component c = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+			RateTableModel model = (RateTableModel) table.getModel();
+			if (model.isInvalid(table.convertRowIndexToModel(row))) {
+				c.setBackground(INVALID);
+			} else {
+				c.setBackground(isSelected ? table.getSelectionBackground() : table.getBackground());
+			}
+			return c;
+		}
+	}
+
+	/*
+	Routes clipboard text pasted onto the table into paste(), starting at the
+	selected row. Copying is left to the table's original handler.
+	*/
+	public static final class PasteHandler extends TransferHandler {
+
+		private static final long serialVersionUID = 1L;
+		private final TransferHandler copyHandler;
+
+		public PasteHandler(TransferHandler copyHandler)
+		{
+			this.copyHandler = copyHandler;
+		}
+
+		@Override
+		public boolean canImport(TransferSupport support)
+		{
+			return support.isDataFlavorSupported(DataFlavor.stringFlavor);
+		}
+
+		@Override
+		public boolean importData(TransferSupport support)
+		{
+			if (!canImport(support) || !(support.getComponent() instanceof JTable)) {
+				return false;
+			}
+			JTable table = (JTable) support.getComponent();
+			String text;
+			try {
+				text = (String) support.getTransferable().getTransferData(DataFlavor.stringFlavor);
+			} catch (UnsupportedFlavorException | IOException ex) {
+				return false;
+			}
+			if (table.isEditing()) {
+				table.getCellEditor().cancelCellEditing();
+			}
+			int row = Math.max(table.getSelectedRow(), 0);
+			return ((RateTableModel) table.getModel()).paste(table.convertRowIndexToModel(row), text) > 0;
+		}
+
+		@Override
+		public int getSourceActions(JComponent c)
+		{
+			return copyHandler == null ? NONE : copyHandler.getSourceActions(c);
+		}
+
+		@Override
+		public void exportToClipboard(JComponent comp, Clipboard clip, int action)
+		{
+			if (copyHandler != null) {
+				copyHandler.exportToClipboard(comp, clip, action);
+			}
+		}
+	}
+}
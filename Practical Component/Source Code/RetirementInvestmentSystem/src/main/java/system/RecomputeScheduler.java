@@ -0,0 +1,121 @@
+package system;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
+
+/*
+Debounced, coalescing background recomputation for the live calculator mode.
+
+Every keystroke calls submit() with the work for the inputs as they are now.
+Each call bumps a generation number and pushes the start back by the quiet
+period, so a burst of typing collapses into one computation for the last
+input. The work runs on a single background thread; its result is handed to
+the EDT only if no newer input arrived meanwhile, so a slow run can never
+overwrite the display with numbers the user has already typed past.
+
+submit() and cancel() are meant to be called from the EDT.
+*/
+public final class RecomputeScheduler implements AutoCloseable {
+
+	//Quiet period after the last keystroke before the recomputation starts
+	public static final long DEFAULT_DELAY_MILLIS = 120;
+
+	private final long delayMillis;
+	private final AtomicLong generation = new AtomicLong();
+	private final AtomicLong computed = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private ScheduledExecutorService executor;
+	private ScheduledFuture<?> pending;
+
+	public RecomputeScheduler()
+	{
+		this(DEFAULT_DELAY_MILLIS);
+	}
+
+	public RecomputeScheduler(long delayMillis)
+	{
+		this.delayMillis = delayMillis;
+	}
+
+
+	//Replaces any queued work; publish runs on the EDT with the result of the latest submission only
+	public <R> void submit(Callable<R> work, Consumer<R> publish)
+	{
+		long mine = generation.incrementAndGet();
+		if (pending != null && pending.cancel(false)) {
+			dropped.incrementAndGet();
+		}
+		pending = executor().schedule(() -> {
+			if (generation.get() != mine) {
+				return;
+			}
+			R result;
+			try {
+				result = work.call();
+			} catch (Exception ex) {
+				// Live mode stays silent; the Calculate button reports problems
+				return;
+			}
+			computed.incrementAndGet();
+			SwingUtilities.invokeLater(() -> {
+				if (generation.get() == mine) {
+					publish.accept(result);
+				} else {
+					dropped.incrementAndGet();
+				}
+			});
+		}, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	//Drops queued work and any result still on its way to the EDT
+	public void cancel()
+	{
+		generation.incrementAndGet();
+		if (pending != null && pending.cancel(false)) {
+			dropped.incrementAndGet();
+		}
+		pending = null;
+	}
+
+	public long computedCount()
+	{
+		return computed.get();
+	}
+
+	//Submissions superseded before their result was shown
+	public long droppedCount()
+	{
+		return dropped.get();
+	}
+
+	@Override
+	public void close()
+	{
+		cancel();
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	//Started on first use so windows that never go live create no thread
+	private ScheduledExecutorService executor()
+	{
+		if (executor == null) {
+			ScheduledThreadPoolExecutor ex = new ScheduledThreadPoolExecutor(1, r -> {
+				Thread t = new Thread(r, "live-recompute");
+				t.setDaemon(true);
+				return t;
+			});
+			ex.setRemoveOnCancelPolicy(true);
+			executor = ex;
+		}
+		return executor;
+	}
+}
@@ -0,0 +1,416 @@
+package system;
+
+import java.util.function.LongPredicate;
+
+/*
+Shared withdrawal simulation kernel.
+
+Every calculator that draws money out of a balance (Retirement Depletion,
+Optimize Withdrawal and their charts) runs through the single loop below, so
+the depletion year, the terminal balance and the chart history are always
+produced by the same traversal and under the same timing convention.
+*/
+public final class RetirementKernel {
+
+	//When the annual withdrawal happens relative to the year's growth
+	public enum Timing
+	{
+		WITHDRAW_FIRST,   // withdraw at the start of the year, then grow the remainder
+		GROW_FIRST,       // grow for the full year, then withdraw at the end
+		MID_YEAR          // grow half a year, withdraw, grow the other half
+	}
+
+	//Depletion horizon used by the calculators: no retirement lasts longer than this
+	public static final int LIFETIME_CAP_YEARS = 120;
+
+	private static final int INITIAL_HISTORY = 128;
+
+	private RetirementKernel()
+	{
+	}
+
+
+	public static double fixedInvestor(double principal, double rate, int years)
+	{
+		/*
+        Simulates compound interest with a fixed rate.
+        Complexity: O(T) - Linear Time
+        Returns: (balance)
+        */
+		double balance = principal;
+		for (int i = 1; i <= years; i++)
+		{
+			balance = balance * (1 + rate);
+		}
+		return balance;
+	}
+
+
+	public static double variableInvestor(double principal, double[] rate_list)
+	{
+		return variableInvestor(principal, rate_list, rate_list.length);
+	}
+
+
+	public static double variableInvestor(double principal, double[] rate_list, int count)
+	{
+		/*
+	    Simulates growth based on the first 'count' rates of the list, so a
+	    growable buffer can be read in place.
+	    Complexity: O(N) - Linear Time based on list size
+	    Returns: (balance)
+	    */
+		double balance = principal;
+		for (int i = 0; i < count; i++)
+		{
+			balance = balance * (1 + rate_list[i]);
+		}
+		return balance;
+	}
+
+
+	public static double fixedInvestor(double principal, double rate, int years, YearSink sink)
+	{
+		/*
+        Same compound growth, streaming every year's balance (Year 0 first)
+        into the sink.
+        Complexity: O(T) - Linear Time
+        Returns: (balance)
+        */
+		double balance = principal;
+		sink.accept(0, balance);
+		for (int i = 1; i <= years; i++)
+		{
+			balance = balance * (1 + rate);
+			sink.accept(i, balance);
+		}
+		return balance;
+	}
+
+
+	public static double variableInvestor(double principal, double[] rate_list, int count, YearSink sink)
+	{
+		/*
+	    Variable-rate growth streaming every year's balance into the sink.
+	    Complexity: O(N) - Linear Time based on list size
+	    Returns: (balance)
+	    */
+		double balance = principal;
+		sink.accept(0, balance);
+		for (int i = 0; i < count; i++)
+		{
+			balance = balance * (1 + rate_list[i]);
+			sink.accept(i + 1, balance);
+		}
+		return balance;
+	}
+
+
+	public static double maximumExpensed(double balance, double rate, int targetYears)
+	{
+		/* OPTIMIZATION ALGORITHM: Warm-started Binary Search.
+        Finds the largest whole-cent withdrawal that lasts 'target_years'.
+
+        Why this works: The relationship between Withdrawal Amount and Years Lasted
+        is Monotonic (Decreasing). Instead of halving [0, balance] some 30 times,
+        the search starts at the closed form and steps away from it by 1, 2,
+        4 ... cents until the answer is bracketed, then bisects only that
+        bracket. The closed form is the supremum here, so the search only
+        confirms the cent below it: about two simulations for any input, which
+        is why callers pass no previous answer as a starting point.
+
+        Complexity: O(T) - a few simulations
+
+        Returns: (withdrawal, whole cents)
+        */
+		double guess = closedFormMaximum(balance, rate, 0.0, targetYears, LIFETIME_CAP_YEARS);
+		return searchCents(balance, guess,
+				cents -> yearsLasted(balance, cents / 100.0, rate, LIFETIME_CAP_YEARS, Timing.WITHDRAW_FIRST) >= targetYears);
+	}
+
+
+	public static int yearsLasted(double balance, double annualExpense, double rate, int capYears, Timing timing)
+	{
+		/*
+        Counts how many withdrawals the balance can fund, without recording history.
+        Complexity: O(T) - Linear Time, no allocation
+        Returns: (years_lasted)
+        */
+		double growth = 1 + rate;
+		double halfGrowth = Math.sqrt(growth);
+		double B = balance;
+		int years = 0;
+
+		while (B > 0 && years < capYears) {
+			B = stepYear(B, annualExpense, growth, halfGrowth, timing);
+			years++;
+		}
+		return years;
+	}
+
+
+	public static SimulationResult simulate(double balance, double annualExpense, double rate, int capYears, Timing timing)
+	{
+		/*
+        Single pass producing the depletion year, terminal balance and the
+        year-by-year history (Year 0 = starting balance) together.
+        Complexity: O(T) - Linear Time
+        Returns: (years_lasted, terminal_balance, history)
+        */
+		double growth = 1 + rate;
+		double halfGrowth = Math.sqrt(growth);
+		double[] history = new double[Math.min(Math.max(capYears, 0), INITIAL_HISTORY) + 1];
+		double B = balance;
+		int years = 0;
+		history[0] = B;
+
+		while (B > 0 && years < capYears) {
+			B = stepYear(B, annualExpense, growth, halfGrowth, timing);
+			years++;
+
+			if (years == history.length) {
+				history = java.util.Arrays.copyOf(history, (int) Math.min((long) capYears + 1, 2L * history.length));
+			}
+			history[years] = B;
+		}
+
+		return new SimulationResult(years, B, history);
+	}
+
+
+	public static int simulate(double balance, double annualExpense, double rate, int capYears, Timing timing, YearSink sink)
+	{
+		/*
+        Same single pass as simulate(), streaming each year's balance into
+        the sink instead of an in-memory history.
+        Complexity: O(T) - Linear Time
+        Returns: (years_lasted)
+        */
+		double growth = 1 + rate;
+		double halfGrowth = Math.sqrt(growth);
+		double B = balance;
+		int years = 0;
+		sink.accept(0, B);
+
+		while (B > 0 && years < capYears) {
+			B = stepYear(B, annualExpense, growth, halfGrowth, timing);
+			years++;
+			sink.accept(years, B);
+		}
+		return years;
+	}
+
+
+	public static int yearsLasted(double balance, WithdrawalSchedule schedule, double rate, int capYears, Timing timing)
+	{
+		/*
+        Schedule-aware depletion count. Expense inflation, step-downs and the
+        glide path are advanced with running cursors, so no per-year objects.
+        Complexity: O(T + K) - K = number of schedule change points
+        Returns: (years_lasted)
+        */
+		return runSchedule(balance, schedule, schedule.getBaseExpense(), rate, capYears, timing, null);
+	}
+
+
+	public static SimulationResult simulate(double balance, WithdrawalSchedule schedule, double rate, int capYears, Timing timing)
+	{
+		/*
+        Schedule-aware single pass recording the history.
+        Complexity: O(T + K)
+        Returns: (years_lasted, terminal_balance, history)
+        */
+		double[][] history = { new double[Math.min(Math.max(capYears, 0), INITIAL_HISTORY) + 1] };
+		int years = runSchedule(balance, schedule, schedule.getBaseExpense(), rate, capYears, timing, history);
+		return new SimulationResult(years, history[0][years], history[0]);
+	}
+
+
+	public static double maximumExpensed(double balance, WithdrawalSchedule schedule, double rate, int targetYears,
+			int capYears, Timing timing)
+	{
+		/*
+        Largest whole-cent first-year withdrawal that still lasts
+        'targetYears' under the schedule's shape, by the same warm-started
+        search as the constant-withdrawal maximumExpensed, from the closed
+        form of the schedule's inflation. For an inflation-indexed,
+        withdraw-first schedule the closed form is the supremum itself, so the
+        search only confirms the cent below it (two runs); step-downs, glide
+        paths and other timings only move the answer, and the search corrects
+        for them.
+        Complexity: O(T log E) - E = error of the closed form in cents
+        Returns: (first_year_withdrawal, whole cents)
+        */
+		double firstFactor = schedule.stepFactorAt(1);
+		double high = firstFactor > 0 ? balance / firstFactor : balance;
+		double guess = closedFormMaximum(balance, rate, schedule.getInflation(), targetYears, capYears)
+				/ (firstFactor > 0 ? firstFactor : 1);
+		return searchCents(high, guess,
+				cents -> runSchedule(balance, schedule, cents / 100.0, rate, capYears, timing, null) >= targetYears);
+	}
+
+
+	public static double closedFormMaximum(double balance, double rate, double inflation, int targetYears, int capYears)
+	{
+		/*
+        Withdraw-first with e_k = e * (1+g)^(k-1): the balance still positive
+        before withdrawal T means
+            B0 > e * sum_{j=0}^{T-2} q^j,   q = (1+g) / (1+r)
+        so the supremum e = B0 / S with S the geometric series. The bisection
+        converges to this same value from below (within its 1 cent epsilon).
+        Complexity: O(1)
+        Returns: (first_year_withdrawal)
+        */
+		if (balance <= 0 || targetYears > capYears) {
+			return 0.0;
+		}
+		if (targetYears <= 1) {
+			return balance;
+		}
+
+		int n = targetYears - 1;
+		double q = (1 + inflation) / (1 + rate);
+		double series;
+		if (Math.abs(q - 1) < 1e-12) {
+			series = n;
+		} else {
+			// (1 - q^n) / (1 - q), written with expm1/log1p to stay accurate for q near 1
+			series = Math.expm1(n * Math.log(q)) / (q - 1);
+		}
+		return Math.min(balance, balance / series);
+	}
+
+
+	/*
+	Largest whole number of cents in [0, max] for which 'lasts' holds, searched
+	outward from 'guess' (dollars) with doubling steps and then bisected.
+	'lasts' must be monotone (true up to the answer, false above it); zero
+	counts as lasting without being run.
+	*/
+	private static double searchCents(double max, double guess, LongPredicate lasts)
+	{
+		// The nudge keeps e.g. 71079.05 * 100 = 7107904.999... on its own cent
+		long top = (long) Math.floor(max * 100 * (1 + 1e-15));
+		if (!(top > 0)) {
+			return 0.0;
+		}
+		long g = Double.isNaN(guess) || Double.isInfinite(guess)
+				? top / 2
+				: Math.max(0, Math.min(top, (long) Math.floor(guess * 100)));
+
+		// Invariant once both are set: 'low' lasts (or is 0), 'high' does not (or is top + 1)
+		long low;
+		long high;
+		long step = 1;
+		if (g == 0 || lasts.test(g)) {
+			low = g;
+			while (true) {
+				long probe = low + step;
+				if (probe > top) {
+					high = top + 1;
+					break;
+				}
+				if (!lasts.test(probe)) {
+					high = probe;
+					break;
+				}
+				low = probe;
+				step *= 2;
+			}
+		} else {
+			high = g;
+			while (true) {
+				long probe = high - step;
+				if (probe <= 0) {
+					low = 0;
+					break;
+				}
+				if (lasts.test(probe)) {
+					low = probe;
+					break;
+				}
+				high = probe;
+				step *= 2;
+			}
+		}
+
+		while (high - low > 1) {
+			long mid = low + (high - low) / 2;
+			if (lasts.test(mid)) {
+				low = mid;
+			} else {
+				high = mid;
+			}
+		}
+		return low / 100.0;
+	}
+
+	//Shared schedule loop; history[0] is grown in place when recording is requested
+	private static int runSchedule(double balance, WithdrawalSchedule schedule, double baseExpense, double rate,
+			int capYears, Timing timing, double[][] history)
+	{
+		int[] stepYears = schedule.stepYears();
+		double[] stepFactors = schedule.stepFactors();
+		int[] glideYears = schedule.glideYears();
+		double[] glideRates = schedule.glideRates();
+		double inflate = 1 + schedule.getInflation();
+
+		double growth = 1 + rate;
+		double halfGrowth = Math.sqrt(growth);
+		double expense = baseExpense;
+		double factor = 1.0;
+		int si = 0;
+		int gi = 0;
+
+		double B = balance;
+		int years = 0;
+		if (history != null) {
+			history[0][0] = B;
+		}
+
+		while (B > 0 && years < capYears) {
+			int year = years + 1;
+			while (si < stepYears.length && stepYears[si] <= year) {
+				factor = stepFactors[si++];
+			}
+			if (gi < glideYears.length && glideYears[gi] <= year) {
+				while (gi < glideYears.length && glideYears[gi] <= year) {
+					growth = 1 + glideRates[gi++];
+				}
+				halfGrowth = Math.sqrt(growth);
+			}
+
+			B = stepYear(B, expense * factor, growth, halfGrowth, timing);
+			expense *= inflate;
+			years++;
+
+			if (history != null) {
+				double[] h = history[0];
+				if (years == h.length) {
+					h = java.util.Arrays.copyOf(h, (int) Math.min((long) capYears + 1, 2L * h.length));
+					history[0] = h;
+				}
+				h[years] = B;
+			}
+		}
+		return years;
+	}
+
+
+	//Advances one year under the given timing convention, flooring the balance at zero
+	static double stepYear(double B, double expense, double growth, double halfGrowth, Timing timing)
+	{
+		switch (timing) {
+		case GROW_FIRST:
+			B = B * growth - expense;
+			return B > 0 ? B : 0;
+		case MID_YEAR:
+			B = B * halfGrowth - expense;
+			return B > 0 ? B * halfGrowth : 0;
+		case WITHDRAW_FIRST:
+		default:
+			B -= expense;
+			return B > 0 ? B * growth : 0;
+		}
+	}
+}
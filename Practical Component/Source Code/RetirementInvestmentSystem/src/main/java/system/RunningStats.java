@@ -0,0 +1,83 @@
+package system;
+
+/*
+Online count / mean / variance / min / max (Welford), mergeable with Chan's
+parallel formula so per-worker accumulators can be combined at the end.
+*/
+public final class RunningStats {
+
+	private long count;
+	private double mean;
+	private double m2;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	public void add(double value)
+	{
+		count++;
+		double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * (value - mean);
+		if (value < min) min = value;
+		if (value > max) max = value;
+	}
+
+	public void merge(RunningStats other)
+	{
+		if (other.count == 0) {
+			return;
+		}
+		if (count == 0) {
+			count = other.count;
+			mean = other.mean;
+			m2 = other.m2;
+			min = other.min;
+			max = other.max;
+			return;
+		}
+		long n = count + other.count;
+		double delta = other.mean - mean;
+		mean += delta * other.count / n;
+		m2 += other.m2 + delta * delta * ((double) count * other.count / n);
+		count = n;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	public long count()
+	{
+		return count;
+	}
+
+	public double mean()
+	{
+		return count == 0 ? Double.NaN : mean;
+	}
+
+	//Sample variance (n - 1 denominator)
+	public double variance()
+	{
+		return count < 2 ? 0.0 : m2 / (count - 1);
+	}
+
+	public double stdDev()
+	{
+		return Math.sqrt(variance());
+	}
+
+	public double min()
+	{
+		return min;
+	}
+
+	public double max()
+	{
+		return max;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("n=%d mean=%.2f sd=%.2f min=%.2f max=%.2f", count, mean(), stdDev(), min, max);
+	}
+}
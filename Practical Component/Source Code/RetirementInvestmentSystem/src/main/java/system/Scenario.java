@@ -0,0 +1,278 @@
+package system;
+
+import java.util.Arrays;
+
+/*
+Immutable input of one calculator run.
+
+Rates are accepted the way the calculator fields accept them: a value of 1 or
+more is a percentage (5 -> 0.05), anything below 1 is already a decimal. The
+same range checks as the GUI apply, so a scenario that builds here would also
+have passed the page's validation.
+*/
+public final class Scenario {
+
+	public enum Kind
+	{
+		GROWTH,     // Fixed Growth: principal, rate, years
+		VARIABLE,   // Variable Growth: principal, one rate per year
+		DEPLETE,    // Retirement Depletion: balance, expense, rate
+		OPTIMIZE    // Optimize Withdrawal: balance, rate, target years
+	}
+
+	public static final double MAX_RATE = 1000;
+	public static final int MAX_YEARS = 1000;
+
+	private final Kind kind;
+	private final String id;
+	private final double balance;
+	private final double rate;
+	private final int years;
+	private final double expense;
+	private final double[] rates;
+
+	private Scenario(Kind kind, String id, double balance, double rate, int years, double expense, double[] rates)
+	{
+		this.kind = kind;
+		this.id = id;
+		this.balance = balance;
+		this.rate = rate;
+		this.years = years;
+		this.expense = expense;
+		this.rates = rates;
+	}
+
+	public static Scenario growth(String id, double principal, double rate, int years)
+	{
+		positive(principal, "Initial Investment");
+		return new Scenario(Kind.GROWTH, id, principal, checkRate(rate), checkYears(years, "Years"), 0, null);
+	}
+
+	public static Scenario variable(String id, double principal, double[] rates)
+	{
+		return variable(id, principal, rates, rates.length);
+	}
+
+	//Uses the first 'count' entries of 'rates' (e.g. a table's backing array); they are converted into a private copy
+	public static Scenario variable(String id, double principal, double[] rates, int count)
+	{
+		if (principal < 0 || Double.isNaN(principal)) {
+			throw new IllegalArgumentException("Please enter a valid, non-negative Initial Investment.");
+		}
+		if (count <= 0) {
+			throw new IllegalArgumentException("No rates found.");
+		}
+		checkYears(count, "Years");
+		double[] decimal = new double[count];
+		for (int i = 0; i < count; i++) {
+			double r = rates[i];
+			if (!(r >= 0.0 && r <= MAX_RATE)) {
+				throw new IllegalArgumentException(String.format("Row %d: Rate %s out of range [0, 1000].", i + 1, r));
+			}
+			decimal[i] = r >= 1 ? r / 100.0 : r;
+		}
+		return new Scenario(Kind.VARIABLE, id, principal, 0, count, 0, decimal);
+	}
+
+	public static Scenario deplete(String id, double balance, double expense, double rate)
+	{
+		positive(balance, "Initial Investment");
+		double decimal = checkRate(rate);
+		positive(expense, "Expense");
+		if (expense > balance) {
+			throw new IllegalArgumentException("Expense cannot be higher than balance.");
+		}
+		return new Scenario(Kind.DEPLETE, id, balance, decimal, RetirementKernel.LIFETIME_CAP_YEARS, expense, null);
+	}
+
+	public static Scenario optimize(String id, double balance, double rate, int targetYears)
+	{
+		positive(balance, "Investment");
+		return new Scenario(Kind.OPTIMIZE, id, balance, checkRate(rate), checkYears(targetYears, "Target Years"), 0, null);
+	}
+
+
+	//Rebuilds a scenario from stored fields that were validated when it was first made (rates already decimal)
+	static Scenario restore(Kind kind, String id, double balance, double rate, int years, double expense, double[] rates)
+	{
+		return new Scenario(kind, id, balance, rate, years, expense, rates);
+	}
+
+
+	//Parses "[id] v1 v2 ..." (comma or whitespace separated); a non-numeric first token is the id
+	public static Scenario parse(Kind kind, String line, String defaultId)
+	{
+		String[] tokens = line.trim().split("[,;\\s]+");
+		int first = 0;
+		String id = defaultId;
+		if (tokens.length > 0 && !isNumber(tokens[0])) {
+			id = tokens[0];
+			first = 1;
+		}
+		int count = tokens.length - first;
+		double[] v = new double[Math.max(count, 0)];
+		for (int i = 0; i < count; i++) {
+			try {
+				v[i] = Double.parseDouble(tokens[first + i]);
+			} catch (NumberFormatException nf) {
+				throw new IllegalArgumentException("Invalid datatype. '" + tokens[first + i] + "' is not a number.");
+			}
+		}
+
+		switch (kind) {
+		case GROWTH:
+			expect(kind, v, 3, "principal rate years");
+			return growth(id, v[0], v[1], wholeYears(v[2]));
+		case VARIABLE:
+			if (v.length < 2) {
+				throw new IllegalArgumentException("variable expects: principal rate1 [rate2 ...]");
+			}
+			return variable(id, v[0], Arrays.copyOfRange(v, 1, v.length));
+		case DEPLETE:
+			expect(kind, v, 3, "balance expense rate");
+			return deplete(id, v[0], v[1], v[2]);
+		case OPTIMIZE:
+		default:
+			expect(kind, v, 3, "balance rate target_years");
+			return optimize(id, v[0], v[1], wholeYears(v[2]));
+		}
+	}
+
+
+	public Kind getKind()
+	{
+		return kind;
+	}
+
+	public String getId()
+	{
+		return id;
+	}
+
+	public double getBalance()
+	{
+		return balance;
+	}
+
+	//Decimal rate (0.05 for 5%)
+	public double getRate()
+	{
+		return rate;
+	}
+
+	public int getYears()
+	{
+		return years;
+	}
+
+	public double getExpense()
+	{
+		return expense;
+	}
+
+	//Decimal per-year rates of a VARIABLE scenario (copy)
+	public double[] getRates()
+	{
+		return rates == null ? null : rates.clone();
+	}
+
+	//Read-only access for the engine without copying
+	double[] ratesView()
+	{
+		return rates;
+	}
+
+	//Hash of the calculator inputs only (the id is a label and does not change the result)
+	public int inputHash()
+	{
+		int h = kind.hashCode();
+		h = 31 * h + Double.hashCode(balance);
+		h = 31 * h + Double.hashCode(rate);
+		h = 31 * h + years;
+		h = 31 * h + Double.hashCode(expense);
+		return 31 * h + Arrays.hashCode(rates);
+	}
+
+	//True when both scenarios would produce the same result
+	public boolean sameInputs(Scenario other)
+	{
+		return kind == other.kind
+				&& Double.compare(balance, other.balance) == 0
+				&& Double.compare(rate, other.rate) == 0
+				&& years == other.years
+				&& Double.compare(expense, other.expense) == 0
+				&& Arrays.equals(rates, other.rates);
+	}
+
+	@Override
+	public String toString()
+	{
+		switch (kind) {
+		case GROWTH:
+			return String.format("%s growth %.2f @ %.4f for %d years", id, balance, rate, years);
+		case VARIABLE:
+			return String.format("%s variable %.2f over %d rates", id, balance, rates.length);
+		case DEPLETE:
+			return String.format("%s deplete %.2f spending %.2f @ %.4f", id, balance, expense, rate);
+		case OPTIMIZE:
+		default:
+			return String.format("%s optimize %.2f @ %.4f for %d years", id, balance, rate, years);
+		}
+	}
+
+
+	private static void positive(double value, String field)
+	{
+		if (!(value > 0) || Double.isInfinite(value)) {
+			throw new IllegalArgumentException(field + " must be a postive number (numbers greater than 0)");
+		}
+	}
+
+	//Same rules as the rate fields: (0, 1000], whole numbers are percentages
+	private static double checkRate(double rate)
+	{
+		if (!(rate > 0)) {
+			throw new IllegalArgumentException("Rate must be a postive number (numbers greater than 0)");
+		}
+		if (rate > MAX_RATE) {
+			throw new IllegalArgumentException("Rate is too large. Please use 1000 or less.");
+		}
+		return rate >= 1 ? rate / 100.0 : rate;
+	}
+
+	private static int checkYears(int years, String field)
+	{
+		if (years <= 0) {
+			throw new IllegalArgumentException(field + " must be a postive number (numbers greater than 0)");
+		}
+		if (years > MAX_YEARS) {
+			throw new IllegalArgumentException(field + " is too large. Please use 1000 or less.");
+		}
+		return years;
+	}
+
+	private static int wholeYears(double value)
+	{
+		if (value != Math.rint(value)) {
+			throw new IllegalArgumentException("Years must be a whole number.");
+		}
+		return (int) Math.max(Math.min(value, Integer.MAX_VALUE), Integer.MIN_VALUE);
+	}
+
+	private static void expect(Kind kind, double[] v, int n, String shape)
+	{
+		if (v.length != n) {
+			throw new IllegalArgumentException(kind.name().toLowerCase() + " expects: " + shape);
+		}
+	}
+
+	private static boolean isNumber(String token)
+	{
+		try {
+			Double.parseDouble(token);
+			return true;
+		} catch (NumberFormatException nf) {
+			return false;
+		}
+	}
+}
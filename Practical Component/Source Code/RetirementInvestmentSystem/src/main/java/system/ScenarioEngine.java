@@ -0,0 +1,167 @@
+package system;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/*
+Evaluates Scenario objects with the shared kernels. Stateless and free of any
+Swing or JFreeChart reference, so it is safe to call from the headless modes
+and from any number of threads at once.
+*/
+public final class ScenarioEngine {
+
+	//Money arithmetic of a run: the double kernels, or whole cents rounded once a year (CentsKernel)
+	public enum Precision
+	{
+		DOUBLE(null),
+		CENTS_HALF_EVEN(RoundingMode.HALF_EVEN),   // banker's rounding
+		CENTS_HALF_UP(RoundingMode.HALF_UP),
+		CENTS_DOWN(RoundingMode.DOWN);             // truncate, never credits a fraction of a cent
+
+		private final RoundingMode rounding;
+
+		Precision(RoundingMode rounding)
+		{
+			this.rounding = rounding;
+		}
+
+		public boolean isExact()
+		{
+			return rounding != null;
+		}
+
+		//Null for DOUBLE
+		public RoundingMode rounding()
+		{
+			return rounding;
+		}
+	}
+
+	private ScenarioEngine()
+	{
+	}
+
+	public static ScenarioResult evaluate(Scenario s)
+	{
+		return evaluate(s, false);
+	}
+
+	public static ScenarioResult evaluate(Scenario s, boolean withHistory, Precision precision)
+	{
+		return precision.isExact() ? evaluateExact(s, withHistory, precision.rounding()) : evaluate(s, withHistory);
+	}
+
+	public static ScenarioResult evaluate(Scenario s, boolean withHistory)
+	{
+		switch (s.getKind()) {
+		case GROWTH:
+			return new ScenarioResult(s, RetirementKernel.fixedInvestor(s.getBalance(), s.getRate(), s.getYears()), 0, 0, null);
+
+		case VARIABLE:
+			return new ScenarioResult(s, RetirementKernel.variableInvestor(s.getBalance(), s.ratesView()), 0, 0, null);
+
+		case DEPLETE: {
+			if (withHistory) {
+				SimulationResult sim = RetirementKernel.simulate(s.getBalance(), s.getExpense(), s.getRate(),
+						RetirementKernel.LIFETIME_CAP_YEARS, RetirementKernel.Timing.WITHDRAW_FIRST);
+				return new ScenarioResult(s, sim.getYearsLasted(), sim.getYearsLasted(), sim.getTerminalBalance(), sim);
+			}
+			// Terminal balance needs the loop anyway; the history array is skipped
+			double[] last = new double[1];
+			int years = RetirementKernel.simulate(s.getBalance(), s.getExpense(), s.getRate(),
+					RetirementKernel.LIFETIME_CAP_YEARS, RetirementKernel.Timing.WITHDRAW_FIRST,
+					(year, balance) -> last[0] = balance);
+			return new ScenarioResult(s, years, years, last[0], null);
+		}
+
+		case OPTIMIZE:
+		default: {
+			double withdrawal = RetirementKernel.maximumExpensed(s.getBalance(), s.getRate(), s.getYears());
+			SimulationResult sim = withHistory
+					? RetirementKernel.simulate(s.getBalance(), withdrawal, s.getRate(),
+							RetirementKernel.LIFETIME_CAP_YEARS, RetirementKernel.Timing.WITHDRAW_FIRST)
+					: null;
+			return new ScenarioResult(s, withdrawal, 0, 0, sim);
+		}
+		}
+	}
+
+	//Runs the page's per-year loop once, streaming Year 0..N into the sink; the result carries no history
+	public static ScenarioResult stream(Scenario s, YearSink sink)
+	{
+		switch (s.getKind()) {
+		case GROWTH:
+			return new ScenarioResult(s, RetirementKernel.fixedInvestor(s.getBalance(), s.getRate(), s.getYears(), sink),
+					0, 0, null);
+
+		case VARIABLE: {
+			double[] rates = s.ratesView();
+			return new ScenarioResult(s, RetirementKernel.variableInvestor(s.getBalance(), rates, rates.length, sink),
+					0, 0, null);
+		}
+
+		case DEPLETE: {
+			double[] last = new double[1];
+			int years = RetirementKernel.simulate(s.getBalance(), s.getExpense(), s.getRate(),
+					RetirementKernel.LIFETIME_CAP_YEARS, RetirementKernel.Timing.WITHDRAW_FIRST,
+					(year, balance) -> {
+						last[0] = balance;
+						sink.accept(year, balance);
+					});
+			return new ScenarioResult(s, years, years, last[0], null);
+		}
+
+		case OPTIMIZE:
+		default: {
+			double withdrawal = RetirementKernel.maximumExpensed(s.getBalance(), s.getRate(), s.getYears());
+			RetirementKernel.simulate(s.getBalance(), withdrawal, s.getRate(),
+					RetirementKernel.LIFETIME_CAP_YEARS, RetirementKernel.Timing.WITHDRAW_FIRST, sink);
+			return new ScenarioResult(s, withdrawal, 0, 0, null);
+		}
+		}
+	}
+
+	//Same calculators in exact cents; the result carries the exact figure next to its double value
+	private static ScenarioResult evaluateExact(Scenario s, boolean withHistory, RoundingMode rounding)
+	{
+		long balance = CentsKernel.toCents(s.getBalance());
+		switch (s.getKind()) {
+		case GROWTH: {
+			BigDecimal end = CentsKernel.fixedInvestor(balance, s.getRate(), s.getYears(), rounding);
+			return new ScenarioResult(s, end.doubleValue(), 0, 0, null, end);
+		}
+
+		case VARIABLE: {
+			double[] rates = s.ratesView();
+			BigDecimal end = CentsKernel.variableInvestor(balance, rates, rates.length, rounding);
+			return new ScenarioResult(s, end.doubleValue(), 0, 0, null, end);
+		}
+
+		case DEPLETE: {
+			long expense = CentsKernel.toCents(s.getExpense());
+			BigDecimal[] terminal = new BigDecimal[1];
+			SimulationResult sim = null;
+			int years;
+			if (withHistory) {
+				sim = CentsKernel.simulate(balance, expense, s.getRate(), RetirementKernel.LIFETIME_CAP_YEARS, rounding, terminal);
+				years = sim.getYearsLasted();
+			} else {
+				years = CentsKernel.yearsLasted(balance, expense, s.getRate(), RetirementKernel.LIFETIME_CAP_YEARS, rounding,
+						terminal);
+			}
+			return new ScenarioResult(s, years, years, terminal[0].doubleValue(), sim, terminal[0]);
+		}
+
+		case OPTIMIZE:
+		default: {
+			long cents = CentsKernel.maximumExpensed(balance, s.getRate(), s.getYears(),
+					RetirementKernel.LIFETIME_CAP_YEARS, rounding);
+			BigDecimal withdrawal = BigDecimal.valueOf(cents, 2);
+			SimulationResult sim = withHistory
+					? CentsKernel.simulate(balance, cents, s.getRate(), RetirementKernel.LIFETIME_CAP_YEARS, rounding, null)
+					: null;
+			return new ScenarioResult(s, withdrawal.doubleValue(), 0, 0, sim, withdrawal);
+		}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package system;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+
+/*
+Immutable outcome of evaluating one Scenario.
+
+value is the headline number of the page: the ending balance for the growth
+calculators and the annual withdrawal for Optimize Withdrawal. Depletion runs
+also carry the years lasted and terminal balance. The year-by-year simulation
+is only attached when it was requested (for charts).
+
+Runs in an exact precision also keep the page's money figure as whole cents
+(exactAmount): the ending balance, the annual withdrawal, or for depletion
+runs the terminal balance. The CSV then prints that figure verbatim.
+*/
+public final class ScenarioResult {
+
+	private final Scenario scenario;
+	private final double value;
+	private final int yearsLasted;
+	private final double terminalBalance;
+	private final SimulationResult simulation;
+	private final BigDecimal exactAmount;
+
+	ScenarioResult(Scenario scenario, double value, int yearsLasted, double terminalBalance, SimulationResult simulation)
+	{
+		this(scenario, value, yearsLasted, terminalBalance, simulation, null);
+	}
+
+	ScenarioResult(Scenario scenario, double value, int yearsLasted, double terminalBalance, SimulationResult simulation,
+			BigDecimal exactAmount)
+	{
+		this.scenario = scenario;
+		this.value = value;
+		this.yearsLasted = yearsLasted;
+		this.terminalBalance = terminalBalance;
+		this.simulation = simulation;
+		this.exactAmount = exactAmount;
+	}
+
+	public Scenario getScenario()
+	{
+		return scenario;
+	}
+
+	public double getValue()
+	{
+		return value;
+	}
+
+	public int getYearsLasted()
+	{
+		return yearsLasted;
+	}
+
+	public double getTerminalBalance()
+	{
+		return terminalBalance;
+	}
+
+	//Null unless the scenario was evaluated with history
+	public SimulationResult getSimulation()
+	{
+		return simulation;
+	}
+
+	//Exact cents of the money figure, or null when evaluated with doubles
+	public BigDecimal getExactAmount()
+	{
+		return exactAmount;
+	}
+
+	//The money figure as shown on the pages: exact cents when known, else the double to 2 places
+	public String formatAmount()
+	{
+		double amount = scenario.getKind() == Scenario.Kind.DEPLETE ? terminalBalance : value;
+		return exactAmount != null ? exactAmount.toPlainString() : String.format(Locale.ROOT, "%.2f", amount);
+	}
+
+	public static String csvHeader(Scenario.Kind kind)
+	{
+		switch (kind) {
+		case DEPLETE:
+			return "id,years_lasted,terminal_balance";
+		case OPTIMIZE:
+			return "id,annual_withdrawal";
+		case GROWTH:
+		case VARIABLE:
+		default:
+			return "id,ending_balance";
+		}
+	}
+
+	public String toCsv()
+	{
+		switch (scenario.getKind()) {
+		case DEPLETE:
+			return String.format(Locale.ROOT, "%s,%d,%s", scenario.getId(), yearsLasted, formatAmount());
+		case GROWTH:
+		case VARIABLE:
+		case OPTIMIZE:
+		default:
+			return scenario.getId() + "," + formatAmount();
+		}
+	}
+}
@@ -0,0 +1,525 @@
+package system;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/*
+Local, embedded store of calculator runs: an append-only log file plus an
+in-memory index by client, tag and time.
+
+Every record holds one run's inputs (the Scenario), its precision and its
+result, and ends in a CRC32. Opening the store maps the existing log read-only
+and walks the record headers only, so the index of a large log is built
+without decoding a single scenario; records are decoded from the mapping when
+read. A torn or corrupt tail (e.g. power loss mid-append) ends the scan and is
+cut off, so the next append starts on a clean boundary.
+
+Several processes may share one log (two windows, or a window and a
+--headless --store run). The open-time repair and every append hold an
+exclusive FileChannel lock on the file; under it an append first indexes the
+records other processes have added since (catchUp), cuts a torn tail, and only
+then writes at the end of the file. The queries also catch up first, without
+the lock: a record still being written fails its length or CRC check and is
+picked up on a later call. Within one JVM the file lock is not re-entrant, so
+stores on the same file also share one monitor per path (LOCKS).
+
+Appends are written with one positional write; reads and replay may run on
+any number of threads.
+
+Record layout (big-endian), after the 8-byte file header:
+  int length of the rest of the record
+  long time, byte kind, byte precision, str client, str tag, str id
+  double balance, double rate, int years, double expense, int n, n x double rate
+  double value, int years lasted, double terminal, str exact amount ("" = none)
+  int CRC32 of everything from time up to here
+where str is an unsigned short byte count followed by UTF-8.
+*/
+public final class ScenarioStore implements AutoCloseable {
+
+	private static final int MAGIC = 0x52495331;   // "RIS1"
+	private static final int VERSION = 1;
+	private static final int FILE_HEADER = 8;
+	// time + kind + precision + three empty strings + crc
+	private static final int MIN_RECORD = 8 + 1 + 1 + 3 * 2 + 4;
+
+	// One monitor per log file in this JVM, taken before the file lock (which would throw if held twice)
+	private static final Map<Path, Object> LOCKS = new ConcurrentHashMap<>();
+
+	//One stored run as kept in the index; the full record is decoded by read()
+	public static final class Entry {
+
+		private final long offset;
+		private final int length;
+		private final long time;
+		private final Scenario.Kind kind;
+		private final ScenarioEngine.Precision precision;
+		private final String client;
+		private final String tag;
+
+		Entry(long offset, int length, long time, Scenario.Kind kind, ScenarioEngine.Precision precision,
+				String client, String tag)
+		{
+			this.offset = offset;
+			this.length = length;
+			this.time = time;
+			this.kind = kind;
+			this.precision = precision;
+			this.client = client;
+			this.tag = tag;
+		}
+
+		//Append time in epoch milliseconds; never decreases along the log
+		public long getTime()
+		{
+			return time;
+		}
+
+		public Scenario.Kind getKind()
+		{
+			return kind;
+		}
+
+		public ScenarioEngine.Precision getPrecision()
+		{
+			return precision;
+		}
+
+		public String getClient()
+		{
+			return client;
+		}
+
+		public String getTag()
+		{
+			return tag;
+		}
+	}
+
+	private final Path path;
+	private final FileChannel channel;
+	private final Object fileMonitor;
+	// The log as it was at open; records appended later are read from the channel
+	private final MappedByteBuffer mapped;
+	private final long mappedLimit;
+	private final long droppedBytes;
+
+	private final List<Entry> entries = new ArrayList<>();
+	private final Map<String, List<Entry>> byClient = new HashMap<>();
+	private final Map<String, List<Entry>> byTag = new HashMap<>();
+	// One String instance per distinct client / tag, however many records name it
+	private final Map<String, String> names = new HashMap<>();
+	// End of the last indexed record, by this process or another
+	private long end;
+	private long lastTime;
+
+
+	private ScenarioStore(Path path, FileChannel channel, Object fileMonitor) throws IOException
+	{
+		this.path = path;
+		this.channel = channel;
+		this.fileMonitor = fileMonitor;
+
+		long size = channel.size();
+		if (size == 0) {
+			ByteBuffer header = ByteBuffer.allocate(FILE_HEADER).putInt(MAGIC).putInt(VERSION);
+			header.flip();
+			writeFully(header, 0);
+			size = FILE_HEADER;
+		}
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException(path + ": scenario log larger than 2 GB");
+		}
+		this.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		if (size < FILE_HEADER || mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+			throw new IOException(path + " is not a scenario log");
+		}
+
+		long valid = scan(mapped, 0, FILE_HEADER, size);
+		this.droppedBytes = size - valid;
+		if (droppedBytes > 0) {
+			try {
+				channel.truncate(valid);
+			} catch (IOException mappedOnThisPlatform) {
+				// The next append cuts the bad tail under its lock before writing
+			}
+		}
+		this.mappedLimit = valid;
+		this.end = valid;
+	}
+
+	public static ScenarioStore open(Path path) throws IOException
+	{
+		Path parent = path.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			Object monitor = LOCKS.computeIfAbsent(path.toRealPath(), k -> new Object());
+			// The header write and the tail repair must not race another process's append
+			synchronized (monitor) {
+				FileLock lock = channel.lock();
+				try {
+					return new ScenarioStore(path, channel, monitor);
+				} finally {
+					lock.release();
+				}
+			}
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	//~/.retirement-investment/scenarios.log, or -Dris.store=PATH
+	public static Path defaultPath()
+	{
+		String configured = System.getProperty("ris.store");
+		if (configured != null && !configured.isEmpty()) {
+			return Paths.get(configured);
+		}
+		return Paths.get(System.getProperty("user.home"), ".retirement-investment", "scenarios.log");
+	}
+
+
+	//Appends one run; the returned entry is already in the index
+	public synchronized Entry append(String client, String tag, ScenarioResult result,
+			ScenarioEngine.Precision precision) throws IOException
+	{
+		Scenario s = result.getScenario();
+		byte[] clientBytes = utf8(client, "Client");
+		byte[] tagBytes = utf8(tag, "Tag");
+		byte[] idBytes = utf8(s.getId(), "Scenario id");
+		BigDecimal exact = result.getExactAmount();
+		byte[] exactBytes = exact == null ? new byte[0] : exact.toPlainString().getBytes(StandardCharsets.US_ASCII);
+		double[] rates = s.ratesView();
+		int rateCount = rates == null ? 0 : rates.length;
+
+		int body = 8 + 1 + 1 + 2 + clientBytes.length + 2 + tagBytes.length + 2 + idBytes.length
+				+ 8 + 8 + 4 + 8 + 4 + 8 * rateCount
+				+ 8 + 4 + 8 + 2 + exactBytes.length
+				+ 4;
+
+		synchronized (fileMonitor) {
+			FileLock lock = channel.lock();
+			try {
+				// Index what other processes appended, and cut a tail left by one that died mid-write
+				catchUp();
+				if (channel.size() > end) {
+					channel.truncate(end);
+				}
+				long time = Math.max(System.currentTimeMillis(), lastTime);
+				ByteBuffer buf = record(body, time, s, precision, clientBytes, tagBytes, idBytes, exactBytes, result);
+				writeFully(buf, end);
+				Entry entry = new Entry(end, 4 + body, time, s.getKind(), precision, intern(client), intern(tag));
+				end += 4 + body;
+				index(entry);
+				return entry;
+			} finally {
+				lock.release();
+			}
+		}
+	}
+
+	//Encodes one record, length prefix and CRC included
+	private static ByteBuffer record(int body, long time, Scenario s, ScenarioEngine.Precision precision,
+			byte[] clientBytes, byte[] tagBytes, byte[] idBytes, byte[] exactBytes, ScenarioResult result)
+	{
+		double[] rates = s.ratesView();
+		int rateCount = rates == null ? 0 : rates.length;
+		ByteBuffer buf = ByteBuffer.allocate(4 + body);
+		buf.putInt(body);
+		buf.putLong(time).put((byte) s.getKind().ordinal()).put((byte) precision.ordinal());
+		putString(buf, clientBytes);
+		putString(buf, tagBytes);
+		putString(buf, idBytes);
+		buf.putDouble(s.getBalance()).putDouble(s.getRate()).putInt(s.getYears()).putDouble(s.getExpense());
+		buf.putInt(rateCount);
+		for (int i = 0; i < rateCount; i++) {
+			buf.putDouble(rates[i]);
+		}
+		buf.putDouble(result.getValue()).putInt(result.getYearsLasted()).putDouble(result.getTerminalBalance());
+		putString(buf, exactBytes);
+		CRC32 crc = new CRC32();
+		crc.update(buf.array(), 4, body - 4);
+		buf.putInt((int) crc.getValue());
+		buf.flip();
+		return buf;
+	}
+
+
+	public synchronized int size()
+	{
+		refresh();
+		return entries.size();
+	}
+
+	//The newest 'limit' entries, newest first
+	public synchronized List<Entry> recent(int limit)
+	{
+		refresh();
+		List<Entry> out = new ArrayList<>(Math.min(limit, entries.size()));
+		for (int i = entries.size() - 1; i >= 0 && out.size() < limit; i--) {
+			out.add(entries.get(i));
+		}
+		return out;
+	}
+
+	//Every entry in append order
+	public synchronized List<Entry> all()
+	{
+		refresh();
+		return new ArrayList<>(entries);
+	}
+
+	public synchronized List<Entry> byClient(String client)
+	{
+		refresh();
+		List<Entry> list = byClient.get(client);
+		return list == null ? Collections.<Entry>emptyList() : new ArrayList<>(list);
+	}
+
+	public synchronized List<Entry> byTag(String tag)
+	{
+		refresh();
+		List<Entry> list = byTag.get(tag);
+		return list == null ? Collections.<Entry>emptyList() : new ArrayList<>(list);
+	}
+
+	public synchronized List<Entry> between(long fromMillis, long toMillis)
+	{
+		/*
+        Entries are in time order, so two binary searches bound the range.
+        Complexity: O(log N + K)
+        Returns: (entries with fromMillis <= time < toMillis)
+        */
+		refresh();
+		int first = firstAtOrAfter(fromMillis);
+		int last = firstAtOrAfter(toMillis);
+		return new ArrayList<>(entries.subList(first, Math.max(first, last)));
+	}
+
+	//Decodes the full record: the stored scenario and the result it produced then
+	public ScenarioResult read(Entry e)
+	{
+		ByteBuffer buf;
+		if (e.offset + e.length <= mappedLimit) {
+			buf = mapped.duplicate();
+			buf.position((int) e.offset + 4 + 8 + 1 + 1).limit((int) (e.offset + e.length));
+		} else {
+			buf = ByteBuffer.allocate(e.length);
+			try {
+				while (buf.hasRemaining()) {
+					if (channel.read(buf, e.offset + buf.position()) < 0) {
+						throw new IOException(path + ": record at " + e.offset + " is cut short");
+					}
+				}
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+			buf.position(4 + 8 + 1 + 1);
+		}
+
+		skipString(buf);   // client
+		skipString(buf);   // tag
+		String id = getString(buf);
+		double balance = buf.getDouble();
+		double rate = buf.getDouble();
+		int years = buf.getInt();
+		double expense = buf.getDouble();
+		int n = buf.getInt();
+		double[] rates = null;
+		if (e.kind == Scenario.Kind.VARIABLE) {
+			rates = new double[n];
+			for (int i = 0; i < n; i++) {
+				rates[i] = buf.getDouble();
+			}
+		} else {
+			buf.position(buf.position() + 8 * n);
+		}
+		double value = buf.getDouble();
+		int yearsLasted = buf.getInt();
+		double terminal = buf.getDouble();
+		String exact = getString(buf);
+
+		Scenario s = Scenario.restore(e.kind, id, balance, rate, years, expense, rates);
+		return new ScenarioResult(s, value, yearsLasted, terminal, null, exact.isEmpty() ? null : new BigDecimal(exact));
+	}
+
+	//Re-runs the stored scenarios through the engine in their stored precision, in parallel; same order as given
+	public List<ScenarioResult> replay(List<Entry> selection)
+	{
+		return selection.parallelStream()
+				.map(e -> ScenarioEngine.evaluate(read(e).getScenario(), false, e.precision))
+				.collect(Collectors.toList());
+	}
+
+	//Bytes of a damaged tail that were discarded when the log was opened
+	public long droppedBytes()
+	{
+		return droppedBytes;
+	}
+
+	public Path path()
+	{
+		return path;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+
+	//Walks the record headers in log[from - origin, size - origin), where log starts at file position origin;
+	//returns the file position after the last intact record
+	private long scan(ByteBuffer log, long origin, long from, long size)
+	{
+		CRC32 crc = new CRC32();
+		long pos = from;
+		while (pos + 4 <= size) {
+			int p = (int) (pos - origin);
+			int body = log.getInt(p);
+			if (body < MIN_RECORD || pos + 4 + body > size) {
+				break;
+			}
+			ByteBuffer region = log.duplicate();
+			region.position(p + 4).limit(p + body);
+			crc.reset();
+			crc.update(region);
+			if ((int) crc.getValue() != log.getInt(p + body)) {
+				break;
+			}
+
+			int kind = log.get(p + 12);
+			int precision = log.get(p + 13);
+			if (kind < 0 || kind >= Scenario.Kind.values().length
+					|| precision < 0 || precision >= ScenarioEngine.Precision.values().length) {
+				break;
+			}
+			ByteBuffer header = log.duplicate();
+			header.position(p + 14);
+			String client = intern(getString(header));
+			String tag = intern(getString(header));
+			long time = log.getLong(p + 4);
+
+			index(new Entry(pos, 4 + body, time, Scenario.Kind.values()[kind],
+					ScenarioEngine.Precision.values()[precision], client, tag));
+			pos += 4 + body;
+		}
+		return pos;
+	}
+
+	//Indexes the intact records other processes have appended since 'end'
+	private void catchUp() throws IOException
+	{
+		long size = channel.size();
+		if (size <= end) {
+			return;
+		}
+		if (size - end > Integer.MAX_VALUE) {
+			throw new IOException(path + ": scenario log larger than 2 GB");
+		}
+		ByteBuffer tail = ByteBuffer.allocate((int) (size - end));
+		while (tail.hasRemaining()) {
+			if (channel.read(tail, end + tail.position()) < 0) {
+				break;
+			}
+		}
+		end = scan(tail, end, end, end + tail.position());
+	}
+
+	//Query side of catchUp(): records still being written elsewhere are left for a later call
+	private void refresh()
+	{
+		try {
+			catchUp();
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	private void index(Entry e)
+	{
+		entries.add(e);
+		byClient.computeIfAbsent(e.client, k -> new ArrayList<>()).add(e);
+		byTag.computeIfAbsent(e.tag, k -> new ArrayList<>()).add(e);
+		lastTime = Math.max(lastTime, e.time);
+	}
+
+	private int firstAtOrAfter(long time)
+	{
+		int low = 0;
+		int high = entries.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (entries.get(mid).time < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private String intern(String name)
+	{
+		String known = names.putIfAbsent(name, name);
+		return known != null ? known : name;
+	}
+
+	private void writeFully(ByteBuffer buf, long position) throws IOException
+	{
+		long at = position;
+		while (buf.hasRemaining()) {
+			at += channel.write(buf, at);
+		}
+	}
+
+	private static byte[] utf8(String text, String field)
+	{
+		byte[] bytes = (text == null ? "" : text).getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > 0xFFFF) {
+			throw new IllegalArgumentException(field + " is too long to store.");
+		}
+		return bytes;
+	}
+
+	private static void putString(ByteBuffer buf, byte[] bytes)
+	{
+		buf.putShort((short) bytes.length).put(bytes);
+	}
+
+	private static String getString(ByteBuffer buf)
+	{
+		byte[] bytes = new byte[buf.getShort() & 0xFFFF];
+		buf.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void skipString(ByteBuffer buf)
+	{
+		int n = buf.getShort() & 0xFFFF;
+		buf.position(buf.position() + n);
+	}
+}
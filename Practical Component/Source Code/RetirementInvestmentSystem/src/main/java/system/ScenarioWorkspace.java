@@ -0,0 +1,205 @@
+package system;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Pinned scenarios of the Compare page and their balance curves.
+
+evaluate() takes a snapshot of scenarios and returns one Curve per scenario,
+in order. Results are cached by input (Scenario.inputHash / sameInputs), so
+pinning one more scenario only runs that one; everything that is missing is
+evaluated as a single parallel batch. The cache is trimmed to the snapshot
+after every call, so it never holds more than what is pinned; for that
+reason evaluate() calls must not overlap (the page runs them on one thread).
+
+Free of Swing and JFreeChart; the page turns the curves into one dataset.
+*/
+public final class ScenarioWorkspace {
+
+	//One overlaid line: the pinned scenario, its result and balance per year (index = year)
+	public static final class Curve {
+
+		private final Scenario scenario;
+		private final ScenarioResult result;
+		private final double[] balances;
+
+		Curve(Scenario scenario, ScenarioResult result, double[] balances)
+		{
+			this.scenario = scenario;
+			this.result = result;
+			this.balances = balances;
+		}
+
+		public Scenario getScenario()
+		{
+			return scenario;
+		}
+
+		public ScenarioResult getResult()
+		{
+			return result;
+		}
+
+		//Shared with the cache; callers must not modify it
+		public double[] balances()
+		{
+			return balances;
+		}
+	}
+
+	private final List<Scenario> pinned = new CopyOnWriteArrayList<>();
+	private final Map<Key, Curve> cache = new ConcurrentHashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong evaluated = new AtomicLong();
+
+
+	//Adds a scenario unless one with the same inputs is already pinned
+	public boolean pin(Scenario scenario)
+	{
+		for (Scenario s : pinned) {
+			if (s.sameInputs(scenario)) {
+				return false;
+			}
+		}
+		return pinned.add(scenario);
+	}
+
+	public void unpin(int index)
+	{
+		pinned.remove(index);
+	}
+
+	public void clear()
+	{
+		pinned.clear();
+	}
+
+	//Snapshot safe to hand to a background thread
+	public List<Scenario> pinned()
+	{
+		return new ArrayList<>(pinned);
+	}
+
+
+	public List<Curve> evaluate(List<Scenario> scenarios)
+	{
+		/*
+        Cache lookup per scenario, then one parallel batch for the misses.
+        Complexity: O(M * T / workers) for M changed scenarios of T years
+        Returns: (one curve per scenario, same order)
+        */
+		Map<Key, Scenario> missing = new LinkedHashMap<>();
+		for (Scenario s : scenarios) {
+			Key key = new Key(s);
+			if (cache.containsKey(key)) {
+				hits.incrementAndGet();
+			} else {
+				missing.putIfAbsent(key, s);
+			}
+		}
+
+		missing.entrySet().parallelStream().forEach(e -> cache.put(e.getKey(), compute(e.getValue())));
+		evaluated.addAndGet(missing.size());
+
+		List<Curve> curves = new ArrayList<>(scenarios.size());
+		Set<Key> keep = new HashSet<>();
+		for (Scenario s : scenarios) {
+			Key key = new Key(s);
+			Curve cached = cache.get(key);
+			// The cached curve may belong to an equal scenario with another label
+			curves.add(cached.scenario == s ? cached : new Curve(s, cached.result, cached.balances));
+			keep.add(key);
+		}
+		cache.keySet().retainAll(keep);
+		return curves;
+	}
+
+	//Scenarios answered from the cache so far
+	public long cacheHits()
+	{
+		return hits.get();
+	}
+
+	//Scenarios actually simulated so far
+	public long evaluatedCount()
+	{
+		return evaluated.get();
+	}
+
+
+	private static Curve compute(Scenario s)
+	{
+		ScenarioResult result = ScenarioEngine.evaluate(s, true);
+		return new Curve(s, result, balanceCurve(result));
+	}
+
+	//Balance at the start of every year: Year 0 is the initial balance
+	static double[] balanceCurve(ScenarioResult result)
+	{
+		Scenario s = result.getScenario();
+		switch (s.getKind()) {
+		case GROWTH: {
+			double[] out = new double[s.getYears() + 1];
+			double growth = 1 + s.getRate();
+			out[0] = s.getBalance();
+			for (int y = 1; y < out.length; y++) {
+				out[y] = out[y - 1] * growth;
+			}
+			return out;
+		}
+		case VARIABLE: {
+			double[] rates = s.ratesView();
+			double[] out = new double[rates.length + 1];
+			out[0] = s.getBalance();
+			for (int y = 1; y < out.length; y++) {
+				out[y] = out[y - 1] * (1 + rates[y - 1]);
+			}
+			return out;
+		}
+		case DEPLETE:
+		case OPTIMIZE:
+		default: {
+			SimulationResult sim = result.getSimulation();
+			double[] out = new double[sim.historyLength()];
+			for (int y = 0; y < out.length; y++) {
+				out[y] = sim.balanceAt(y);
+			}
+			return out;
+		}
+		}
+	}
+
+
+	//Cache key: equal when the inputs are, whatever the label
+	private static final class Key {
+
+		private final Scenario scenario;
+		private final int hash;
+
+		Key(Scenario scenario)
+		{
+			this.scenario = scenario;
+			this.hash = scenario.inputHash();
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			return o instanceof Key && ((Key) o).hash == hash && ((Key) o).scenario.sameInputs(scenario);
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package system;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Immutable outcome of one RetirementKernel.simulate run.
+The history array holds Year 0 (starting balance) through Year N.
+*/
+public final class SimulationResult {
+
+	private final int yearsLasted;
+	private final double terminalBalance;
+	private final double[] history;
+
+	SimulationResult(int yearsLasted, double terminalBalance, double[] history)
+	{
+		this.yearsLasted = yearsLasted;
+		this.terminalBalance = terminalBalance;
+		this.history = history;
+	}
+
+	public int getYearsLasted()
+	{
+		return yearsLasted;
+	}
+
+	public double getTerminalBalance()
+	{
+		return terminalBalance;
+	}
+
+	//Number of points in the history (years lasted + the Year 0 balance)
+	public int historyLength()
+	{
+		return yearsLasted + 1;
+	}
+
+	public double balanceAt(int year)
+	{
+		if (year < 0 || year > yearsLasted) {
+			throw new IndexOutOfBoundsException("Year " + year + " outside 0.." + yearsLasted);
+		}
+		return history[year];
+	}
+
+	public double[] historyArray()
+	{
+		return java.util.Arrays.copyOf(history, historyLength());
+	}
+
+	//Boxed copy for the chart builders that take a List<Double>
+	public List<Double> toList()
+	{
+		List<Double> list = new ArrayList<>(historyLength());
+		for (int i = 0; i < historyLength(); i++) {
+			list.add(history[i]);
+		}
+		return list;
+	}
+}
@@ -0,0 +1,87 @@
+package system;
+
+/*
+Small, fast, re-seedable random source for the simulators (SplitMix64,
+Steele / Lea / Flood). Unlike java.util.Random it has no synchronisation and
+can be re-seeded in place, so one instance per worker thread serves every
+path that thread runs without allocating.
+
+Paths are made reproducible by seeding from pathSeed(seed, path): a path's
+numbers depend only on the run seed and its own index, never on which
+thread ran it or in what order.
+
+Not thread-safe.
+*/
+public final class SplitMix64 {
+
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+	private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+	private long state;
+	private double spareGaussian;
+	private boolean hasSpare;
+
+	public SplitMix64(long seed)
+	{
+		seed(seed);
+	}
+
+
+	//Stream seed of one path; distinct paths get well-separated, uncorrelated streams
+	public static long pathSeed(long seed, long path)
+	{
+		return mix(seed ^ mix(path * GOLDEN_GAMMA + GOLDEN_GAMMA));
+	}
+
+	public void seed(long seed)
+	{
+		state = seed;
+		hasSpare = false;
+	}
+
+	public long nextLong()
+	{
+		return mix(state += GOLDEN_GAMMA);
+	}
+
+	//Uniform in [0, 1)
+	public double nextDouble()
+	{
+		return (nextLong() >>> 11) * DOUBLE_UNIT;
+	}
+
+	public double nextGaussian()
+	{
+		/*
+        Standard normal by the Marsaglia polar method; the second value of each
+        pair is kept for the next call.
+        Complexity: O(1) expected (about 1.27 tries per pair)
+        Returns: (z)
+        */
+		if (hasSpare) {
+			hasSpare = false;
+			return spareGaussian;
+		}
+		double u;
+		double v;
+		double s;
+		do {
+			u = 2 * nextDouble() - 1;
+			v = 2 * nextDouble() - 1;
+			s = u * u + v * v;
+		} while (s >= 1 || s == 0);
+		double scale = Math.sqrt(-2 * Math.log(s) / s);
+		spareGaussian = v * scale;
+		hasSpare = true;
+		return u * scale;
+	}
+
+
+	//SplitMix64 finalizer: a well-spread 64-bit hash of z
+	static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,136 @@
+package system;
+
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+
+/*
+Measures time-to-first-frame of MainWindow in fresh JVMs.
+
+    java -cp <classpath> system.StartupBenchmark [runs]
+
+Each run starts a child JVM that opens the window on the EDT and reports the
+milliseconds from JVM start to the windowOpened event, then exits. Runs
+alternate between the lazy page construction and -Dris.eagerPages=true (all
+pages built before the first frame), and the medians are printed side by side.
+Children get this JVM's options and environment, so a CDS archive, heap size
+or display setting given to the benchmark applies to every run. Needs a
+display (a real one, Xvfb, or an off-screen AWT toolkit); it will not run
+under java.awt.headless.
+*/
+public final class StartupBenchmark {
+
+	private static final String CHILD_FLAG = "--child";
+	private static final String RESULT_PREFIX = "FIRST_FRAME_MS=";
+
+	private StartupBenchmark()
+	{
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length > 0 && CHILD_FLAG.equals(args[0])) {
+			runChild();
+			return;
+		}
+
+		int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		long[] lazy = new long[runs];
+		long[] eager = new long[runs];
+		for (int i = 0; i < runs; i++) {
+			eager[i] = launch(true);
+			lazy[i] = launch(false);
+		}
+
+		System.out.printf("Time to first frame over %d runs (ms)%n", runs);
+		System.out.printf("  eager pages: median %d  min %d  %s%n", median(eager), min(eager), Arrays.toString(eager));
+		System.out.printf("  lazy pages : median %d  min %d  %s%n", median(lazy), min(lazy), Arrays.toString(lazy));
+	}
+
+
+	//Child JVM: open the window and report once the first frame is up
+	private static void runChild()
+	{
+		long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+		// Measure the window, not the user's scenario history
+		if (System.getProperty("ris.store") == null) {
+			System.setProperty("ris.store", "none");
+		}
+		SwingUtilities.invokeLater(() -> {
+			MainWindow window = new MainWindow();
+			window.addWindowListener(new WindowAdapter() {
+				@Override
+				public void windowOpened(WindowEvent e)
+				{
+					// Let the first paint go through before taking the time
+					SwingUtilities.invokeLater(() -> {
+						System.out.println(RESULT_PREFIX + (System.currentTimeMillis() - jvmStart));
+						System.out.flush();
+						System.exit(0);
+					});
+				}
+			});
+		});
+	}
+
+	private static long launch(boolean eagerPages) throws IOException, InterruptedException
+	{
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		List<String> command = new ArrayList<>();
+		command.add(java);
+		// Same JVM options as this run (heap, CDS archive, toolkit...), with the page mode set per child
+		for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+			if (!option.startsWith("-Dris.eagerPages=")) {
+				command.add(option);
+			}
+		}
+		command.add("-Dris.eagerPages=" + eagerPages);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(StartupBenchmark.class.getName());
+		command.add(CHILD_FLAG);
+
+		Process child = new ProcessBuilder(command).redirectErrorStream(true).start();
+		long result = -1;
+		try (BufferedReader out = new BufferedReader(new InputStreamReader(child.getInputStream()))) {
+			String line;
+			while ((line = out.readLine()) != null) {
+				if (line.startsWith(RESULT_PREFIX)) {
+					result = Long.parseLong(line.substring(RESULT_PREFIX.length()).trim());
+				} else {
+					System.err.println("  [child] " + line);
+				}
+			}
+		}
+		child.waitFor();
+		if (result < 0) {
+			throw new IllegalStateException("Child JVM did not report a first frame (exit " + child.exitValue() + ").");
+		}
+		return result;
+	}
+
+	private static long median(long[] values)
+	{
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+
+	private static long min(long[] values)
+	{
+		long min = Long.MAX_VALUE;
+		for (long v : values) {
+			min = Math.min(min, v);
+		}
+		return min;
+	}
+}
@@ -0,0 +1,106 @@
+package system;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Compares the specialised withdrawal-strategy loops with the same four rules
+run through WithdrawalStrategy.custom()'s generic loop.
+
+    java -cp <classpath> system.StrategyBenchmark [accounts] [paths] [rounds]
+
+Both books hold the same mix of constant, percent, floor-ceiling and
+guardrails accounts and are evaluated by StrategyEvaluator over the same
+GARCH rate paths. In the generic book the per-year Rule call sees all four
+rules and goes megamorphic, which is what the specialised loops avoid. The
+first rounds are warm-up; the best time of the rest is reported per
+account-year, together with the largest difference in success rate between
+the two books (it should be 0).
+*/
+public final class StrategyBenchmark {
+
+	private static final double INFLATION = 0.02;
+	private static final int HORIZON = 40;
+
+	private StrategyBenchmark()
+	{
+	}
+
+	public static void main(String[] args)
+	{
+		int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int paths = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+
+		List<StrategyEvaluator.Account> specialised = new ArrayList<>();
+		List<StrategyEvaluator.Account> generic = new ArrayList<>();
+		for (int i = 0; i < accounts; i++) {
+			double balance = 500000 + 1000.0 * (i % 500);
+			double rate = 0.03 + 0.0025 * (i % 9);
+			WithdrawalStrategy fast;
+			WithdrawalStrategy.Rule rule;
+			switch (i % 4) {
+			case 0:
+				fast = WithdrawalStrategy.constant(rate, INFLATION);
+				rule = (year, b, last, lastRate) -> year == 1 ? rate * balance : last * (1 + INFLATION);
+				break;
+			case 1:
+				fast = WithdrawalStrategy.percentOfBalance(rate);
+				rule = (year, b, last, lastRate) -> rate * b;
+				break;
+			case 2:
+				fast = WithdrawalStrategy.floorAndCeiling(rate, 0.85, 1.5, INFLATION);
+				rule = (year, b, last, lastRate) -> {
+					double index = Math.pow(1 + INFLATION, year - 1) * rate * balance;
+					return Math.min(Math.max(rate * b, 0.85 * index), 1.5 * index);
+				};
+				break;
+			default:
+				fast = WithdrawalStrategy.guytonKlinger(rate, INFLATION, 0.2, 0.1);
+				rule = (year, b, last, lastRate) -> {
+					if (year == 1) {
+						return rate * balance;
+					}
+					double w = lastRate < 0 && last > rate * b ? last : last * (1 + INFLATION);
+					double current = w / b;
+					if (current > rate * 1.2 && HORIZON - (year - 1) > 15) {
+						return w * 0.9;
+					}
+					return current < rate * 0.8 ? w * 1.1 : w;
+				};
+			}
+			specialised.add(new StrategyEvaluator.Account("s" + i, balance, HORIZON, fast));
+			generic.add(new StrategyEvaluator.Account("g" + i, balance, HORIZON,
+					WithdrawalStrategy.custom("rule" + (i % 4), rule)));
+		}
+
+		MonteCarloEngine engine = new MonteCarloEngine(RateModels.parse("garch"), 1);
+		long bestFast = Long.MAX_VALUE;
+		long bestGeneric = Long.MAX_VALUE;
+		List<StrategyEvaluator.Summary> fastResult = null;
+		List<StrategyEvaluator.Summary> genericResult = null;
+		for (int r = 0; r < rounds; r++) {
+			long t0 = System.nanoTime();
+			fastResult = StrategyEvaluator.evaluate(specialised, engine, paths);
+			long t1 = System.nanoTime();
+			genericResult = StrategyEvaluator.evaluate(generic, engine, paths);
+			long t2 = System.nanoTime();
+			if (r >= rounds / 2) {
+				bestFast = Math.min(bestFast, t1 - t0);
+				bestGeneric = Math.min(bestGeneric, t2 - t1);
+			}
+		}
+
+		double maxDiff = 0;
+		for (int i = 0; i < accounts; i++) {
+			maxDiff = Math.max(maxDiff, Math.abs(fastResult.get(i).successRate() - genericResult.get(i).successRate()));
+		}
+		double accountYears = (double) accounts * paths * HORIZON;
+		System.out.printf("%d accounts x %d paths x %d years, best of %d rounds%n", accounts, paths, HORIZON,
+				rounds - rounds / 2);
+		System.out.printf("  specialised loops: %8.1f ms  %6.2f ns/account-year%n", bestFast / 1e6, bestFast / accountYears);
+		System.out.printf("  generic Rule loop: %8.1f ms  %6.2f ns/account-year%n", bestGeneric / 1e6,
+				bestGeneric / accountYears);
+		System.out.printf("  largest success-rate difference: %.6f%n", maxDiff);
+	}
+}
@@ -0,0 +1,241 @@
+package system;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/*
+Runs a book of accounts, each with its own WithdrawalStrategy, over the same
+rate paths and summarises each account across the paths.
+
+Work is split by path: a worker draws one path's rates into its own buffer
+(MonteCarloEngine.ratePath, so the path is the same for every account and
+every run with the same seed) and then runs every account over it. The rates
+are therefore generated once per path, not once per account, and accounts
+are compared on common random numbers. Each leaf task of the parallel split
+keeps one Summary per account; the partial summaries are merged as the
+leaves finish, so memory is O(leaves * accounts + horizon) and never
+O(paths * years).
+*/
+public final class StrategyEvaluator {
+
+	//One client account: starting balance, horizon in years and withdrawal rule
+	public static final class Account {
+
+		private final String id;
+		private final double balance;
+		private final int horizon;
+		private final WithdrawalStrategy strategy;
+
+		public Account(String id, double balance, int horizon, WithdrawalStrategy strategy)
+		{
+			if (!(balance >= 0) || Double.isInfinite(balance)) {
+				throw new IllegalArgumentException("Balance must be a non-negative number.");
+			}
+			if (horizon <= 0 || horizon > RetirementKernel.LIFETIME_CAP_YEARS) {
+				throw new IllegalArgumentException("Horizon must be 1 to " + RetirementKernel.LIFETIME_CAP_YEARS + " years.");
+			}
+			this.id = id;
+			this.balance = balance;
+			this.horizon = horizon;
+			this.strategy = strategy;
+		}
+
+		public String getId()
+		{
+			return id;
+		}
+
+		public double getBalance()
+		{
+			return balance;
+		}
+
+		public int getHorizon()
+		{
+			return horizon;
+		}
+
+		public WithdrawalStrategy getStrategy()
+		{
+			return strategy;
+		}
+	}
+
+
+	//One account's outcomes over all paths
+	public static final class Summary {
+
+		private final Account account;
+		private final RunningStats terminal = new RunningStats();
+		private final RunningStats withdrawn = new RunningStats();
+		private final RunningStats lowest = new RunningStats();
+		private long successes;
+
+		Summary(Account account)
+		{
+			this.account = account;
+		}
+
+		void add(int yearsLasted, double[] totals)
+		{
+			terminal.add(totals[WithdrawalStrategy.TERMINAL]);
+			withdrawn.add(totals[WithdrawalStrategy.WITHDRAWN]);
+			lowest.add(totals[WithdrawalStrategy.LOWEST]);
+			if (yearsLasted == account.horizon && totals[WithdrawalStrategy.TERMINAL] > 0) {
+				successes++;
+			}
+		}
+
+		void merge(Summary other)
+		{
+			terminal.merge(other.terminal);
+			withdrawn.merge(other.withdrawn);
+			lowest.merge(other.lowest);
+			successes += other.successes;
+		}
+
+		public Account getAccount()
+		{
+			return account;
+		}
+
+		public long paths()
+		{
+			return terminal.count();
+		}
+
+		//Share of paths with money left at the horizon
+		public double successRate()
+		{
+			return paths() == 0 ? 0.0 : (double) successes / paths();
+		}
+
+		public RunningStats terminalBalance()
+		{
+			return terminal;
+		}
+
+		//Total withdrawn over the horizon, per path
+		public RunningStats totalWithdrawn()
+		{
+			return withdrawn;
+		}
+
+		//Smallest single-year withdrawal, per path (income stability)
+		public RunningStats lowestWithdrawal()
+		{
+			return lowest;
+		}
+	}
+
+
+	private StrategyEvaluator()
+	{
+	}
+
+
+	public static List<Summary> evaluate(List<Account> accounts, MonteCarloEngine engine, int paths)
+	{
+		/*
+        Every account over the same 'paths' generated rate paths, in parallel
+        over paths.
+        Complexity: O(P * (H + A * H)) time, O(leaves * A + H) memory
+        Returns: (one summary per account, in input order)
+        */
+		if (paths <= 0) {
+			throw new IllegalArgumentException("Number of paths must be at least 1.");
+		}
+		int horizon = maxHorizon(accounts);
+		int size = accounts.size();
+		try (EngineMonitor.Job job = EngineMonitor.shared().begin("Strategy book", (long) paths * size,
+				EngineMonitor.Counter.ACCOUNT_PATHS)) {
+			Partial result = IntStream.range(0, paths).parallel().collect(
+					() -> new Partial(accounts, horizon),
+					(partial, path) -> {
+						engine.ratePath(path, horizon, partial.rates);
+						partial.runAll();
+						job.advance(size);
+					},
+					Partial::merge);
+			EngineMonitor.shared().count(EngineMonitor.Counter.PATHS, paths);
+			job.complete(size + " accounts over " + paths + " paths");
+			return result.summaries();
+		}
+	}
+
+
+	public static List<Summary> evaluate(List<Account> accounts, double rate)
+	{
+		/*
+        Every account at one fixed decimal rate (a single deterministic path),
+        in parallel over accounts.
+        Complexity: O(A * H) time
+        Returns: (one summary per account, in input order)
+        */
+		int horizon = maxHorizon(accounts);
+		double[] rates = new double[horizon];
+		Arrays.fill(rates, rate);
+		Summary[] out = new Summary[accounts.size()];
+		IntStream.range(0, accounts.size()).parallel().forEach(i -> {
+			Account a = accounts.get(i);
+			double[] totals = new double[WithdrawalStrategy.TOTALS];
+			Summary s = new Summary(a);
+			s.add(a.strategy.run(a.balance, rates, a.horizon, null, totals), totals);
+			out[i] = s;
+		});
+		return Arrays.asList(out);
+	}
+
+
+	private static int maxHorizon(List<Account> accounts)
+	{
+		int horizon = 0;
+		for (Account a : accounts) {
+			horizon = Math.max(horizon, a.horizon);
+		}
+		return horizon;
+	}
+
+
+	//A worker's rate buffer and its partial summaries
+	private static final class Partial {
+
+		private final List<Account> accounts;
+		private final Summary[] summaries;
+		private final double[] rates;
+		private final double[] totals = new double[WithdrawalStrategy.TOTALS];
+
+		Partial(List<Account> accounts, int horizon)
+		{
+			this.accounts = accounts;
+			this.summaries = new Summary[accounts.size()];
+			for (int i = 0; i < summaries.length; i++) {
+				summaries[i] = new Summary(accounts.get(i));
+			}
+			this.rates = new double[horizon];
+		}
+
+		void runAll()
+		{
+			for (int i = 0; i < summaries.length; i++) {
+				Account a = accounts.get(i);
+				int years = a.strategy.run(a.balance, rates, a.horizon, null, totals);
+				summaries[i].add(years, totals);
+			}
+		}
+
+		void merge(Partial other)
+		{
+			for (int i = 0; i < summaries.length; i++) {
+				summaries[i].merge(other.summaries[i]);
+			}
+		}
+
+		List<Summary> summaries()
+		{
+			return new ArrayList<>(Arrays.asList(summaries));
+		}
+	}
+}
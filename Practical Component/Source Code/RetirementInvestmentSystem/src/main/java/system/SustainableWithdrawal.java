@@ -0,0 +1,228 @@
+package system;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/*
+Largest first-year withdrawal (inflation-indexed, withdraw-first) that still
+lasts the horizon on at least a given share of Monte Carlo rate paths, e.g.
+"the most I can take with 90% success".
+
+A naive answer nests a full Monte Carlo run inside every bisection step.
+Instead the rate paths are generated once and reused by every step (common
+random numbers, so the success rate is a monotone step function of the
+withdrawal and the bisection cannot be thrown off by noise), and each path
+remembers the largest withdrawal it has survived and the smallest it has
+failed. Success is monotone in the withdrawal, so at a new midpoint every
+path whose bounds already decide it is counted without running it, and the
+step ends as soon as the decided paths alone settle the answer. Only paths
+whose breaking point lies near the midpoint are re-run, so a whole solve
+costs a small multiple of one simulation of every path.
+
+Memory is paths * horizon doubles for the stored growth factors (4 MB for
+10,000 paths over 50 years) plus two doubles per path. One instance can solve
+many balances, inflation rates and confidence levels on the same paths, but
+only one at a time (not thread-safe).
+*/
+public final class SustainableWithdrawal {
+
+	//Bisection stops when the bracket is narrower than a cent, like maximumExpensed
+	private static final double EPSILON = 0.01;
+
+	private final int paths;
+	private final int horizon;
+	private final double[] growth;     // path p, year y at p * horizon + y: 1 + rate
+	private final double[] survived;   // per path: largest withdrawal known to last
+	private final double[] failed;     // per path: smallest withdrawal known not to last
+	private long pathRuns;
+
+
+	//Outcome of one solve
+	public static final class Result {
+
+		private final double withdrawal;
+		private final double successRate;
+		private final int iterations;
+		private final long pathRuns;
+		private final int paths;
+
+		Result(double withdrawal, double successRate, int iterations, long pathRuns, int paths)
+		{
+			this.withdrawal = withdrawal;
+			this.successRate = successRate;
+			this.iterations = iterations;
+			this.pathRuns = pathRuns;
+			this.paths = paths;
+		}
+
+		public double getWithdrawal()
+		{
+			return withdrawal;
+		}
+
+		//Share of paths that last at getWithdrawal()
+		public double getSuccessRate()
+		{
+			return successRate;
+		}
+
+		public int getIterations()
+		{
+			return iterations;
+		}
+
+		//Paths actually simulated over the whole solve
+		public long getPathRuns()
+		{
+			return pathRuns;
+		}
+
+		//Cost in units of one simulation of every path
+		public double getCostMultiple()
+		{
+			return (double) pathRuns / paths;
+		}
+	}
+
+
+	//Draws and stores the paths; path i is MonteCarloEngine path i, so runs with the same seed match
+	public SustainableWithdrawal(MonteCarloEngine engine, int paths, int horizon)
+	{
+		if (paths <= 0) {
+			throw new IllegalArgumentException("Number of paths must be at least 1.");
+		}
+		if (horizon <= 0 || horizon > RetirementKernel.LIFETIME_CAP_YEARS) {
+			throw new IllegalArgumentException("Horizon must be 1 to " + RetirementKernel.LIFETIME_CAP_YEARS + " years.");
+		}
+		if ((long) paths * horizon > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Too many paths for this horizon.");
+		}
+		this.paths = paths;
+		this.horizon = horizon;
+		this.growth = new double[paths * horizon];
+		this.survived = new double[paths];
+		this.failed = new double[paths];
+		IntStream.range(0, paths).parallel().forEach(p -> {
+			double[] rates = new double[horizon];
+			engine.ratePath(p, horizon, rates);
+			for (int y = 0; y < horizon; y++) {
+				growth[p * horizon + y] = 1 + rates[y];
+			}
+		});
+	}
+
+
+	public Result solve(double balance, double inflation, double confidence)
+	{
+		/*
+        Bisection over the first-year withdrawal on the stored paths, with
+        per-path bounds pruning decided paths.
+        Complexity: O(P * H) to O(P * H * log N); typically a few P * H
+        Returns: (withdrawal, success_rate, iterations, path_runs)
+        */
+		if (!(balance >= 0) || Double.isInfinite(balance)) {
+			throw new IllegalArgumentException("Balance must be a non-negative number.");
+		}
+		if (!(inflation > -1)) {
+			throw new IllegalArgumentException("Inflation must be greater than -100%.");
+		}
+		if (!(confidence > 0 && confidence <= 1)) {
+			throw new IllegalArgumentException("Confidence must be above 0 and at most 1.");
+		}
+		Arrays.fill(survived, 0.0);
+		Arrays.fill(failed, Double.POSITIVE_INFINITY);
+		pathRuns = 0;
+		int needed = (int) Math.ceil(confidence * paths - 1e-9);
+
+		double low = 0.0;
+		double high = balance;
+		int iterations = 0;
+		// Progress is counted in bisection steps; the bracket halves each step
+		long steps = balance > EPSILON ? (long) Math.ceil(Math.log(balance / EPSILON) / Math.log(2)) : 0;
+		try (EngineMonitor.Job job = EngineMonitor.shared().begin("Sustainable withdrawal", steps)) {
+			while ((high - low) > EPSILON) {
+				double mid = (high + low) / 2.0;
+				iterations++;
+				if (enoughSurvive(balance, mid, inflation, needed)) {
+					low = mid;
+				} else {
+					high = mid;
+				}
+				job.advance(1);
+				job.checkpoint();
+			}
+			double rate = countSurvivors(low) / (double) paths;
+			EngineMonitor.shared().count(EngineMonitor.Counter.PATHS, pathRuns);
+			EngineMonitor.shared().count(EngineMonitor.Counter.SOLVES, 1);
+			job.complete(String.format("%.2f at %.1f%% success", low, 100 * rate));
+			return new Result(low, rate, iterations, pathRuns, paths);
+		}
+	}
+
+
+	//Does 'withdrawal' last on at least 'needed' paths? Decided paths are counted, the rest run in parallel
+	private boolean enoughSurvive(double balance, double withdrawal, double inflation, int needed)
+	{
+		int known = countSurvivors(withdrawal);
+		int knownFailed = 0;
+		for (int p = 0; p < paths; p++) {
+			if (withdrawal >= failed[p]) {
+				knownFailed++;
+			}
+		}
+		if (known >= needed) {
+			return true;
+		}
+		if (paths - knownFailed < needed) {
+			return false;
+		}
+
+		int[] undecided = IntStream.range(0, paths)
+				.filter(p -> withdrawal > survived[p] && withdrawal < failed[p])
+				.toArray();
+		pathRuns += undecided.length;
+		long ran = IntStream.of(undecided).parallel()
+				.filter(p -> {
+					boolean lasts = lasts(p, balance, withdrawal, inflation);
+					if (lasts) {
+						survived[p] = withdrawal;
+					} else {
+						failed[p] = withdrawal;
+					}
+					return lasts;
+				})
+				.count();
+		return known + ran >= needed;
+	}
+
+	private int countSurvivors(double withdrawal)
+	{
+		int n = 0;
+		for (int p = 0; p < paths; p++) {
+			if (withdrawal <= survived[p]) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	//Withdraw-first run of one stored path; stops at the first overdrawn year
+	private boolean lasts(int path, double balance, double withdrawal, double inflation)
+	{
+		double indexation = 1 + inflation;
+		double B = balance;
+		double w = withdrawal;
+		int base = path * horizon;
+		for (int y = 0; y < horizon; y++) {
+			if (y > 0) {
+				w *= indexation;
+			}
+			B -= w;
+			if (B <= 0) {
+				return false;
+			}
+			B *= growth[base + y];
+		}
+		return B > 0;
+	}
+}
@@ -0,0 +1,197 @@
+package system;
+
+import java.util.Arrays;
+
+/*
+Compact, immutable description of how the annual withdrawal (and optionally
+the return rate) changes over retirement.
+
+  expense(year) = baseExpense * (1 + inflation)^(year - 1) * stepFactor(year)
+  rate(year)    = glide-path rate in force for that year, or the caller's rate
+
+Step-downs and glide-path points are kept as parallel primitive arrays sorted
+by year, so the kernels can walk them with a cursor instead of allocating a
+per-year object. Years are 1-based (year 1 = first year of retirement).
+*/
+public final class WithdrawalSchedule {
+
+	private static final int[] NO_YEARS = new int[0];
+	private static final double[] NO_VALUES = new double[0];
+
+	private final double baseExpense;
+	private final double inflation;
+	private final int[] stepYears;
+	private final double[] stepFactors;
+	private final int[] glideYears;
+	private final double[] glideRates;
+
+	private WithdrawalSchedule(double baseExpense, double inflation, int[] stepYears, double[] stepFactors,
+			int[] glideYears, double[] glideRates)
+	{
+		this.baseExpense = baseExpense;
+		this.inflation = inflation;
+		this.stepYears = stepYears;
+		this.stepFactors = stepFactors;
+		this.glideYears = glideYears;
+		this.glideRates = glideRates;
+	}
+
+	//Same nominal withdrawal every year (the finallyRetired assumption)
+	public static WithdrawalSchedule constant(double annualExpense)
+	{
+		return new WithdrawalSchedule(annualExpense, 0.0, NO_YEARS, NO_VALUES, NO_YEARS, NO_VALUES);
+	}
+
+	//Withdrawal grows by a fixed inflation rate each year
+	public static WithdrawalSchedule inflationIndexed(double annualExpense, double inflation)
+	{
+		if (inflation <= -1.0) {
+			throw new IllegalArgumentException("Inflation must be greater than -100%.");
+		}
+		return new WithdrawalSchedule(annualExpense, inflation, NO_YEARS, NO_VALUES, NO_YEARS, NO_VALUES);
+	}
+
+	//From fromYear onward the (inflated) withdrawal is multiplied by factor, e.g. 0.8 for a 20% step-down
+	public WithdrawalSchedule withStepDown(int fromYear, double factor)
+	{
+		if (fromYear < 1) {
+			throw new IllegalArgumentException("Step-down year must be 1 or later.");
+		}
+		if (factor < 0) {
+			throw new IllegalArgumentException("Step-down factor must be non-negative.");
+		}
+		int at = insertionPoint(stepYears, fromYear);
+		return new WithdrawalSchedule(baseExpense, inflation,
+				insert(stepYears, at, fromYear), insert(stepFactors, at, factor), glideYears, glideRates);
+	}
+
+	//From fromYear onward the balance grows at rate (decimal) instead of the caller's rate
+	public WithdrawalSchedule withGlidePath(int fromYear, double rate)
+	{
+		if (fromYear < 1) {
+			throw new IllegalArgumentException("Glide-path year must be 1 or later.");
+		}
+		if (rate <= -1.0) {
+			throw new IllegalArgumentException("Glide-path rate must be greater than -100%.");
+		}
+		int at = insertionPoint(glideYears, fromYear);
+		return new WithdrawalSchedule(baseExpense, inflation, stepYears, stepFactors,
+				insert(glideYears, at, fromYear), insert(glideRates, at, rate));
+	}
+
+	//Same shape with a different first-year withdrawal (used by the bisection)
+	public WithdrawalSchedule withBaseExpense(double annualExpense)
+	{
+		return new WithdrawalSchedule(annualExpense, inflation, stepYears, stepFactors, glideYears, glideRates);
+	}
+
+	public double getBaseExpense()
+	{
+		return baseExpense;
+	}
+
+	public double getInflation()
+	{
+		return inflation;
+	}
+
+	//True when the closed-form geometric-series solution applies
+	public boolean isInflationIndexedOnly()
+	{
+		return stepYears.length == 0 && glideYears.length == 0;
+	}
+
+	public boolean hasGlidePath()
+	{
+		return glideYears.length > 0;
+	}
+
+	//Random access view; the kernels walk the arrays with cursors instead
+	public double expenseInYear(int year)
+	{
+		return baseExpense * Math.pow(1 + inflation, year - 1) * stepFactorAt(year);
+	}
+
+	public double rateInYear(int year, double defaultRate)
+	{
+		int i = lastAtOrBefore(glideYears, year);
+		return i < 0 ? defaultRate : glideRates[i];
+	}
+
+	double stepFactorAt(int year)
+	{
+		int i = lastAtOrBefore(stepYears, year);
+		return i < 0 ? 1.0 : stepFactors[i];
+	}
+
+	//Package-private accessors for the kernel cursors (arrays are never mutated)
+	int[] stepYears()
+	{
+		return stepYears;
+	}
+
+	double[] stepFactors()
+	{
+		return stepFactors;
+	}
+
+	int[] glideYears()
+	{
+		return glideYears;
+	}
+
+	double[] glideRates()
+	{
+		return glideRates;
+	}
+
+
+	private static int lastAtOrBefore(int[] years, int year)
+	{
+		int i = Arrays.binarySearch(years, year);
+		return i >= 0 ? i : -i - 2;
+	}
+
+	//A later entry for the same year replaces the earlier one
+	private static int insertionPoint(int[] years, int year)
+	{
+		int i = Arrays.binarySearch(years, year);
+		return i >= 0 ? -(i + 1) : -i - 1;
+	}
+
+	private static int[] insert(int[] a, int at, int value)
+	{
+		if (at < 0) {
+			int[] copy = a.clone();
+			copy[-at - 1] = value;
+			return copy;
+		}
+		int[] out = new int[a.length + 1];
+		System.arraycopy(a, 0, out, 0, at);
+		out[at] = value;
+		System.arraycopy(a, at, out, at + 1, a.length - at);
+		return out;
+	}
+
+	private static double[] insert(double[] a, int at, double value)
+	{
+		if (at < 0) {
+			double[] copy = a.clone();
+			copy[-at - 1] = value;
+			return copy;
+		}
+		double[] out = new double[a.length + 1];
+		System.arraycopy(a, 0, out, 0, at);
+		out[at] = value;
+		System.arraycopy(a, at, out, at + 1, a.length - at);
+		return out;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("WithdrawalSchedule[base=%.2f, inflation=%.4f, steps=%s x %s, glide=%s x %s]",
+				baseExpense, inflation, Arrays.toString(stepYears), Arrays.toString(stepFactors),
+				Arrays.toString(glideYears), Arrays.toString(glideRates));
+	}
+}
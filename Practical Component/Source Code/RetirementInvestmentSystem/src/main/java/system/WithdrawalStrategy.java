@@ -0,0 +1,471 @@
+package system;
+
+import java.util.Locale;
+
+/*
+A rule that sets each year's withdrawal from how the account is doing, as
+opposed to the fixed amount maximumExpensed solves for:
+
+  constant        initial rate x starting balance, raised by inflation yearly
+  percent         a fixed share of the balance at the start of each year
+  floor-ceiling   percent of balance, kept between a floor and a ceiling that
+                  are fractions of the first year's amount (inflation-adjusted)
+  guardrails      Guyton-Klinger: inflation raises are skipped after a losing
+                  year when the withdrawal rate is above its starting value;
+                  a rate more than 'guard' above the start is cut by
+                  'adjustment' (not in the last 15 years), one more than
+                  'guard' below it is raised by 'adjustment'
+
+All run the withdraw-first loop of RetirementKernel over a path of yearly
+decimal rates (rates[i] is earned in year i + 1); a year counts when its
+withdrawal is at least partly paid.
+
+Every built-in strategy carries its own copy of the loop with the rule
+written inline, so the hot loop has no virtual calls at all and the JIT
+compiles each one separately; choosing the strategy costs one call per path.
+custom() runs an arbitrary Rule through a generic loop that calls it once
+per year, which is convenient but becomes megamorphic when several rules
+share it (see StrategyBenchmark).
+*/
+public abstract class WithdrawalStrategy {
+
+	//Indexes into the 'totals' array filled by run()
+	public static final int TERMINAL = 0;
+	public static final int WITHDRAWN = 1;
+	public static final int LOWEST = 2;
+	public static final int TOTALS = 3;
+
+	//Guyton-Klinger: the capital-preservation cut is not applied this close to the horizon
+	private static final int PRESERVATION_CUTOFF_YEARS = 15;
+
+	//Per-year withdrawal for custom(): 'lastRate' is the previous year's return, 0 in year 1
+	public interface Rule {
+		double withdrawal(int year, double balance, double lastWithdrawal, double lastRate);
+	}
+
+	WithdrawalStrategy()
+	{
+	}
+
+
+	/*
+	Runs the rule for up to 'horizon' years (rates must hold that many) and
+	streams each year's balance into sink when one is given. totals, when
+	given, receives the terminal balance, the total actually withdrawn and
+	the lowest planned withdrawal (indexes TERMINAL, WITHDRAWN, LOWEST).
+	Returns the number of years lasted.
+	*/
+	public abstract int run(double balance, double[] rates, int horizon, YearSink sink, double[] totals);
+
+	public abstract String describe();
+
+	@Override
+	public String toString()
+	{
+		return describe();
+	}
+
+
+	public static WithdrawalStrategy constant(double initialRate, double inflation)
+	{
+		requireRate(initialRate, "Initial withdrawal rate");
+		requireInflation(inflation);
+		return new Constant(initialRate, inflation);
+	}
+
+	public static WithdrawalStrategy percentOfBalance(double rate)
+	{
+		requireRate(rate, "Withdrawal rate");
+		return new Percent(rate);
+	}
+
+	//Floor and ceiling as fractions of the first year's amount, e.g. 0.85 and 1.5
+	public static WithdrawalStrategy floorAndCeiling(double rate, double floor, double ceiling, double inflation)
+	{
+		requireRate(rate, "Withdrawal rate");
+		requireInflation(inflation);
+		if (!(floor >= 0) || !(ceiling >= floor)) {
+			throw new IllegalArgumentException("Floor must be non-negative and not above the ceiling.");
+		}
+		return new FloorCeiling(rate, floor, ceiling, inflation);
+	}
+
+	public static WithdrawalStrategy guytonKlinger(double initialRate, double inflation, double guard, double adjustment)
+	{
+		requireRate(initialRate, "Initial withdrawal rate");
+		requireInflation(inflation);
+		if (!(guard > 0 && guard < 1) || !(adjustment > 0 && adjustment < 1)) {
+			throw new IllegalArgumentException("Guardrail and adjustment must be between 0 and 1.");
+		}
+		return new Guardrails(initialRate, inflation, guard, adjustment);
+	}
+
+	public static WithdrawalStrategy custom(String name, Rule rule)
+	{
+		return new Custom(name, rule);
+	}
+
+
+	/*
+	Parses "name:p1,p2,..." (decimal parameters) for the command line:
+	  constant:rate[,inflation]
+	  percent:rate
+	  floor-ceiling:rate,floor,ceiling[,inflation]
+	  guardrails:rate[,inflation[,guard,adjustment]]     guard 0.2, adjustment 0.1 by default
+	*/
+	public static WithdrawalStrategy parse(String spec)
+	{
+		int colon = spec.indexOf(':');
+		String name = (colon < 0 ? spec : spec.substring(0, colon)).trim().toLowerCase(Locale.ROOT);
+		double[] p = colon < 0 ? new double[0] : numbers(spec.substring(colon + 1));
+		switch (name) {
+		case "constant":
+			requireCount(p, 1, 2, "constant:rate[,inflation]");
+			return constant(p[0], p.length > 1 ? p[1] : 0.0);
+		case "percent":
+			requireCount(p, 1, 1, "percent:rate");
+			return percentOfBalance(p[0]);
+		case "floor-ceiling":
+			requireCount(p, 3, 4, "floor-ceiling:rate,floor,ceiling[,inflation]");
+			return floorAndCeiling(p[0], p[1], p[2], p.length > 3 ? p[3] : 0.0);
+		case "guardrails":
+			if (p.length == 3) {
+				throw new IllegalArgumentException("Strategy format: guardrails:rate[,inflation[,guard,adjustment]]");
+			}
+			requireCount(p, 1, 4, "guardrails:rate[,inflation[,guard,adjustment]]");
+			return guytonKlinger(p[0], p.length > 1 ? p[1] : 0.0, p.length > 2 ? p[2] : 0.2, p.length > 3 ? p[3] : 0.1);
+		default:
+			throw new IllegalArgumentException("Strategy must be constant, percent, floor-ceiling or guardrails.");
+		}
+	}
+
+
+	//Common tail of every loop: fills totals when given
+	static void finish(double[] totals, double terminal, double withdrawn, double lowest)
+	{
+		if (totals != null) {
+			totals[TERMINAL] = terminal;
+			totals[WITHDRAWN] = withdrawn;
+			totals[LOWEST] = lowest == Double.POSITIVE_INFINITY ? 0.0 : lowest;
+		}
+	}
+
+	private static double[] numbers(String list)
+	{
+		String[] tokens = list.split(",");
+		double[] out = new double[tokens.length];
+		try {
+			for (int i = 0; i < tokens.length; i++) {
+				out[i] = Double.parseDouble(tokens[i].trim());
+			}
+		} catch (NumberFormatException nf) {
+			throw new IllegalArgumentException("Strategy parameters must be numbers.");
+		}
+		return out;
+	}
+
+	private static void requireCount(double[] p, int min, int max, String format)
+	{
+		if (p.length < min || p.length > max) {
+			throw new IllegalArgumentException("Strategy format: " + format);
+		}
+	}
+
+	private static void requireRate(double rate, String name)
+	{
+		if (!(rate > 0 && rate <= 1)) {
+			throw new IllegalArgumentException(name + " must be above 0 and at most 1.");
+		}
+	}
+
+	private static void requireInflation(double inflation)
+	{
+		if (!(inflation > -1) || Double.isInfinite(inflation)) {
+			throw new IllegalArgumentException("Inflation must be greater than -100%.");
+		}
+	}
+
+
+	private static final class Constant extends WithdrawalStrategy {
+
+		private final double initialRate;
+		private final double inflation;
+
+		Constant(double initialRate, double inflation)
+		{
+			this.initialRate = initialRate;
+			this.inflation = inflation;
+		}
+
+		@Override
+		public int run(double balance, double[] rates, int horizon, YearSink sink, double[] totals)
+		{
+			/*
+	        Inflation-indexed constant withdrawal.
+	        Complexity: O(H) - Linear Time, no allocation
+	        Returns: (years_lasted)
+	        */
+			double growth = 1 + inflation;
+			double w = initialRate * balance;
+			double B = balance;
+			double withdrawn = 0;
+			double lowest = Double.POSITIVE_INFINITY;
+			int year = 0;
+			if (sink != null) {
+				sink.accept(0, B);
+			}
+			while (B > 0 && year < horizon) {
+				if (year > 0) {
+					w *= growth;
+				}
+				lowest = Math.min(lowest, w);
+				withdrawn += Math.min(w, B);
+				B -= w;
+				B = B <= 0 ? 0 : B * (1 + rates[year]);
+				year++;
+				if (sink != null) {
+					sink.accept(year, B);
+				}
+			}
+			finish(totals, B, withdrawn, lowest);
+			return year;
+		}
+
+		@Override
+		public String describe()
+		{
+			return String.format(Locale.ROOT, "constant(rate=%s, inflation=%s)", initialRate, inflation);
+		}
+	}
+
+
+	private static final class Percent extends WithdrawalStrategy {
+
+		private final double rate;
+
+		Percent(double rate)
+		{
+			this.rate = rate;
+		}
+
+		@Override
+		public int run(double balance, double[] rates, int horizon, YearSink sink, double[] totals)
+		{
+			/*
+	        Fixed share of the start-of-year balance.
+	        Complexity: O(H) - Linear Time, no allocation
+	        Returns: (years_lasted)
+	        */
+			double keep = 1 - rate;
+			double B = balance;
+			double withdrawn = 0;
+			double lowest = Double.POSITIVE_INFINITY;
+			int year = 0;
+			if (sink != null) {
+				sink.accept(0, B);
+			}
+			while (B > 0 && year < horizon) {
+				double w = rate * B;
+				lowest = Math.min(lowest, w);
+				withdrawn += w;
+				B = keep * B * (1 + rates[year]);
+				year++;
+				if (sink != null) {
+					sink.accept(year, B);
+				}
+			}
+			finish(totals, B, withdrawn, lowest);
+			return year;
+		}
+
+		@Override
+		public String describe()
+		{
+			return String.format(Locale.ROOT, "percent(rate=%s)", rate);
+		}
+	}
+
+
+	private static final class FloorCeiling extends WithdrawalStrategy {
+
+		private final double rate;
+		private final double floor;
+		private final double ceiling;
+		private final double inflation;
+
+		FloorCeiling(double rate, double floor, double ceiling, double inflation)
+		{
+			this.rate = rate;
+			this.floor = floor;
+			this.ceiling = ceiling;
+			this.inflation = inflation;
+		}
+
+		@Override
+		public int run(double balance, double[] rates, int horizon, YearSink sink, double[] totals)
+		{
+			/*
+	        Percent of balance clamped to [floor, ceiling] x the first year's
+	        amount, both raised by inflation each year.
+	        Complexity: O(H) - Linear Time, no allocation
+	        Returns: (years_lasted)
+	        */
+			double growth = 1 + inflation;
+			double low = floor * rate * balance;
+			double high = ceiling * rate * balance;
+			double B = balance;
+			double withdrawn = 0;
+			double lowest = Double.POSITIVE_INFINITY;
+			int year = 0;
+			if (sink != null) {
+				sink.accept(0, B);
+			}
+			while (B > 0 && year < horizon) {
+				if (year > 0) {
+					low *= growth;
+					high *= growth;
+				}
+				double w = Math.min(Math.max(rate * B, low), high);
+				lowest = Math.min(lowest, w);
+				withdrawn += Math.min(w, B);
+				B -= w;
+				B = B <= 0 ? 0 : B * (1 + rates[year]);
+				year++;
+				if (sink != null) {
+					sink.accept(year, B);
+				}
+			}
+			finish(totals, B, withdrawn, lowest);
+			return year;
+		}
+
+		@Override
+		public String describe()
+		{
+			return String.format(Locale.ROOT, "floor-ceiling(rate=%s, floor=%s, ceiling=%s, inflation=%s)", rate, floor,
+					ceiling, inflation);
+		}
+	}
+
+
+	private static final class Guardrails extends WithdrawalStrategy {
+
+		private final double initialRate;
+		private final double inflation;
+		private final double guard;
+		private final double adjustment;
+
+		Guardrails(double initialRate, double inflation, double guard, double adjustment)
+		{
+			this.initialRate = initialRate;
+			this.inflation = inflation;
+			this.guard = guard;
+			this.adjustment = adjustment;
+		}
+
+		@Override
+		public int run(double balance, double[] rates, int horizon, YearSink sink, double[] totals)
+		{
+			/*
+	        Guyton-Klinger decision rules, checked at the start of every year
+	        after the first against the current withdrawal rate w / B.
+	        Complexity: O(H) - Linear Time, no allocation
+	        Returns: (years_lasted)
+	        */
+			double growth = 1 + inflation;
+			double upper = initialRate * (1 + guard);
+			double lower = initialRate * (1 - guard);
+			double cut = 1 - adjustment;
+			double raise = 1 + adjustment;
+			double w = initialRate * balance;
+			double B = balance;
+			double withdrawn = 0;
+			double lowest = Double.POSITIVE_INFINITY;
+			int year = 0;
+			if (sink != null) {
+				sink.accept(0, B);
+			}
+			while (B > 0 && year < horizon) {
+				if (year > 0) {
+					// Inflation rule: no raise after a losing year if already above the starting rate
+					if (!(rates[year - 1] < 0 && w > initialRate * B)) {
+						w *= growth;
+					}
+					double current = w / B;
+					if (current > upper && horizon - year > PRESERVATION_CUTOFF_YEARS) {
+						w *= cut;
+					} else if (current < lower) {
+						w *= raise;
+					}
+				}
+				lowest = Math.min(lowest, w);
+				withdrawn += Math.min(w, B);
+				B -= w;
+				B = B <= 0 ? 0 : B * (1 + rates[year]);
+				year++;
+				if (sink != null) {
+					sink.accept(year, B);
+				}
+			}
+			finish(totals, B, withdrawn, lowest);
+			return year;
+		}
+
+		@Override
+		public String describe()
+		{
+			return String.format(Locale.ROOT, "guardrails(rate=%s, inflation=%s, guard=%s, adjustment=%s)", initialRate,
+					inflation, guard, adjustment);
+		}
+	}
+
+
+	private static final class Custom extends WithdrawalStrategy {
+
+		private final String name;
+		private final Rule rule;
+
+		Custom(String name, Rule rule)
+		{
+			this.name = name;
+			this.rule = rule;
+		}
+
+		@Override
+		public int run(double balance, double[] rates, int horizon, YearSink sink, double[] totals)
+		{
+			/*
+	        Generic loop asking the rule for every year's withdrawal.
+	        Complexity: O(H) - Linear Time, one Rule call per year
+	        Returns: (years_lasted)
+	        */
+			double B = balance;
+			double w = 0;
+			double withdrawn = 0;
+			double lowest = Double.POSITIVE_INFINITY;
+			int year = 0;
+			if (sink != null) {
+				sink.accept(0, B);
+			}
+			while (B > 0 && year < horizon) {
+				w = rule.withdrawal(year + 1, B, w, year > 0 ? rates[year - 1] : 0.0);
+				lowest = Math.min(lowest, w);
+				withdrawn += Math.min(w, B);
+				B -= w;
+				B = B <= 0 ? 0 : B * (1 + rates[year]);
+				year++;
+				if (sink != null) {
+					sink.accept(year, B);
+				}
+			}
+			finish(totals, B, withdrawn, lowest);
+			return year;
+		}
+
+		@Override
+		public String describe()
+		{
+			return name;
+		}
+	}
+}
@@ -0,0 +1,11 @@
+package system;
+
+/*
+Receives one balance per simulated year straight from a kernel loop, so
+callers can store, aggregate or export the history without the kernel
+building a List<Double> first. Year 0 is the starting balance.
+*/
+public interface YearSink {
+
+	void accept(int year, double balance);
+}
@@ -0,0 +1,20 @@
+#!/bin/sh
+# Launches RetirementInvestmentSystem.jar, using a startup archive when one was built:
+#   RetirementInvestmentSystem.aot  (mvn package -Paot, JDK 24+)
+#   RetirementInvestmentSystem.jsa  (mvn package -Pcds, JDK 13+)
+# All arguments are passed through to system.Launcher.
+#   sh ris.sh                  GUI
+#   sh ris.sh --cds-training   headless training workload
+DIR=$(cd "$(dirname "$0")" && pwd)
+JAR="$DIR/RetirementInvestmentSystem.jar"
+JAVA=${JAVA:-java}
+
+if [ -f "$DIR/RetirementInvestmentSystem.aot" ]; then
+	SHARE="-XX:AOTCache=$DIR/RetirementInvestmentSystem.aot"
+elif [ -f "$DIR/RetirementInvestmentSystem.jsa" ]; then
+	SHARE="-XX:SharedArchiveFile=$DIR/RetirementInvestmentSystem.jsa -Xshare:auto"
+else
+	SHARE=""
+fi
+
+exec "$JAVA" $SHARE $JAVA_OPTS -jar "$JAR" "$@"
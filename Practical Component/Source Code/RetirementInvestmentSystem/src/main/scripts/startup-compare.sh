@@ -0,0 +1,68 @@
+#!/bin/sh
+# Compares startup with and without the CDS archive built by 'mvn package -Pcds'.
+#   sh target/startup-compare.sh [runs]
+# batch   : wall time of one '--headless optimize' scenario (the nightly pipeline path)
+# training: wall time of the --cds-training workload
+# gui     : time to first frame reported by StartupBenchmark (skipped without a display)
+DIR=$(cd "$(dirname "$0")" && pwd)
+JAR="$DIR/RetirementInvestmentSystem.jar"
+JSA="$DIR/RetirementInvestmentSystem.jsa"
+RUNS=${1:-5}
+JAVA=${JAVA:-java}
+
+if [ ! -f "$JSA" ]; then
+	echo "No archive at $JSA - build it with: mvn package -Pcds" >&2
+	exit 1
+fi
+
+now_ms() {
+	date +%s%3N
+}
+
+batch() {
+	total=0
+	i=0
+	while [ $i -lt "$RUNS" ]; do
+		start=$(now_ms)
+		echo "c1 500000 5 30" | "$JAVA" "$@" -jar "$JAR" --headless optimize > /dev/null
+		end=$(now_ms)
+		total=$((total + end - start))
+		i=$((i + 1))
+	done
+	echo $((total / RUNS))
+}
+
+headless() {
+	total=0
+	i=0
+	while [ $i -lt "$RUNS" ]; do
+		start=$(now_ms)
+		"$JAVA" "$@" -Djava.awt.headless=true -jar "$JAR" --cds-training > /dev/null
+		end=$(now_ms)
+		total=$((total + end - start))
+		i=$((i + 1))
+	done
+	echo $((total / RUNS))
+}
+
+gui() {
+	total=0
+	i=0
+	while [ $i -lt "$RUNS" ]; do
+		ms=$("$JAVA" "$@" -cp "$JAR" system.StartupBenchmark --child | sed -n 's/^FIRST_FRAME_MS=//p')
+		[ -z "$ms" ] && return 1
+		total=$((total + ms))
+		i=$((i + 1))
+	done
+	echo $((total / RUNS))
+}
+
+echo "Average over $RUNS runs (ms)"
+echo "  batch     no archive: $(batch -Xshare:off)   default JDK archive: $(batch)   app archive: $(batch -XX:SharedArchiveFile="$JSA")"
+echo "  training  no archive: $(headless -Xshare:off)   default JDK archive: $(headless)   app archive: $(headless -XX:SharedArchiveFile="$JSA")"
+
+if [ -n "$DISPLAY" ] || [ "$(uname)" = "Darwin" ]; then
+	echo "  gui       no archive: $(gui -Xshare:off)   default JDK archive: $(gui)   app archive: $(gui -XX:SharedArchiveFile="$JSA")"
+else
+	echo "  gui       skipped (no DISPLAY)"
+fi
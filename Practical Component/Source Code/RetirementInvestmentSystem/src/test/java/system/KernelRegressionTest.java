@@ -0,0 +1,617 @@
+package system;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+/*
+Differential check of the optimised kernels against ReferenceKernels, run by
+mvn test:
+
+    mvn test                                  every property, 2000 cases each
+    mvn test -Dris.cases=20000 -Dris.seed=7   more (or other) random inputs
+    mvn test -Dris.perfGate=true              also the wall-clock gate
+
+Each property draws 'cases' random inputs from a SplitMix64 stream (the same
+seed gives the same inputs, and a failure reports the input that broke it) and
+compares a fast path with the plain loop it replaced:
+
+  fixedInvestor, simulate, retirementHistory    same arithmetic, must be exact
+  yearsLasted, balanceSeries                    rewritten arithmetic: equal, or
+                                                the reference itself changes its
+                                                answer when the expense moves by
+                                                1e-9 (a boundary case)
+  maximumExpensed, inflation-indexed, schedules within a cent (+1e-9 relative) of
+                                                the original bisection, and the
+                                                warm search is the largest whole
+                                                cent that lasts
+  CentsKernel.maximumExpensed                   the exact cents bisection, exactly
+  Monte Carlo, drawdown book, sustainable       the parallel engines against the
+                                                same paths run one at a time
+
+The kernels are called through their own entry points (what MainWindow's
+helpers delegate to), so the check never loads Swing.
+
+The performance gate times three searches against their reference loops on
+this machine and fails when a speed-up falls below its floor, so it catches a
+fast path quietly losing its shortcut without depending on the machine's
+absolute speed. Wall-clock timing is noisy on shared build machines, so the
+gate only runs when asked for.
+*/
+public final class KernelRegressionTest {
+
+	private static final int CASES = Integer.getInteger("ris.cases", 2000);
+	private static final long SEED = Long.getLong("ris.seed", 1L);
+
+	// Relative slack for rewritten floating-point arithmetic
+	private static final double RELATIVE = 1e-9;
+	// The first half of the rounds warm the JIT up and are not timed
+	private static final int PERF_ROUNDS = 20;
+
+	// ---- tests -------------------------------------------------------------------
+
+	@Test
+	public void fixedInvestor()
+	{
+		assertHolds(fixedInvestor(random(), CASES));
+	}
+
+	@Test
+	public void yearsLasted()
+	{
+		assertHolds(yearsLasted(random(), CASES));
+	}
+
+	@Test
+	public void simulate()
+	{
+		assertHolds(simulate(random(), CASES));
+	}
+
+	@Test
+	public void balanceSeries()
+	{
+		assertHolds(balanceSeries(random(), CASES));
+	}
+
+	@Test
+	public void retirementHistory()
+	{
+		assertHolds(retirementHistory(random(), CASES));
+	}
+
+	@Test
+	public void maximumExpensed()
+	{
+		assertHolds(maximumExpensed(random(), CASES));
+	}
+
+	@Test
+	public void inflationIndexedMaximum()
+	{
+		assertHolds(closedForm(random(), CASES));
+	}
+
+	@Test
+	public void scheduleSearch()
+	{
+		assertHolds(scheduleSearch(random(), Math.max(20, CASES / 4)));
+	}
+
+	@Test
+	public void centsSearch()
+	{
+		assertHolds(centsSearch(random(), Math.max(20, CASES / 10)));
+	}
+
+	@Test
+	public void parallelMonteCarlo()
+	{
+		assertHolds(monteCarlo(random(), Math.max(4, CASES / 250)));
+	}
+
+	@Test
+	public void parallelDrawdownBook()
+	{
+		assertHolds(drawdownBook(random(), CASES));
+	}
+
+	@Test
+	public void sustainableWithdrawal()
+	{
+		assertHolds(sustainable(random(), Math.max(4, CASES / 250)));
+	}
+
+	@Test
+	public void performanceGate()
+	{
+		assumeTrue("performance gate runs with -Dris.perfGate=true", Boolean.getBoolean("ris.perfGate"));
+		assertEquals("performance gates failed", 0, runGates());
+	}
+
+
+	private static SplitMix64 random()
+	{
+		return new SplitMix64(SEED);
+	}
+
+	//Fails with the worst error and the first input that broke the property
+	private static void assertHolds(Property p)
+	{
+		System.out.printf(Locale.ROOT, "%-52s %6d %8d %12.3g  %s%n", p.name, p.cases, p.failures, p.worst, p.tolerance);
+		if (p.failures > 0) {
+			throw new AssertionError(String.format(Locale.ROOT, "%s: %d of %d cases failed (worst error %.3g, tolerance %s);"
+					+ " first failure: %s", p.name, p.failures, p.cases, p.worst, p.tolerance, p.firstFailure));
+		}
+	}
+
+
+	private static final class Property {
+
+		private final String name;
+		private final String tolerance;
+		private int cases;
+		private int failures;
+		private double worst;
+		private String firstFailure;
+
+		Property(String name, String tolerance)
+		{
+			this.name = name;
+			this.tolerance = tolerance;
+		}
+
+		void check(boolean ok, double error, Supplier<String> input)
+		{
+			cases++;
+			if (error > worst) {
+				worst = error;
+			}
+			if (!ok) {
+				if (failures++ == 0) {
+					firstFailure = input.get();
+				}
+			}
+		}
+	}
+
+
+	// ---- random inputs ----------------------------------------------------------
+
+	//Whole cents, log-uniform from 1,000 to 10,000,000
+	private static double balance(SplitMix64 random)
+	{
+		return Math.round(Math.exp(Math.log(1e3) + random.nextDouble() * Math.log(1e4)) * 100) / 100.0;
+	}
+
+	//Decimal growth rate from -3% to 12%, in basis points
+	private static double rate(SplitMix64 random)
+	{
+		return Math.round(-300 + random.nextDouble() * 1500) / 10000.0;
+	}
+
+	private static double inflation(SplitMix64 random)
+	{
+		return Math.round(random.nextDouble() * 500) / 10000.0;
+	}
+
+	private static int years(SplitMix64 random, int max)
+	{
+		return 1 + (int) (random.nextDouble() * max);
+	}
+
+	//An expense of 1% to 25% of the balance, so most runs deplete within the cap
+	private static double expense(SplitMix64 random, double balance)
+	{
+		return Math.round(balance * (1 + random.nextDouble() * 24)) / 100.0;
+	}
+
+	private static RetirementKernel.Timing timing(SplitMix64 random)
+	{
+		RetirementKernel.Timing[] all = RetirementKernel.Timing.values();
+		return all[(int) (random.nextDouble() * all.length)];
+	}
+
+	private static String describe(Object... values)
+	{
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i + 1 < values.length; i += 2) {
+			s.append(i == 0 ? "" : ", ").append(values[i]).append('=').append(values[i + 1]);
+		}
+		return s.toString();
+	}
+
+	private static boolean close(double a, double b, double tolerance)
+	{
+		return a == b || Math.abs(a - b) <= tolerance;
+	}
+
+	private static double difference(double a, double b)
+	{
+		return a == b ? 0.0 : Math.abs(a - b);
+	}
+
+
+	// ---- properties ---------------------------------------------------------------
+
+	private static Property fixedInvestor(SplitMix64 random, int cases)
+	{
+		Property p = new Property("fixedInvestor = reference loop (plain and streamed)", "exact");
+		for (int c = 0; c < cases; c++) {
+			double b = balance(random);
+			double r = rate(random);
+			int t = years(random, 100);
+			double expected = ReferenceKernels.fixedInvestor(b, r, t);
+			double plain = RetirementKernel.fixedInvestor(b, r, t);
+			double[] last = new double[1];
+			double streamed = RetirementKernel.fixedInvestor(b, r, t, (year, balance) -> last[0] = balance);
+			p.check(plain == expected && streamed == expected && last[0] == expected,
+					Math.max(difference(plain, expected), difference(streamed, expected)),
+					() -> describe("balance", b, "rate", r, "years", t));
+		}
+		return p;
+	}
+
+	private static Property yearsLasted(SplitMix64 random, int cases)
+	{
+		Property p = new Property("yearsLasted = finallyRetired reference loop", "exact, or 1e-9 boundary");
+		for (int c = 0; c < cases; c++) {
+			double b = balance(random);
+			double e = expense(random, b);
+			double r = rate(random);
+			int fast = RetirementKernel.yearsLasted(b, e, r, RetirementKernel.LIFETIME_CAP_YEARS,
+					RetirementKernel.Timing.WITHDRAW_FIRST);
+			int expected = ReferenceKernels.finallyRetired(b, e, r, RetirementKernel.LIFETIME_CAP_YEARS);
+			boolean ok = fast == expected
+					|| (ReferenceKernels.finallyRetired(b, e * (1 + RELATIVE), r, RetirementKernel.LIFETIME_CAP_YEARS) <= fast
+					&& fast <= ReferenceKernels.finallyRetired(b, e * (1 - RELATIVE), r, RetirementKernel.LIFETIME_CAP_YEARS));
+			p.check(ok, Math.abs(fast - expected), () -> describe("balance", b, "expense", e, "rate", r));
+		}
+		return p;
+	}
+
+	//The single pass: count, recorded history and streamed history must agree exactly
+	private static Property simulate(SplitMix64 random, int cases)
+	{
+		Property p = new Property("simulate = yearsLasted = streamed history", "exact");
+		for (int c = 0; c < cases; c++) {
+			double b = balance(random);
+			double e = expense(random, b);
+			double r = rate(random);
+			RetirementKernel.Timing timing = timing(random);
+			int cap = years(random, RetirementKernel.LIFETIME_CAP_YEARS);
+			SimulationResult result = RetirementKernel.simulate(b, e, r, cap, timing);
+			int counted = RetirementKernel.yearsLasted(b, e, r, cap, timing);
+			double[] streamed = new double[cap + 1];
+			int streamedYears = RetirementKernel.simulate(b, e, r, cap, timing, (year, balance) -> streamed[year] = balance);
+			List<Double> recorded = result.toList();
+			boolean ok = result.getYearsLasted() == counted && streamedYears == counted && recorded.size() == counted + 1
+					&& recorded.get(counted) == result.getTerminalBalance();
+			double error = 0;
+			for (int y = 0; ok && y <= counted; y++) {
+				error = Math.max(error, difference(recorded.get(y), streamed[y]));
+				ok = recorded.get(y) == streamed[y];
+			}
+			p.check(ok, error, () -> describe("balance", b, "expense", e, "rate", r, "cap", cap, "timing", timing));
+		}
+		return p;
+	}
+
+	private static Property balanceSeries(SplitMix64 random, int cases)
+	{
+		Property p = new Property("balanceSeries ~ reference loop", "1e-9 relative, or boundary");
+		for (int c = 0; c < cases; c++) {
+			double b = balance(random);
+			double e = expense(random, b);
+			double r = rate(random);
+			List<Double> fast = RetirementKernel.simulate(b, e, r, 2000, RetirementKernel.Timing.GROW_FIRST).toList();
+			List<Double> expected = ReferenceKernels.balanceSeries(b, e, r);
+			seriesCheck(p, fast, expected, b, e,
+					() -> ReferenceKernels.balanceSeries(b, e * (1 + RELATIVE), r).size(),
+					() -> ReferenceKernels.balanceSeries(b, e * (1 - RELATIVE), r).size(),
+					() -> describe("balance", b, "expense", e, "rate", r));
+		}
+		return p;
+	}
+
+	private static Property retirementHistory(SplitMix64 random, int cases)
+	{
+		Property p = new Property("retirementHistory = reference loop", "exact");
+		for (int c = 0; c < cases; c++) {
+			double b = balance(random);
+			double e = expense(random, b);
+			double r = rate(random);
+			int cap = years(random, RetirementKernel.LIFETIME_CAP_YEARS);
+			List<Double> fast = RetirementKernel.simulate(b, e, r, cap, RetirementKernel.Timing.WITHDRAW_FIRST).toList();
+			List<Double> expected = ReferenceKernels.retirementHistory(b, e, r, cap);
+			boolean ok = fast.equals(expected);
+			double error = 0;
+			for (int y = 0; y < Math.min(fast.size(), expected.size()); y++) {
+				error = Math.max(error, difference(fast.get(y), expected.get(y)));
+			}
+			p.check(ok, error, () -> describe("balance", b, "expense", e, "rate", r, "cap", cap));
+		}
+		return p;
+	}
+
+	//Same length (or a boundary case) and every point within the relative tolerance
+	private static void seriesCheck(Property p, List<Double> fast, List<Double> expected, double b, double e,
+			Supplier<Integer> shorter, Supplier<Integer> longer, Supplier<String> input)
+	{
+		boolean ok = fast.size() == expected.size()
+				|| (shorter.get() <= fast.size() && fast.size() <= longer.get());
+		double error = 0;
+		for (int y = 0; y < Math.min(fast.size(), expected.size()); y++) {
+			double a = fast.get(y);
+			double x = expected.get(y);
+			double scale = Math.abs(x) + b + e;
+			error = Math.max(error, difference(a, x) / scale);
+			ok &= close(a, x, RELATIVE * scale);
+		}
+		p.check(ok, error, input);
+	}
+
+
+	//Warm search: within a cent of the original bisection and cent-optimal
+	private static Property maximumExpensed(SplitMix64 random, int cases)
+	{
+		Property p = new Property("maximumExpensed ~ bisection, cent-optimal", "1 cent + 1e-9 relative");
+		for (int c = 0; c < cases; c++) {
+			double b = balance(random);
+			double r = rate(random);
+			int t = years(random, 60);
+			double fast = RetirementKernel.maximumExpensed(b, r, t);
+			double expected = ReferenceKernels.maximumExpensed(b, r, t);
+			boolean lasts = RetirementKernel.yearsLasted(b, fast, r, RetirementKernel.LIFETIME_CAP_YEARS,
+					RetirementKernel.Timing.WITHDRAW_FIRST) >= t;
+			double next = Math.round(fast * 100 + 1) / 100.0;
+			boolean nextFails = next > b || RetirementKernel.yearsLasted(b, next, r, RetirementKernel.LIFETIME_CAP_YEARS,
+					RetirementKernel.Timing.WITHDRAW_FIRST) < t;
+			boolean ok = close(fast, expected, ReferenceKernels.EPSILON + RELATIVE * b) && lasts && nextFails;
+			p.check(ok, difference(fast, expected),
+					() -> describe("balance", b, "rate", r, "years", t, "fast", fast, "reference", expected));
+		}
+		return p;
+	}
+
+	//Inflation-indexed, withdraw-first: the search started from the closed form is cent-optimal
+	private static Property closedForm(SplitMix64 random, int cases)
+	{
+		Property p = new Property("inflation-indexed ~ bisection, cent-optimal", "1 cent + 1e-9 relative");
+		for (int c = 0; c < cases; c++) {
+			double b = balance(random);
+			double r = rate(random);
+			double g = inflation(random);
+			int t = years(random, 60);
+			WithdrawalSchedule schedule = WithdrawalSchedule.inflationIndexed(1, g);
+			double fast = RetirementKernel.maximumExpensed(b, schedule, r, t,
+					RetirementKernel.LIFETIME_CAP_YEARS, RetirementKernel.Timing.WITHDRAW_FIRST);
+			double expected = ReferenceKernels.maximumExpensed(b, g, r, t, RetirementKernel.Timing.WITHDRAW_FIRST);
+			boolean wholeCents = fast == Math.round(fast * 100) / 100.0;
+			boolean lasts = ReferenceKernels.yearsLasted(b, fast, g, r, RetirementKernel.LIFETIME_CAP_YEARS,
+					RetirementKernel.Timing.WITHDRAW_FIRST) >= t;
+			double next = Math.round(fast * 100 + 1) / 100.0;
+			boolean nextFails = next > b || ReferenceKernels.yearsLasted(b, next, g, r, RetirementKernel.LIFETIME_CAP_YEARS,
+					RetirementKernel.Timing.WITHDRAW_FIRST) < t;
+			boolean ok = close(fast, expected, ReferenceKernels.EPSILON + RELATIVE * b) && wholeCents && lasts && nextFails;
+			p.check(ok, difference(fast, expected),
+					() -> describe("balance", b, "rate", r, "inflation", g, "years", t, "fast", fast, "reference", expected));
+		}
+		return p;
+	}
+
+	//The warm search under the other timings, through the schedule loop
+	private static Property scheduleSearch(SplitMix64 random, int cases)
+	{
+		Property p = new Property("schedule search (grow-first, mid-year) ~ bisection", "1 cent + 1e-9 relative");
+		for (int c = 0; c < cases; c++) {
+			double b = balance(random);
+			double r = rate(random);
+			double g = inflation(random);
+			int t = years(random, 60);
+			RetirementKernel.Timing timing = random.nextDouble() < 0.5
+					? RetirementKernel.Timing.GROW_FIRST : RetirementKernel.Timing.MID_YEAR;
+			double fast = RetirementKernel.maximumExpensed(b, WithdrawalSchedule.inflationIndexed(1, g), r, t,
+					RetirementKernel.LIFETIME_CAP_YEARS, timing);
+			double expected = ReferenceKernels.maximumExpensed(b, g, r, t, timing);
+			p.check(close(fast, expected, ReferenceKernels.EPSILON + RELATIVE * b), difference(fast, expected),
+					() -> describe("balance", b, "rate", r, "inflation", g, "years", t, "timing", timing));
+		}
+		return p;
+	}
+
+	private static Property centsSearch(SplitMix64 random, int cases)
+	{
+		Property p = new Property("CentsKernel.maximumExpensed = cents bisection", "exact");
+		RoundingMode[] modes = { RoundingMode.HALF_EVEN, RoundingMode.HALF_UP, RoundingMode.DOWN };
+		for (int c = 0; c < cases; c++) {
+			long cents = CentsKernel.toCents(balance(random));
+			double r = Math.abs(rate(random));   // the cents kernel takes no negative rates
+			int t = years(random, 60);
+			RoundingMode mode = modes[c % modes.length];
+			long fast = CentsKernel.maximumExpensed(cents, r, t, RetirementKernel.LIFETIME_CAP_YEARS, mode);
+			long expected = ReferenceKernels.maximumExpensedCents(cents, r, t, mode);
+			p.check(fast == expected, Math.abs(fast - expected),
+					() -> describe("cents", cents, "rate", r, "years", t, "rounding", mode));
+		}
+		return p;
+	}
+
+	private static Property monteCarlo(SplitMix64 random, int cases)
+	{
+		Property p = new Property("parallel Monte Carlo = sequential paths", "exact");
+		String[] models = { "vasicek", "cir", "regime", "garch" };
+		for (int c = 0; c < cases; c++) {
+			String model = models[c % models.length];
+			long seed = random.nextLong();
+			double b = balance(random);
+			int t = years(random, 50);
+			MonteCarloEngine engine = new MonteCarloEngine(RateModels.parse(model), seed);
+			double[] fast = engine.terminalBalances(b, t, 500);
+			double[] expected = ReferenceKernels.terminalBalances(engine, b, t, 500);
+			double error = 0;
+			boolean ok = true;
+			for (int i = 0; i < fast.length; i++) {
+				error = Math.max(error, difference(fast[i], expected[i]));
+				ok &= fast[i] == expected[i];
+			}
+			p.check(ok, error, () -> describe("model", model, "seed", seed, "balance", b, "years", t));
+		}
+		return p;
+	}
+
+	//A tax-free-only, zero-tax household is a plain inflation-indexed withdrawal; the whole book runs in parallel
+	private static Property drawdownBook(SplitMix64 random, int cases)
+	{
+		Property p = new Property("parallel drawdown book (no tax) = reference loop", "exact, or 1e-9 boundary");
+		double r = rate(random);
+		DrawdownEngine engine = new DrawdownEngine(r, r, r, 0, 0);
+		DrawdownEngine.Book book = new DrawdownEngine.Book();
+		double[][] inputs = new double[cases][];
+		for (int c = 0; c < cases; c++) {
+			double b = balance(random);
+			double e = expense(random, b);
+			double g = inflation(random);
+			int h = years(random, 60);
+			inputs[c] = new double[] { b, e, g, h };
+			book.add("h" + c, 0, 0, 0, b, e, g, h, DrawdownEngine.Order.TAX_FREE_FIRST);
+		}
+		engine.run(book);
+		for (int c = 0; c < cases; c++) {
+			double[] in = inputs[c];
+			int h = (int) in[3];
+			int fast = book.yearsLasted(c);
+			int expected = ReferenceKernels.yearsLasted(in[0], in[1], in[2], r, h, RetirementKernel.Timing.WITHDRAW_FIRST);
+			boolean ok = fast == expected
+					|| (ReferenceKernels.yearsLasted(in[0], in[1] * (1 + RELATIVE), in[2], r, h,
+							RetirementKernel.Timing.WITHDRAW_FIRST) <= fast
+					&& fast <= ReferenceKernels.yearsLasted(in[0], in[1] * (1 - RELATIVE), in[2], r, h,
+							RetirementKernel.Timing.WITHDRAW_FIRST));
+			p.check(ok, Math.abs(fast - expected),
+					() -> describe("balance", in[0], "spending", in[1], "inflation", in[2], "rate", r, "horizon", h));
+		}
+		return p;
+	}
+
+	private static Property sustainable(SplitMix64 random, int cases)
+	{
+		Property p = new Property("sustainable withdrawal ~ per-path order statistic", "1 cent + 1e-9 relative");
+		for (int c = 0; c < cases; c++) {
+			long seed = random.nextLong();
+			double b = balance(random);
+			double g = inflation(random);
+			int h = years(random, 40);
+			double confidence = 0.5 + 0.45 * random.nextDouble();
+			MonteCarloEngine engine = new MonteCarloEngine(RateModels.parse("garch"), seed);
+			double fast = new SustainableWithdrawal(engine, 300, h).solve(b, g, confidence).getWithdrawal();
+			double expected = ReferenceKernels.sustainableWithdrawal(engine, 300, h, b, g, confidence);
+			p.check(close(fast, expected, ReferenceKernels.EPSILON + RELATIVE * b), difference(fast, expected),
+					() -> describe("seed", seed, "balance", b, "inflation", g, "horizon", h, "confidence", confidence));
+		}
+		return p;
+	}
+
+
+	// ---- performance gate -------------------------------------------------------
+
+	//Speed-up floors of the fast searches over their reference loops; returns the number of failed gates
+	private static int runGates()
+	{
+		SplitMix64 random = new SplitMix64(42);
+		int n = 400;
+		double[] b = new double[n];
+		double[] r = new double[n];
+		double[] g = new double[n];
+		int[] t = new int[n];
+		for (int i = 0; i < n; i++) {
+			b[i] = balance(random);
+			r[i] = rate(random);
+			g[i] = inflation(random);
+			t[i] = 20 + years(random, 40);
+		}
+		WithdrawalSchedule[] schedules = new WithdrawalSchedule[n];
+		for (int i = 0; i < n; i++) {
+			schedules[i] = WithdrawalSchedule.inflationIndexed(1, g[i]);
+		}
+
+		int failed = 0;
+		failed += gate("maximumExpensed warm search vs bisection", 3.0,
+				() -> {
+					double sum = 0;
+					for (int i = 0; i < n; i++) {
+						sum += RetirementKernel.maximumExpensed(b[i], r[i], t[i]);
+					}
+					return sum;
+				},
+				() -> {
+					double sum = 0;
+					for (int i = 0; i < n; i++) {
+						sum += ReferenceKernels.maximumExpensed(b[i], r[i], t[i]);
+					}
+					return sum;
+				});
+		failed += gate("inflation-indexed closed-form start vs bisection", 3.0,
+				() -> {
+					double sum = 0;
+					for (int i = 0; i < n; i++) {
+						sum += RetirementKernel.maximumExpensed(b[i], schedules[i], r[i], t[i],
+								RetirementKernel.LIFETIME_CAP_YEARS, RetirementKernel.Timing.WITHDRAW_FIRST);
+					}
+					return sum;
+				},
+				() -> {
+					double sum = 0;
+					for (int i = 0; i < n; i++) {
+						sum += ReferenceKernels.maximumExpensed(b[i], g[i], r[i], t[i], RetirementKernel.Timing.WITHDRAW_FIRST);
+					}
+					return sum;
+				});
+		failed += gate("CentsKernel bracketed search vs cents bisection", 3.0,
+				() -> {
+					double sum = 0;
+					for (int i = 0; i < n / 4; i++) {
+						sum += CentsKernel.maximumExpensed(CentsKernel.toCents(b[i]), Math.abs(r[i]), t[i],
+								RetirementKernel.LIFETIME_CAP_YEARS, CentsKernel.DEFAULT_ROUNDING);
+					}
+					return sum;
+				},
+				() -> {
+					double sum = 0;
+					for (int i = 0; i < n / 4; i++) {
+						sum += ReferenceKernels.maximumExpensedCents(CentsKernel.toCents(b[i]), Math.abs(r[i]), t[i],
+								CentsKernel.DEFAULT_ROUNDING);
+					}
+					return sum;
+				});
+		return failed;
+	}
+
+	//Best-of-rounds time of each side; the sums keep the JIT from dropping the work
+	private static int gate(String name, double floor, Supplier<Double> fast, Supplier<Double> reference)
+	{
+		long bestFast = Long.MAX_VALUE;
+		long bestReference = Long.MAX_VALUE;
+		double sink = 0;
+		for (int round = 0; round < PERF_ROUNDS; round++) {
+			long t0 = System.nanoTime();
+			sink += fast.get();
+			long t1 = System.nanoTime();
+			sink += reference.get();
+			long t2 = System.nanoTime();
+			if (round >= PERF_ROUNDS / 2) {
+				bestFast = Math.min(bestFast, t1 - t0);
+				bestReference = Math.min(bestReference, t2 - t1);
+			}
+		}
+		double speedup = (double) bestReference / Math.max(1, bestFast);
+		boolean ok = speedup >= floor && !Double.isNaN(sink);
+		System.out.printf(Locale.ROOT, "perf gate: %-48s %8.1fx  (floor %.0fx)  %s%n", name, speedup, floor, ok ? "PASS" : "FAIL");
+		return ok ? 0 : 1;
+	}
+}
@@ -0,0 +1,229 @@
+package system;
+
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+The calculators as they were first written, kept as test oracles for
+KernelRegressionTest. Every method is the plain loop (or plain bisection)
+with no closed form, warm start, cursor, cache or parallelism, so whatever
+the fast paths in RetirementKernel, CentsKernel and the Monte Carlo engines
+do, their numbers can be checked against these. Nothing here is meant to be
+fast; none of it is used by the calculators themselves.
+*/
+final class ReferenceKernels {
+
+	//Bisection stops when the bracket is narrower than a cent, as the original maximumExpensed did
+	static final double EPSILON = 0.01;
+
+	private ReferenceKernels()
+	{
+	}
+
+
+	static double fixedInvestor(double principal, double rate, int years)
+	{
+		double balance = principal;
+		for (int i = 1; i <= years; i++)
+		{
+			balance = balance * (1 + rate);
+		}
+		return balance;
+	}
+
+	//Withdraw first, then grow the remainder (the original finallyRetired)
+	static int finallyRetired(double balance, double annualExpense, double rate, int capYears)
+	{
+		int years = 0;
+		while (balance > 0 && years < capYears) {
+			balance -= annualExpense;
+			if (balance > 0) {
+				balance += balance * rate;
+			} else {
+				balance = 0;
+			}
+			years++;
+		}
+		return years;
+	}
+
+	//The original bisection over [0, balance]
+	static double maximumExpensed(double balance, double rate, int targetYears)
+	{
+		double low = 0.0;
+		double high = balance;
+		while ((high - low) > EPSILON) {
+			double mid = (high + low) / 2.0;
+			if (finallyRetired(balance, mid, rate, RetirementKernel.LIFETIME_CAP_YEARS) < targetYears) {
+				high = mid;
+			} else {
+				low = mid;
+			}
+		}
+		return low;
+	}
+
+	//Grow first, then subtract the expense (the original balanceSeries)
+	static List<Double> balanceSeries(double balance, double expense, double rate)
+	{
+		List<Double> series = new ArrayList<>();
+		series.add(balance);
+		int years = 0;
+		while (balance > 0 && years < 2000) {
+			double interest = balance * rate;
+			balance = balance + interest - expense;
+			series.add(Math.max(balance, 0));
+			years++;
+		}
+		return series;
+	}
+
+	//Withdraw first, then grow (the original retirementHistory)
+	static List<Double> retirementHistory(double balance, double annualExpense, double rate, int capYears)
+	{
+		List<Double> history = new ArrayList<>();
+		history.add(balance);
+		int years = 0;
+		double B = balance;
+		while (B > 0 && years < capYears) {
+			B -= annualExpense;
+			if (B > 0) {
+				B *= (1 + rate);
+			} else {
+				B = 0;
+			}
+			history.add(B);
+			years++;
+		}
+		return history;
+	}
+
+
+	//Years lasted with an inflation-indexed withdrawal under any timing, one year at a time
+	static int yearsLasted(double balance, double firstExpense, double inflation, double rate, int capYears,
+			RetirementKernel.Timing timing)
+	{
+		double B = balance;
+		double expense = firstExpense;
+		int years = 0;
+		while (B > 0 && years < capYears) {
+			switch (timing) {
+			case GROW_FIRST:
+				B = B * (1 + rate) - expense;
+				break;
+			case MID_YEAR:
+				B = B * Math.sqrt(1 + rate) - expense;
+				if (B > 0) {
+					B = B * Math.sqrt(1 + rate);
+				}
+				break;
+			default:
+				B -= expense;
+				if (B > 0) {
+					B = B * (1 + rate);
+				}
+			}
+			if (B < 0) {
+				B = 0;
+			}
+			expense *= 1 + inflation;
+			years++;
+		}
+		return years;
+	}
+
+	//Bisection over the first-year withdrawal for yearsLasted above
+	static double maximumExpensed(double balance, double inflation, double rate, int targetYears,
+			RetirementKernel.Timing timing)
+	{
+		double low = 0.0;
+		double high = balance;
+		while ((high - low) > EPSILON) {
+			double mid = (high + low) / 2.0;
+			if (yearsLasted(balance, mid, inflation, rate, RetirementKernel.LIFETIME_CAP_YEARS, timing) < targetYears) {
+				high = mid;
+			} else {
+				low = mid;
+			}
+		}
+		return low;
+	}
+
+
+	//Whole-cent bisection over [0, balance] with the exact cents loop
+	static long maximumExpensedCents(long balanceCents, double rate, int targetYears, RoundingMode rounding)
+	{
+		long low = 0;
+		long high = balanceCents + 1;   // never tested: one cent above the balance cannot be withdrawn
+		while (high - low > 1) {
+			long mid = low + (high - low) / 2;
+			if (CentsKernel.yearsLasted(balanceCents, mid, rate, RetirementKernel.LIFETIME_CAP_YEARS, rounding) >= targetYears) {
+				low = mid;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+
+	//Terminal balance of every path, one path after the other on this thread
+	static double[] terminalBalances(MonteCarloEngine engine, double principal, int years, int paths)
+	{
+		double[] rates = new double[years];
+		double[] out = new double[paths];
+		for (int p = 0; p < paths; p++) {
+			engine.ratePath(p, years, rates);
+			out[p] = RetirementKernel.variableInvestor(principal, rates);
+		}
+		return out;
+	}
+
+	/*
+	Largest inflation-indexed, withdraw-first withdrawal lasting 'horizon' years
+	on at least 'confidence' of the paths: each path's own breaking point by
+	bisection, then the order statistic.
+	*/
+	static double sustainableWithdrawal(MonteCarloEngine engine, int paths, int horizon, double balance,
+			double inflation, double confidence)
+	{
+		double[] rates = new double[horizon];
+		double[] breaking = new double[paths];
+		for (int p = 0; p < paths; p++) {
+			engine.ratePath(p, horizon, rates);
+			double low = 0.0;
+			double high = balance;
+			while ((high - low) > EPSILON / 100) {
+				double mid = (high + low) / 2.0;
+				if (lastsPath(balance, mid, inflation, rates)) {
+					low = mid;
+				} else {
+					high = mid;
+				}
+			}
+			breaking[p] = low;
+		}
+		Arrays.sort(breaking);
+		int needed = (int) Math.ceil(confidence * paths - 1e-9);
+		return breaking[paths - needed];
+	}
+
+	private static boolean lastsPath(double balance, double withdrawal, double inflation, double[] rates)
+	{
+		double B = balance;
+		double w = withdrawal;
+		for (int y = 0; y < rates.length; y++) {
+			if (y > 0) {
+				w *= 1 + inflation;
+			}
+			B -= w;
+			if (B <= 0) {
+				return false;
+			}
+			B *= 1 + rates[y];
+		}
+		return true;
+	}
+}